@@ -1,3 +1,3 @@
 #!/bin/bash
 
-javac src/HealthDBUI.java src/HealthDB.java
\ No newline at end of file
+javac src/*.java
\ No newline at end of file
@@ -0,0 +1,129 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <h2>BatchResult</h2>
+ * What happened to each row of a HealthDB batch create (createPrescriptions,
+ * createTests, createReferrals, createInvoices), by position in the list that
+ * was passed in.
+ * <p>
+ * A batch is one transaction. Rows that are rejected before they reach the
+ * database (a prescription that would cause an interaction) are left out and the
+ * rest are written. If the database rejects a row, nothing from the batch is
+ * written: that row is FAILED and every row that would have been written is
+ * ROLLED_BACK.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class BatchResult {
+    public enum Outcome {
+        /** The row was written */
+        CREATED,
+        /** The prescription was not written because the medication would cause an interaction */
+        INTERACTION,
+        /** The database rejected the row, so the batch was rolled back */
+        FAILED,
+        /** The row was not written because the batch was rolled back */
+        ROLLED_BACK
+    }
+
+    private final Outcome[] outcomes;
+    private final long[] ids;
+    private final String[] messages;
+    private boolean committed = false;
+
+    /**
+     * @param size - number of rows in the batch
+     */
+    BatchResult(int size) {
+        outcomes = new Outcome[size];
+        Arrays.fill(outcomes, Outcome.ROLLED_BACK);
+        ids = new long[size];
+        messages = new String[size];
+    }
+
+    /**
+     * Records a row that was left out of the batch or rejected by the database
+     */
+    void reject(int row, Outcome outcome, String message) {
+        outcomes[row] = outcome;
+        messages[row] = message;
+    }
+
+    /**
+     * Records the ID a row was given
+     */
+    void setID(int row, long id) {
+        ids[row] = id;
+    }
+
+    /**
+     * Called once the batch was committed
+     *
+     * @param rows - the rows that were written
+     */
+    void committed(List<Integer> rows) {
+        for (int row : rows) {
+            outcomes[row] = Outcome.CREATED;
+        }
+        committed = true;
+    }
+
+    /**
+     * @return true if the batch was committed, even if some rows were left out
+     */
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    /**
+     * @return number of rows in the batch
+     */
+    public int size() {
+        return outcomes.length;
+    }
+
+    public Outcome getOutcome(int row) {
+        return outcomes[row];
+    }
+
+    /**
+     * @return the ID of the created prescription, test or invoice, 0 if the row
+     * was not created or has no ID (referrals)
+     */
+    public long getID(int row) {
+        return outcomes[row] == Outcome.CREATED ? ids[row] : 0;
+    }
+
+    /**
+     * @return why the row was not created, null if it was created or only rolled back
+     */
+    public String getMessage(int row) {
+        return messages[row];
+    }
+
+    /**
+     * @return number of rows with the given outcome
+     */
+    public int count(Outcome outcome) {
+        int count = 0;
+        for (Outcome o : outcomes) {
+            if (o == outcome) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult[rows=" + outcomes.length + ", created=" + count(Outcome.CREATED)
+                + ", interactions=" + count(Outcome.INTERACTION) + ", failed=" + count(Outcome.FAILED)
+                + ", rolled back=" + count(Outcome.ROLLED_BACK) + "]";
+    }
+}
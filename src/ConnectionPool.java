@@ -0,0 +1,376 @@
+import java.sql.*;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h2>ConnectionPool</h2>
+ * Bounded pool of JDBC connections used by HealthDB. Connections are opened up
+ * front (pre-warmed), handed out for a single operation and returned afterwards.
+ * Connections that have been idle for a while are validated before being reused.
+ * Each pooled connection carries its own StatementCache.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class ConnectionPool {
+    private final String url;
+    private final String username;
+    private final String password;
+
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long validationIntervalMillis;
+    private final String validationQuery;
+    private final int statementCacheSize;
+
+    /** One permit per connection that may be checked out at once */
+    private final Semaphore permits;
+    /** Idle connections, most recently returned first so hot connections are reused */
+    private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<IdleConnection>();
+    /** Statement cache of every open connection */
+    private final Map<Connection, StatementCache> statementCaches =
+            Collections.synchronizedMap(new IdentityHashMap<Connection, StatementCache>());
+
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+
+    private volatile boolean closed = false;
+    /** Times the statements handed out by prepareStatement, null when not installed */
+    private volatile StatementLog statementLog = null;
+
+    /**
+     * Creates the pool and opens minSize connections right away
+     *
+     * @param url                      - JDBC URL of the database
+     * @param username                 - the username to log into the database
+     * @param password                 - the password to log into the database
+     * @param minSize                  - number of connections opened up front
+     * @param maxSize                  - maximum number of connections checked out at the same time
+     * @param borrowTimeoutMillis      - how long getConnection waits for a free connection
+     * @param validationIntervalMillis - idle time after which a connection is validated before reuse
+     * @param validationQuery          - cheap query used to check that a connection is still alive
+     * @param statementCacheSize       - number of prepared statements cached per connection
+     * @throws SQLException if the first connection cannot be opened (e.g. bad credentials)
+     */
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+                          long borrowTimeoutMillis, long validationIntervalMillis, String validationQuery,
+                          int statementCacheSize) throws SQLException {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.validationQuery = validationQuery;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        // Pre-warm the pool
+        int warm = Math.min(Math.max(minSize, 1), maxSize);
+        try {
+            for (int i = 0; i < warm; i++) {
+                idle.offerFirst(new IdleConnection(openConnection()));
+            }
+        } catch (SQLException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool, waiting up to the borrow timeout if all
+     * connections are in use. Every connection obtained here must be handed back
+     * with releaseConnection.
+     *
+     * @return an open connection
+     * @throws SQLException if the pool is closed, the wait timed out or no connection could be opened
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLException("Timed out waiting for a database connection after "
+                        + borrowTimeoutMillis + " ms");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection");
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            Connection con = takeIdle();
+            if (con == null) {
+                con = openConnection();
+            }
+            activeCount.incrementAndGet();
+            borrowCount.incrementAndGet();
+            return con;
+        } catch (SQLException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the cached PreparedStatement for the given SQL on a borrowed connection,
+     * preparing it if this connection has not seen the SQL before. The statement must
+     * not be closed by the caller.
+     *
+     * @param con - connection obtained from getConnection
+     * @param sql - SQL text with ? placeholders
+     * @return a prepared statement with its parameters cleared
+     * @throws SQLException if the statement cannot be prepared
+     */
+    public PreparedStatement prepareStatement(Connection con, String sql) throws SQLException {
+        StatementCache cache = statementCaches.get(con);
+        if (cache == null) {
+            cache = new StatementCache(con, statementCacheSize, statementCacheHits, statementCacheMisses);
+            statementCaches.put(con, cache);
+        }
+        StatementLog log = statementLog;
+        return log == null ? cache.prepare(sql) : log.wrap(cache.prepare(sql), sql);
+    }
+
+    /**
+     * Installs a log that times every statement handed out by prepareStatement from
+     * now on. Statements already handed out are not timed.
+     *
+     * @param log - the log, or null to stop timing statements
+     */
+    public void setStatementLog(StatementLog log) {
+        statementLog = log;
+    }
+
+    public StatementLog getStatementLog() {
+        return statementLog;
+    }
+
+    /**
+     * Returns a connection to the pool. Safe to call with null so it can be used
+     * unconditionally in a finally block.
+     *
+     * @param con - connection obtained from getConnection
+     */
+    public void releaseConnection(Connection con) {
+        if (con == null) {
+            return;
+        }
+        activeCount.decrementAndGet();
+        if (closed) {
+            closeQuietly(con);
+        } else {
+            idle.offerFirst(new IdleConnection(con));
+        }
+        permits.release();
+    }
+
+    /**
+     * Returns a connection that is known to be broken. The connection is closed
+     * instead of going back to the idle list.
+     *
+     * @param con - connection obtained from getConnection
+     */
+    public void invalidateConnection(Connection con) {
+        if (con == null) {
+            return;
+        }
+        activeCount.decrementAndGet();
+        closeQuietly(con);
+        permits.release();
+    }
+
+    /**
+     * Closes all idle connections. Connections that are still checked out are
+     * closed when they are released.
+     */
+    public void close() {
+        closed = true;
+        IdleConnection entry;
+        while ((entry = idle.pollFirst()) != null) {
+            closeQuietly(entry.con);
+        }
+    }
+
+    /**
+     * Pool occupancy and wait time metrics
+     */
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getOpenCount() {
+        return openCount.get();
+    }
+
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return number of callers currently blocked waiting for a connection
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailures.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.get();
+        return borrows == 0 ? 0 : totalWaitNanos.get() / 1e6 / borrows;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1e6;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.get();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.get();
+    }
+
+    public double getStatementCacheHitRatio() {
+        long hits = statementCacheHits.get();
+        long total = hits + statementCacheMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool[open=" + getOpenCount() + ", active=" + getActiveCount()
+                + ", idle=" + getIdleCount() + ", max=" + maxSize + ", waiting=" + getWaitingCount()
+                + ", borrows=" + getBorrowCount() + ", timeouts=" + getTimeoutCount()
+                + ", avgWaitMs=" + String.format("%.3f", getAverageWaitMillis())
+                + ", maxWaitMs=" + String.format("%.3f", getMaxWaitMillis())
+                + ", stmtCacheHits=" + getStatementCacheHits()
+                + ", stmtCacheMisses=" + getStatementCacheMisses() + "]";
+    }
+
+    /**
+     * Takes the most recently used idle connection, validating it first if it has
+     * been idle longer than the validation interval. Dead connections are dropped.
+     *
+     * @return a live idle connection, or null if there are none
+     */
+    private Connection takeIdle() {
+        IdleConnection entry;
+        while ((entry = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - entry.idleSince < validationIntervalMillis) {
+                return entry.con;
+            }
+            if (isValid(entry.con)) {
+                return entry.con;
+            }
+            validationFailures.incrementAndGet();
+            closeQuietly(entry.con);
+        }
+        return null;
+    }
+
+    private boolean isValid(Connection con) {
+        Statement stmt = null;
+        try {
+            if (con.isClosed()) {
+                return false;
+            }
+            stmt = con.createStatement();
+            ResultSet rs = stmt.executeQuery(validationQuery);
+            return rs.next();
+        } catch (SQLException ex) {
+            System.out.println("Discarding stale connection. " + ex.getMessage());
+            return false;
+        } finally {
+            if (stmt != null) {
+                try {
+                    stmt.close();
+                } catch (SQLException ignored) {
+                }
+            }
+        }
+    }
+
+    private Connection openConnection() throws SQLException {
+        Connection con = DriverManager.getConnection(url, username, password);
+        openCount.incrementAndGet();
+        statementCaches.put(con, new StatementCache(con, statementCacheSize,
+                statementCacheHits, statementCacheMisses));
+        return con;
+    }
+
+    private void closeQuietly(Connection con) {
+        openCount.decrementAndGet();
+        StatementCache cache = statementCaches.remove(con);
+        if (cache != null) {
+            cache.close();
+        }
+        try {
+            con.close();
+        } catch (SQLException ex) {
+            System.out.println("Error closing connection. " + ex.getMessage());
+        }
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        long max = maxWaitNanos.get();
+        while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos)) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    /**
+     * An idle connection and the time it was returned to the pool
+     */
+    private static final class IdleConnection {
+        final Connection con;
+        final long idleSince;
+
+        IdleConnection(Connection con) {
+            this.con = con;
+            this.idleSince = System.currentTimeMillis();
+        }
+    }
+}
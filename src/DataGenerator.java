@@ -0,0 +1,648 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <h2>DataGenerator</h2>
+ * Fills the setupdb.sql schema with synthetic data at a chosen scale, so HealthDB
+ * can be benchmarked against something the size of a provincial health system
+ * instead of the few dozen sample rows.
+ * <p>
+ * Generates postal codes, healthcare professionals (doctors, pharmacists and lab
+ * technicians), and for every patient a provincial plan, sometimes an extended
+ * benefits plan, and their referrals, prescriptions, lab tests and invoices. Every
+ * row only references rows generated before it or already in the database.
+ * Popularity is skewed the way real data is: a few names, cities, medications and
+ * doctors are very common, and a few patients have far more prescriptions, tests
+ * and invoices than the rest.
+ * <p>
+ * Output only depends on the seed, the scale and the rows already in the database.
+ * Rows are sent with JDBC batches, one transaction per batch, and patients are
+ * generated one at a time, so memory does not grow with the number of patients.
+ * Prescription, test, invoice and payment IDs come from the same sequences as
+ * the app's (see IdAllocator), so the app never reuses a generated ID.
+ * <p>
+ * Run on its own with java -Dhealthdb.generator.patients=... DataGenerator, which
+ * writes to the database chosen by -Dhealthdb.storage, or through
+ * HealthDBBenchmark with -Dhealthdb.bench.patients=...
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class DataGenerator {
+    /** Rows sent per batch and per transaction (-Dhealthdb.generator.batchSize=...) */
+    static final int BATCH_SIZE = Integer.getInteger("healthdb.generator.batchSize", 1000);
+    /** Latest date of any generated row (-Dhealthdb.generator.endDate=yyyy-MM-dd) */
+    static final LocalDate END_DATE = LocalDate.parse(System.getProperty("healthdb.generator.endDate", "2019-03-31"));
+    /** Generated rows cover this many days before END_DATE */
+    private static final int HISTORY_DAYS = 3 * 365;
+
+    /** Patients per healthcare professional and per postal code */
+    private static final int PATIENTS_PER_PROFESSIONAL = 500;
+    private static final int PATIENTS_PER_POSTAL_CODE = 20;
+    /** Codes that can be made from the X and Y prefixes, which the sample data does not use */
+    private static final int MAX_POSTAL_CODES = 2 * 10 * 26 * 10 * 26 * 10;
+
+    private static final String[] FIRST_NAMES = {"James", "Mary", "John", "Jennifer", "Michael", "Linda",
+            "David", "Sarah", "Robert", "Emily", "William", "Jessica", "Daniel", "Olivia", "Wei", "Priya",
+            "Thomas", "Emma", "Richard", "Sophia", "Joseph", "Chloe", "Kevin", "Hannah", "Jason", "Grace",
+            "Ryan", "Amanda", "Eric", "Michelle", "Jun", "Laura", "Raj", "Jenna", "Ahmed", "Fatima",
+            "Mohammed", "Mei", "Harpreet", "Simran", "Hiroshi", "Yuki", "Lucas", "Noah", "Liam", "Ava"};
+    private static final String[] LAST_NAMES = {"Smith", "Lee", "Brown", "Wong", "Wilson", "Chan", "Singh",
+            "Martin", "Taylor", "Anderson", "Li", "Nguyen", "Campbell", "Thompson", "Kim", "Johnson", "White",
+            "Liu", "Wang", "Stewart", "Gill", "Clark", "Lewis", "Walker", "Young", "Patel", "Chen", "Kong",
+            "Bains", "Evangelista", "Greenstreet", "MacDonald", "Fraser", "Sandhu", "Dhillon", "Tremblay",
+            "Gagnon", "Roy", "Cote", "Bouchard", "Morrison", "Reid", "Ross", "Murray", "Graham", "Hughes"};
+    private static final String[] STREETS = {"Main St", "Granville St", "Kingsway", "Broadway", "Fraser St",
+            "Oak St", "Cambie St", "King George Blvd", "No. 3 Rd", "Hastings St", "Marine Dr", "Fir St",
+            "Dunbar St", "Victoria Dr", "Commercial Dr", "Lonsdale Ave", "Scott Rd", "152nd St", "University Dr"};
+    /** City and province, most populous first */
+    private static final String[][] CITIES = {{"Vancouver", "BC"}, {"Surrey", "BC"}, {"Burnaby", "BC"},
+            {"Richmond", "BC"}, {"Coquitlam", "BC"}, {"Kelowna", "BC"}, {"Abbotsford", "BC"},
+            {"Victoria", "BC"}, {"Langley", "BC"}, {"Delta", "BC"}, {"Nanaimo", "BC"}, {"Kamloops", "BC"},
+            {"North Vancouver", "BC"}, {"Chilliwack", "BC"}, {"Prince George", "BC"}, {"Vernon", "BC"},
+            {"Penticton", "BC"}, {"Calgary", "AB"}, {"Edmonton", "AB"}, {"Whitehorse", "YT"}};
+    private static final String[] AREA_CODES = {"604", "778", "250", "236", "672"};
+    private static final String[] SPECIALIZATIONS = {"Anesthesiologist", "Cardiologist", "Dermatologist",
+            "Endocrinologist", "Gastroenterologist", "Geriatric Medicine Specialist", "Gynecologist",
+            "Hematologist", "Heptologist", "Neonatologist", "Nephrologist", "Neurologist", "Obstetrician",
+            "Oncologist", "Oral Surgeon", "Ophthalmologist", "Orthopedic Surgeon", "Otolaryngologist",
+            "Pediatrician", "Psychiatrist", "Pulmonologist", "Radiologist", "Rheumatologist",
+            "Sleep Disorder Specialist", "Surgeon", "Urologist"};
+    /** Policy types, most common first, and how often each is chosen out of 100 */
+    private static final String[] POLICY_TYPES = {"BC Resident - MSP", "BC Resident - Premium MSP",
+            "BC Resident - Income Assistance", "Out-of-Province", "BC Resident - Convention Refugees"};
+    private static final int[] POLICY_WEIGHTS = {80, 10, 5, 3, 2};
+    private static final String[] INVOICE_ITEMS = {"Clinic visit", "Annual exam", "ER Visit", "Ambulance",
+            "Physiotherapy", "Orthodic insoles", "Massage therapy", "Lab fees", "Medical imaging", "Missed appointment"};
+    private static final String[] PAYMENT_METHODS = {"Credit\\Debit", "Cash", "Cheque"};
+    private static final int[] PAYMENT_WEIGHTS = {75, 15, 10};
+    private static final double[] DOSAGES = {2.5, 5, 10, 20, 25, 40, 50, 100, 250, 500};
+    private static final int[] QUANTITIES = {7, 14, 30, 60, 90, 100, 180, 300};
+
+    private final ConnectionPool pool;
+    private final StorageBackend backend;
+    private final long patients;
+    private final Random random;
+
+    private final Zipf firstNames = new Zipf(FIRST_NAMES.length, 1.0);
+    private final Zipf lastNames = new Zipf(LAST_NAMES.length, 1.0);
+    private final Zipf cities = new Zipf(CITIES.length, 1.1);
+    private Zipf postalCodeChoice;
+    private Zipf medicationChoice;
+    private Zipf doctorChoice;
+    private Zipf specialistChoice;
+    private Zipf pharmacistChoice;
+    private Zipf labTechChoice;
+
+    private String[] postalCodes;
+    private String[] medications;
+    private long[] doctors;
+    private long[] specialists;
+    private long[] pharmacists;
+    private long[] labTechs;
+
+    private long rowCount = 0;
+
+    /**
+     * @param pool     - pool of the database to fill
+     * @param backend  - the database's backend, for its sequence SQL
+     * @param patients - number of patients to generate
+     * @param seed     - seed of every random choice
+     */
+    public DataGenerator(ConnectionPool pool, StorageBackend backend, long patients, long seed) {
+        this.pool = pool;
+        this.backend = backend;
+        this.patients = patients;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String args[]) {
+        HealthDB hdb = new HealthDB();
+        if (!hdb.connectToDB(System.getProperty("healthdb.generator.user", "sa"),
+                System.getProperty("healthdb.generator.password", ""))) {
+            System.exit(-1);
+        }
+        try {
+            new DataGenerator(hdb.getConnectionPool(), hdb.getStorageBackend(),
+                    Long.getLong("healthdb.generator.patients", 1000L),
+                    Long.getLong("healthdb.generator.seed", 304L)).generate();
+        } catch (SQLException ex) {
+            System.out.println("Failed to generate data. " + ex.getMessage());
+            System.exit(1);
+        } finally {
+            hdb.disconnect();
+        }
+    }
+
+    /**
+     * Generates the data. Clients that cache rows (HealthDB's name index and
+     * balances) should reconnect afterwards.
+     *
+     * @return number of rows inserted
+     * @throws SQLException if an insert failed; batches already committed stay
+     */
+    public long generate() throws SQLException {
+        long start = System.currentTimeMillis();
+        Connection con = pool.getConnection();
+        boolean autoCommit = con.getAutoCommit();
+        try {
+            con.setAutoCommit(false);
+            readMedications(con);
+            generatePostalCodes(con);
+            generateProfessionals(con);
+            generatePatients(con);
+        } catch (SQLException ex) {
+            con.rollback();
+            throw ex;
+        } finally {
+            con.setAutoCommit(autoCommit);
+            pool.releaseConnection(con);
+        }
+        System.out.println("Generated " + rowCount + " rows for " + patients + " patients in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return rowCount;
+    }
+
+    private void readMedications(Connection con) throws SQLException {
+        ArrayList<String> names = new ArrayList<String>();
+        Statement stmt = con.createStatement();
+        ResultSet rs = stmt.executeQuery("select medication from medication order by medication");
+        while (rs.next()) {
+            names.add(rs.getString(1));
+        }
+        stmt.close();
+        if (names.isEmpty()) {
+            throw new SQLException("The Medication table is empty, run setupdb.sql first");
+        }
+        medications = names.toArray(new String[names.size()]);
+        // Shuffled so the most prescribed medication does not depend on its name
+        shuffle(medications);
+        medicationChoice = new Zipf(medications.length, 1.2);
+    }
+
+    private void generatePostalCodes(Connection con) throws SQLException {
+        int count = (int) Math.min(MAX_POSTAL_CODES / 2, Math.max(20, patients / PATIENTS_PER_POSTAL_CODE));
+        // Codes made by an earlier run are skipped
+        int offset = (int) queryLong(con, "select count(*) from postalCode "
+                + "where postalCode like 'X%' or postalCode like 'Y%'");
+        if (offset + count > MAX_POSTAL_CODES) {
+            throw new SQLException("Out of generated postal codes");
+        }
+        postalCodes = new String[count];
+        PreparedStatement ps = con.prepareStatement("insert into postalCode values (?, ?, ?, ?)");
+        Batch batch = new Batch(con, ps);
+        for (int i = 0; i < count; i++) {
+            postalCodes[i] = postalCode(offset + i);
+            String[] city = CITIES[cities.next(random)];
+            ps.setString(1, postalCodes[i]);
+            ps.setString(2, city[0]);
+            ps.setString(3, city[1]);
+            ps.setString(4, "Canada");
+            batch.add();
+        }
+        batch.finish();
+        postalCodeChoice = new Zipf(count, 0.8);
+    }
+
+    private void generateProfessionals(Connection con) throws SQLException {
+        int count = (int) Math.max(10, patients / PATIENTS_PER_PROFESSIONAL);
+        long nextHID = queryLong(con, "select max(HID) from healthcareProfessional") + 1;
+
+        // 60% doctors, half of them family doctors, 20% pharmacists, 20% lab technicians
+        int doctorCount = Math.max(2, count * 3 / 10);
+        int specialistCount = Math.max(1, count * 3 / 10);
+        int pharmacistCount = Math.max(1, count / 5);
+        int labTechCount = Math.max(1, count - doctorCount - specialistCount - pharmacistCount);
+        doctors = new long[doctorCount];
+        specialists = new long[specialistCount];
+        pharmacists = new long[pharmacistCount];
+        labTechs = new long[labTechCount];
+
+        PreparedStatement person = con.prepareStatement(
+                "insert into healthcareProfessional values (?, ?, ?, ?, ?, ?, ?, ?)");
+        PreparedStatement doctor = con.prepareStatement("insert into doctor values (?, ?, ?)");
+        PreparedStatement pharmacist = con.prepareStatement("insert into pharmacist values (?, ?)");
+        PreparedStatement labTech = con.prepareStatement("insert into labTechnician values (?, ?)");
+        Batch batch = new Batch(con, person, doctor, pharmacist, labTech);
+        long[][] roles = {doctors, specialists, pharmacists, labTechs};
+        for (long[] role : roles) {
+            for (int i = 0; i < role.length; i++) {
+                long hid = nextHID++;
+                role[i] = hid;
+                person.setLong(1, hid);
+                person.setString(2, FIRST_NAMES[firstNames.next(random)]);
+                person.setString(3, LAST_NAMES[lastNames.next(random)]);
+                person.setString(4, String.valueOf(100 + random.nextInt(900)));
+                person.setString(5, street());
+                person.setString(6, postalCodes[postalCodeChoice.next(random)]);
+                person.setString(7, phone());
+                person.setString(8, phone());
+                person.addBatch();
+
+                int certification = 100000 + random.nextInt(900000);
+                if (role == doctors || role == specialists) {
+                    doctor.setLong(1, hid);
+                    doctor.setInt(2, certification);
+                    doctor.setString(3, role == doctors ? "Family Doctor"
+                            : SPECIALIZATIONS[random.nextInt(SPECIALIZATIONS.length)]);
+                    doctor.addBatch();
+                } else {
+                    PreparedStatement ps = role == pharmacists ? pharmacist : labTech;
+                    ps.setLong(1, hid);
+                    ps.setInt(2, certification);
+                    ps.addBatch();
+                }
+                batch.added();
+            }
+        }
+        batch.finish();
+
+        doctorChoice = new Zipf(doctors.length, 0.7);
+        specialistChoice = new Zipf(specialists.length, 0.7);
+        pharmacistChoice = new Zipf(pharmacists.length, 1.0);
+        labTechChoice = new Zipf(labTechs.length, 1.0);
+    }
+
+    private void generatePatients(Connection con) throws SQLException {
+        long nextPatientID = Math.max(queryLong(con, "select max(patientID) from patient") + 1, 100000000L);
+        long nextPlanID = queryLong(con, "select max(planID) from provincialHealthPlan") + 1;
+        long nextEBPID = queryLong(con, "select max(EBPID) from extendedBenefitsPlan") + 1;
+        IdAllocator prescriptionIDs = new IdAllocator(pool, backend, "prescriptionIDSeq", "prescription", "prescriptionID");
+        IdAllocator testIDs = new IdAllocator(pool, backend, "testIDSeq", "labtest", "testID");
+        IdAllocator invoiceIDs = new IdAllocator(pool, backend, "invoiceIDSeq", "invoice", "invoiceID");
+        IdAllocator paymentIDs = new IdAllocator(pool, backend, "paymentIDSeq", "invoice", "paymentID");
+
+        PreparedStatement patient = con.prepareStatement("insert into patient values (?, ?, ?, ?, ?, ?, ?)");
+        PreparedStatement plan = con.prepareStatement("insert into provincialHealthPlan values (?, ?, ?, ?, ?)");
+        PreparedStatement benefits = con.prepareStatement("insert into extendedBenefitsPlan values "
+                + "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        PreparedStatement referral = con.prepareStatement("insert into referral values (?, ?, ?, ?)");
+        PreparedStatement prescription = con.prepareStatement(
+                "insert into prescription values (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        PreparedStatement test = con.prepareStatement("insert into labTest values "
+                + "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        PreparedStatement invoice = con.prepareStatement(
+                "insert into invoice values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        // Parents before children
+        Batch batch = new Batch(con, patient, plan, benefits, referral, prescription, test, invoice);
+
+        long reportEvery = Math.max(1, patients / 10);
+        for (long n = 0; n < patients; n++) {
+            long pid = nextPatientID++;
+            long familyDoctor = doctors[doctorChoice.next(random)];
+            patient.setLong(1, pid);
+            patient.setString(2, FIRST_NAMES[firstNames.next(random)]);
+            patient.setString(3, LAST_NAMES[lastNames.next(random)]);
+            patient.setString(4, street());
+            patient.setString(5, postalCodes[postalCodeChoice.next(random)]);
+            patient.setString(6, random.nextInt(10) < 7 ? phone() : null);
+            patient.setString(7, random.nextInt(10) < 8 ? phone() : null);
+            patient.addBatch();
+            batch.added();
+
+            long planID = nextPlanID++;
+            LocalDate planStart = LocalDate.of(END_DATE.getYear() - random.nextInt(5), 1, 1);
+            plan.setLong(1, planID);
+            plan.setString(2, POLICY_TYPES[weighted(POLICY_WEIGHTS)]);
+            plan.setDate(3, java.sql.Date.valueOf(planStart));
+            plan.setDate(4, java.sql.Date.valueOf(LocalDate.of(END_DATE.getYear() + 1, 12, 31)));
+            plan.setLong(5, pid);
+            plan.addBatch();
+            batch.added();
+
+            if (random.nextInt(10) < 3) {
+                addBenefits(benefits, nextEBPID++, planID);
+                batch.added();
+            }
+
+            // Referrals go from the family doctor to distinct specialists
+            if (random.nextInt(100) < 15) {
+                int count = 1 + random.nextInt(2);
+                long first = -1;
+                for (int i = 0; i < count; i++) {
+                    long specialist = specialists[specialistChoice.next(random)];
+                    if (specialist == first) {
+                        continue;
+                    }
+                    first = specialist;
+                    referral.setLong(1, pid);
+                    referral.setLong(2, familyDoctor);
+                    referral.setLong(3, specialist);
+                    referral.setDate(4, date(pastDate()));
+                    referral.addBatch();
+                    batch.added();
+                }
+            }
+
+            int prescriptions = heavyTail(2.0, 200);
+            for (int i = 0; i < prescriptions; i++) {
+                LocalDate prescribed = pastDate();
+                boolean filled = random.nextInt(10) < 9;
+                prescription.setLong(1, prescriptionIDs.next(con));
+                prescription.setString(2, medications[medicationChoice.next(random)]);
+                prescription.setDouble(3, DOSAGES[random.nextInt(DOSAGES.length)]);
+                prescription.setInt(4, QUANTITIES[random.nextInt(QUANTITIES.length)]);
+                prescription.setLong(5, pid);
+                prescription.setLong(6, random.nextInt(10) < 8 ? familyDoctor : specialists[specialistChoice.next(random)]);
+                setLongOrNull(prescription, 7, filled ? pharmacists[pharmacistChoice.next(random)] : null);
+                prescription.setDate(8, date(prescribed));
+                prescription.setDate(9, filled ? date(later(prescribed, 5)) : null);
+                prescription.addBatch();
+                batch.added();
+            }
+
+            int tests = heavyTail(1.0, 100);
+            for (int i = 0; i < tests; i++) {
+                addTest(test, testIDs.next(con), pid, familyDoctor);
+                batch.added();
+            }
+
+            int invoices = heavyTail(2.0, 150);
+            for (int i = 0; i < invoices; i++) {
+                addInvoice(invoice, con, invoiceIDs, paymentIDs, pid, planID);
+                batch.added();
+            }
+
+            if ((n + 1) % reportEvery == 0) {
+                System.out.println("  " + (n + 1) + " of " + patients + " patients, " + (rowCount + batch.pending)
+                        + " rows");
+            }
+        }
+        batch.finish();
+    }
+
+    private void addBenefits(PreparedStatement ps, long ebpID, long planID) throws SQLException {
+        LocalDate start = LocalDate.of(END_DATE.getYear(), 1, 1);
+        ps.setLong(1, ebpID);
+        ps.setLong(2, planID);
+        ps.setDate(3, date(start));
+        ps.setDate(4, date(start.plusYears(1)));
+        // Chiropractic, physiotherapy, podiatry, massage, acupuncture, medication
+        boolean[] covered = new boolean[6];
+        for (int i = 0; i < covered.length; i++) {
+            covered[i] = random.nextInt(10) < 6;
+            ps.setString(5 + i, covered[i] ? "Y" : "N");
+        }
+        // Limit and year to date of physiotherapy, podiatry, chiropractic, massage, acupuncture, medication
+        int[] coverage = {1, 2, 0, 3, 4, 5};
+        for (int i = 0; i < coverage.length; i++) {
+            if (covered[coverage[i]]) {
+                double limit = 500 * (1 + random.nextInt(5));
+                ps.setDouble(11 + 2 * i, limit);
+                ps.setDouble(12 + 2 * i, Math.round(limit * random.nextDouble() * 100) / 100.0);
+            } else {
+                ps.setNull(11 + 2 * i, Types.DECIMAL);
+                ps.setNull(12 + 2 * i, Types.DECIMAL);
+            }
+        }
+        ps.addBatch();
+    }
+
+    private void addTest(PreparedStatement ps, long testID, long pid, long drHID) throws SQLException {
+        LocalDate ordered = pastDate();
+        boolean performed = random.nextInt(100) < 85;
+        ps.setLong(1, testID);
+        // Cholesterol, HDL, LDL, triglycerides, white and red cell counts, hematocrit, platelets,
+        // NRBC percent and absolute, sodium, phosphorus, glucose
+        double[][] normal = {{190, 30}, {55, 12}, {110, 25}, {130, 40}, {7, 2}, {4.8, 0.5}, {42, 4},
+                {250, 60}, {0.2, 0.2}, {0.01, 0.01}, {140, 3}, {3.5, 0.6}, {95, 20}};
+        for (int i = 0; i < normal.length; i++) {
+            if (performed) {
+                double value = Math.max(0, normal[i][0] + random.nextGaussian() * normal[i][1]);
+                ps.setDouble(2 + i, Math.round(value * 1000) / 1000.0);
+            } else {
+                ps.setNull(2 + i, Types.DECIMAL);
+            }
+        }
+        ps.setLong(15, pid);
+        ps.setLong(16, drHID);
+        setLongOrNull(ps, 17, performed ? labTechs[labTechChoice.next(random)] : null);
+        ps.setDate(18, date(ordered));
+        ps.setDate(19, performed ? date(later(ordered, 14)) : null);
+        ps.addBatch();
+    }
+
+    private void addInvoice(PreparedStatement ps, Connection con, IdAllocator invoiceIDs, IdAllocator paymentIDs,
+                            long pid, long planID) throws SQLException {
+        LocalDate created = pastDate();
+        LocalDate due = created.plusDays(30);
+        // Older invoices are more likely to have been paid
+        boolean paid = due.isBefore(END_DATE) ? random.nextInt(10) < 8 : random.nextInt(10) < 3;
+        ps.setLong(1, invoiceIDs.next(con));
+        ps.setLong(2, pid);
+        ps.setString(3, INVOICE_ITEMS[weightedIndex(INVOICE_ITEMS.length)]);
+        ps.setDate(4, date(created));
+        ps.setDate(5, date(due));
+        if (paid) {
+            String method = PAYMENT_METHODS[weighted(PAYMENT_WEIGHTS)];
+            ps.setString(6, "Paid");
+            ps.setDate(7, date(later(created, 45)));
+            ps.setString(8, method);
+            ps.setDouble(9, 0.0);
+            setLongOrNull(ps, 10, method.equals("Credit\\Debit") ? paymentIDs.next(con) : null);
+        } else {
+            // Mostly small amounts with the occasional large one
+            double amount = Math.exp(Math.log(120) + random.nextGaussian() * 0.9);
+            ps.setString(6, "Unpaid");
+            ps.setNull(7, Types.DATE);
+            ps.setNull(8, Types.VARCHAR);
+            ps.setDouble(9, Math.round(Math.min(amount, 50000) * 100) / 100.0);
+            ps.setNull(10, Types.INTEGER);
+        }
+        ps.setLong(11, planID);
+        ps.addBatch();
+    }
+
+    /**
+     * Rows per patient are log-normally distributed: most patients have a few,
+     * a small number have many
+     *
+     * @param median - the median count
+     * @param max    - the largest count returned
+     */
+    private int heavyTail(double median, int max) {
+        double value = Math.exp(Math.log(median + 0.5) + random.nextGaussian()) - 0.5;
+        return (int) Math.min(max, Math.max(0, Math.round(value)));
+    }
+
+    /**
+     * @param weights - relative weight of each index
+     * @return an index chosen in proportion to its weight
+     */
+    private int weighted(int[] weights) {
+        int total = 0;
+        for (int w : weights) {
+            total += w;
+        }
+        int r = random.nextInt(total);
+        for (int i = 0; i < weights.length; i++) {
+            r -= weights[i];
+            if (r < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    /**
+     * @return an index below n where lower indices are more likely
+     */
+    private int weightedIndex(int n) {
+        return Math.min(n - 1, (int) (n * random.nextDouble() * random.nextDouble()));
+    }
+
+    private LocalDate pastDate() {
+        return END_DATE.minusDays(random.nextInt(HISTORY_DAYS));
+    }
+
+    /**
+     * @return a date up to maxDays after the given one, but not after END_DATE
+     */
+    private LocalDate later(LocalDate date, int maxDays) {
+        LocalDate result = date.plusDays(random.nextInt(maxDays + 1));
+        return result.isAfter(END_DATE) ? END_DATE : result;
+    }
+
+    private String street() {
+        return (1 + random.nextInt(19999)) + " " + STREETS[weightedIndex(STREETS.length)];
+    }
+
+    private String phone() {
+        return AREA_CODES[weightedIndex(AREA_CODES.length)] + "-" + (200 + random.nextInt(800)) + "-"
+                + String.format("%04d", random.nextInt(10000));
+    }
+
+    private void shuffle(String[] values) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+
+    /**
+     * @param index - below MAX_POSTAL_CODES
+     * @return a unique code of the form X9A9A9 or Y9A9A9
+     */
+    static String postalCode(int index) {
+        char[] code = new char[6];
+        for (int i = 5; i >= 1; i--) {
+            int radix = i % 2 == 1 ? 10 : 26;
+            int digit = index % radix;
+            code[i] = radix == 10 ? (char) ('0' + digit) : (char) ('A' + digit);
+            index /= radix;
+        }
+        code[0] = index == 0 ? 'X' : 'Y';
+        return new String(code);
+    }
+
+    private static java.sql.Date date(LocalDate date) {
+        return java.sql.Date.valueOf(date);
+    }
+
+    private static void setLongOrNull(PreparedStatement ps, int index, Long value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+        } else {
+            ps.setLong(index, value);
+        }
+    }
+
+    private static long queryLong(Connection con, String query) throws SQLException {
+        Statement stmt = con.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery(query);
+            return rs.next() ? rs.getLong(1) : 0;
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Sends the batches of one or more statements and commits once BATCH_SIZE
+     * rows are pending. Statements are executed in the order given, so parent
+     * rows are inserted before the rows that reference them.
+     */
+    private final class Batch {
+        private final Connection con;
+        private final PreparedStatement[] statements;
+        int pending = 0;
+
+        Batch(Connection con, PreparedStatement... statements) {
+            this.con = con;
+            this.statements = statements;
+        }
+
+        /**
+         * Adds the current parameters of the only statement to its batch
+         */
+        void add() throws SQLException {
+            statements[0].addBatch();
+            added();
+        }
+
+        /**
+         * Counts a row the caller added to one of the statements' batches
+         */
+        void added() throws SQLException {
+            if (++pending >= BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() throws SQLException {
+            if (pending == 0) {
+                return;
+            }
+            for (PreparedStatement ps : statements) {
+                ps.executeBatch();
+            }
+            con.commit();
+            rowCount += pending;
+            pending = 0;
+        }
+
+        /**
+         * Sends what is left and closes the statements
+         */
+        void finish() throws SQLException {
+            flush();
+            for (PreparedStatement ps : statements) {
+                ps.close();
+            }
+        }
+    }
+
+    /**
+     * Picks indices 0..n-1 with probability proportional to 1 / (index + 1)^s, so
+     * index 0 is the most popular
+     */
+    static final class Zipf {
+        private final double[] cumulative;
+
+        Zipf(int n, double s) {
+            cumulative = new double[n];
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                total += 1 / Math.pow(i + 1, s);
+                cumulative[i] = total;
+            }
+            for (int i = 0; i < n; i++) {
+                cumulative[i] /= total;
+            }
+        }
+
+        int next(Random random) {
+            int i = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(cumulative.length - 1, i < 0 ? -i - 1 : i);
+        }
+    }
+}
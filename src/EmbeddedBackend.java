@@ -0,0 +1,215 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h2>EmbeddedBackend</h2>
+ * An in-process database that needs no server or network, for running the app,
+ * HealthDBTest and benchmarks on a laptop or build machine. The first time it
+ * connects to a database without a Patient table it runs setupdb.sql, so it
+ * starts with the same schema and sample data as the Oracle database.
+ * <p>
+ * HealthDB's SQL is written for Oracle (rownum, trunc, to_date, sequences), so
+ * the embedded database has to understand that dialect. The default is H2 in
+ * Oracle compatibility mode, in memory; its jar has to be on the classpath.
+ * Another database can be used with -Dhealthdb.embedded.driver=...,
+ * -Dhealthdb.embedded.url=... and -Dhealthdb.embedded.script=... (path of
+ * setupdb.sql, also looked up on the classpath).
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class EmbeddedBackend implements StorageBackend {
+    static final String DEFAULT_DRIVER = "org.h2.Driver";
+    /** DB_CLOSE_DELAY keeps the in-memory database alive between pooled connections */
+    static final String DEFAULT_URL = "jdbc:h2:mem:healthdb;MODE=Oracle;DB_CLOSE_DELAY=-1";
+    static final String DEFAULT_SCRIPT = "setupdb.sql";
+
+    private final String driver;
+    private final String url;
+    private final String script;
+
+    public EmbeddedBackend() {
+        this(System.getProperty("healthdb.embedded.driver", DEFAULT_DRIVER),
+                System.getProperty("healthdb.embedded.url", DEFAULT_URL),
+                System.getProperty("healthdb.embedded.script", DEFAULT_SCRIPT));
+    }
+
+    /**
+     * @param driver - class name of the JDBC driver
+     * @param url    - JDBC URL of the database
+     * @param script - path of the script that creates and populates the schema
+     */
+    public EmbeddedBackend(String driver, String url, String script) {
+        this.driver = driver;
+        this.url = url;
+        this.script = script;
+    }
+
+    @Override
+    public String getName() {
+        return "embedded database";
+    }
+
+    @Override
+    public void loadDriver() throws SQLException {
+        try {
+            Class.forName(driver);
+        } catch (ClassNotFoundException ex) {
+            throw new SQLException("JDBC driver " + driver + " is not on the classpath");
+        }
+    }
+
+    @Override
+    public String getURL() {
+        return url;
+    }
+
+    @Override
+    public String getValidationQuery() {
+        return "select 1 from dual";
+    }
+
+    /**
+     * Runs the setup script unless the schema already exists
+     */
+    @Override
+    public void initialize(Connection con) throws SQLException {
+        ResultSet rs = con.getMetaData().getTables(null, null, "PATIENT", null);
+        boolean exists = rs.next();
+        rs.close();
+        if (exists) {
+            return;
+        }
+
+        List<String> statements;
+        try {
+            statements = parseScript(readScript());
+        } catch (IOException ex) {
+            throw new SQLException("Failed to read " + script + ". " + ex.getMessage());
+        }
+        System.out.println("Creating schema from " + script + " (" + statements.size() + " statements)");
+        Statement stmt = con.createStatement();
+        try {
+            for (String sql : statements) {
+                try {
+                    stmt.execute(sql);
+                } catch (SQLException ex) {
+                    // The script starts by dropping everything, which fails on an empty database
+                    if (!sql.regionMatches(true, 0, "drop ", 0, 5)) {
+                        throw new SQLException("Failed to run " + sql + ". " + ex.getMessage(), ex);
+                    }
+                }
+            }
+            if (!con.getAutoCommit()) {
+                con.commit();
+            }
+        } finally {
+            stmt.close();
+        }
+    }
+
+    @Override
+    public String nextValueQuery(String sequenceName) {
+        return "select " + sequenceName + ".nextval from dual";
+    }
+
+    @Override
+    public String sequenceIncrementQuery() {
+        return "select increment from information_schema.sequences where sequence_name = ?";
+    }
+
+    @Override
+    public String toString() {
+        return "EmbeddedBackend[" + url + "]";
+    }
+
+    /**
+     * Reads the script from the file system, or from the classpath if there is no such file
+     */
+    private String readScript() throws IOException {
+        InputStream in;
+        File file = new File(script);
+        if (file.isFile()) {
+            in = new FileInputStream(file);
+        } else {
+            in = EmbeddedBackend.class.getClassLoader().getResourceAsStream(script);
+            if (in == null) {
+                throw new FileNotFoundException(script + " not found in the working directory or on the classpath");
+            }
+        }
+        try {
+            Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+            StringBuilder sb = new StringBuilder();
+            char[] buf = new char[8192];
+            int n;
+            while ((n = reader.read(buf)) > 0) {
+                sb.append(buf, 0, n);
+            }
+            return sb.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Splits a SQL*Plus style script into statements. Statements end with a
+     * semicolon; comments are dropped and semicolons inside quotes are kept.
+     *
+     * @param text - the script
+     * @return the statements, without their semicolons
+     */
+    static List<String> parseScript(String text) {
+        ArrayList<String> statements = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '\'') {
+                // Quoted string, '' is an escaped quote
+                int end = i + 1;
+                while (end < text.length()) {
+                    if (text.charAt(end) == '\'') {
+                        if (end + 1 < text.length() && text.charAt(end + 1) == '\'') {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                end = Math.min(end + 1, text.length());
+                sb.append(text, i, end);
+                i = end;
+            } else if (text.startsWith("/*", i)) {
+                int end = text.indexOf("*/", i + 2);
+                i = end < 0 ? text.length() : end + 2;
+                sb.append(' ');
+            } else if (text.startsWith("--", i)) {
+                int end = text.indexOf('\n', i);
+                i = end < 0 ? text.length() : end;
+            } else if (c == ';') {
+                String sql = sb.toString().trim();
+                if (sql.length() > 0) {
+                    statements.add(sql);
+                }
+                sb.setLength(0);
+                i++;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        String sql = sb.toString().trim();
+        if (sql.length() > 0) {
+            statements.add(sql);
+        }
+        return statements;
+    }
+}
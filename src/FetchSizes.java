@@ -0,0 +1,189 @@
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h2>FetchSizes</h2>
+ * JDBC fetch size of each HealthDB query. The Oracle driver fetches 10 rows per
+ * round trip by default, so a 500 row invoice history costs 50 round trips.
+ * <p>
+ * A query's fetch size is fixed with -Dhealthdb.fetchSize.&lt;operation&gt;=n, e.g.
+ * -Dhealthdb.fetchSize.getInvoices=200. Other queries start at the default and,
+ * when adaptive, follow the row counts they return: the fetch size is one more than
+ * a recent high of the row count, so a typical result comes back in a single round
+ * trip. The high jumps up to a larger result right away and decays by an eighth of
+ * the difference per smaller result. Fetch sizes never go over the maximum, as the
+ * driver allocates a buffer of fetch size rows per statement.
+ * <p>
+ * Round trips are estimated as one per fetch size rows, plus one to find the end
+ * of the result; the driver does not report them.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class FetchSizes {
+    private final int defaultSize;
+    private final int maxSize;
+    private final boolean adaptive;
+    private final ConcurrentHashMap<String, Query> queries = new ConcurrentHashMap<String, Query>();
+
+    /**
+     * @param defaultSize - fetch size of a query before it has returned any rows
+     * @param maxSize     - largest fetch size the adaptive mode picks
+     * @param adaptive    - false to use the default for every query without its own setting
+     */
+    public FetchSizes(int defaultSize, int maxSize, boolean adaptive) {
+        this.defaultSize = Math.max(1, defaultSize);
+        this.maxSize = Math.max(this.defaultSize, maxSize);
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Sets the fetch size of a statement before it is executed
+     *
+     * @param ps        - the statement
+     * @param operation - name of the HealthDB method running it
+     * @return the fetch size set, to pass to record
+     * @throws SQLException if the driver rejects the fetch size
+     */
+    public int apply(PreparedStatement ps, String operation) throws SQLException {
+        int size = get(operation).getFetchSize();
+        ps.setFetchSize(size);
+        return size;
+    }
+
+    /**
+     * Records the rows a query returned, and adapts its fetch size
+     *
+     * @param operation - name of the HealthDB method that ran it
+     * @param fetchSize - value returned by apply
+     * @param rows      - rows read from the result set
+     */
+    public void record(String operation, int fetchSize, int rows) {
+        get(operation).record(fetchSize, rows);
+    }
+
+    /**
+     * @param operation - name of the HealthDB method
+     * @return the query's statistics, created on first use
+     */
+    public Query get(String operation) {
+        Query query = queries.get(operation);
+        if (query == null) {
+            Integer fixed = Integer.getInteger("healthdb.fetchSize." + operation);
+            Query created = new Query(operation, fixed == null ? -1 : Math.max(1, fixed));
+            query = queries.putIfAbsent(operation, created);
+            if (query == null) {
+                query = created;
+            }
+        }
+        return query;
+    }
+
+    /**
+     * @return every query seen so far, by name
+     */
+    public List<Query> getQueries() {
+        ArrayList<Query> list = new ArrayList<Query>(queries.values());
+        Collections.sort(list);
+        return list;
+    }
+
+    /**
+     * @return a table with one line per query
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Fetch sizes (" + (adaptive ? "adaptive" : "fixed") + ", default "
+                + defaultSize + ", max " + maxSize + ")\n");
+        sb.append(String.format("%-32s %9s %9s %10s %12s %14s", "query", "fetch", "runs", "rows", "round trips",
+                "trips per run"));
+        for (Query q : getQueries()) {
+            sb.append('\n').append(q);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Fetch size and round trips of one query
+     */
+    public class Query implements Comparable<Query> {
+        private final String name;
+        /** Fetch size from its own system property, -1 if none */
+        private final int fixedSize;
+        /** Recent high of the row count, -1 until the query has run */
+        private final AtomicInteger rowsHigh = new AtomicInteger(-1);
+        private final AtomicLong runs = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong roundTrips = new AtomicLong();
+
+        Query(String name, int fixedSize) {
+            this.name = name;
+            this.fixedSize = fixedSize;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the fetch size the next run will use
+         */
+        public int getFetchSize() {
+            if (fixedSize > 0) {
+                return fixedSize;
+            }
+            int high = rowsHigh.get();
+            if (!adaptive || high < 0) {
+                return defaultSize;
+            }
+            return Math.max(1, Math.min(maxSize, high + 1));
+        }
+
+        public long getRuns() {
+            return runs.get();
+        }
+
+        public long getRows() {
+            return rows.get();
+        }
+
+        /**
+         * @return estimated round trips of every run so far
+         */
+        public long getRoundTrips() {
+            return roundTrips.get();
+        }
+
+        void record(int fetchSize, int rowCount) {
+            runs.incrementAndGet();
+            rows.addAndGet(rowCount);
+            roundTrips.addAndGet(rowCount / fetchSize + 1);
+            int high = rowsHigh.get();
+            int next = high < 0 || rowCount >= high ? rowCount : high - (high - rowCount + 7) / 8;
+            // Lost updates from concurrent runs only delay the adjustment
+            rowsHigh.compareAndSet(high, next);
+        }
+
+        @Override
+        public int compareTo(Query other) {
+            return name.compareTo(other.name);
+        }
+
+        @Override
+        public String toString() {
+            long n = runs.get();
+            return String.format("%-32s %9d %9d %10d %12d %14.2f", name, getFetchSize(), n, rows.get(),
+                    roundTrips.get(), n == 0 ? 0 : (double) roundTrips.get() / n);
+        }
+    }
+}
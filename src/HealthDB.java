@@ -1,11 +1,18 @@
+import java.io.File;
+import java.io.IOException;
 import java.sql.*;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.text.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * <h2>HealthDB</h2>
  * Handles the back end logic of the Healthcare Database, including communication
- * with the Oracle database and query engine of the application
+ * with the Oracle database and query engine of the application. The database
+ * is reached through a StorageBackend, so the same queries can run against an
+ * embedded database (-Dhealthdb.storage=embedded).
  * <br>
  * CPSC 304 Group 12
  *
@@ -24,35 +31,181 @@ public class HealthDB {
     private String password;
 
     private Integer userClass;
-    private Connection con;
 
+    /** Where the data is stored, "oracle" (default) or "embedded" (-Dhealthdb.storage=...) */
+    static final String STORAGE = System.getProperty("healthdb.storage", "oracle");
     /**
-     * Primary key constants Increment on creating the corresponding tuple to generate unique primary keys
+     * Connection pool settings. Can be overridden with -Dhealthdb.pool.min=...,
+     * -Dhealthdb.pool.max=..., -Dhealthdb.pool.timeoutMs=... and -Dhealthdb.pool.validateMs=...
+     */
+    static final int POOL_MIN_SIZE = Integer.getInteger("healthdb.pool.min", 2);
+    static final int POOL_MAX_SIZE = Integer.getInteger("healthdb.pool.max", 8);
+    static final long POOL_BORROW_TIMEOUT_MS = Long.getLong("healthdb.pool.timeoutMs", 30000L);
+    static final long POOL_VALIDATION_INTERVAL_MS = Long.getLong("healthdb.pool.validateMs", 30000L);
+    /** Prepared statements cached per pooled connection (-Dhealthdb.statementCache.size=...) */
+    static final int STATEMENT_CACHE_SIZE = Integer.getInteger("healthdb.statementCache.size", 64);
+    /**
+     * Patients per page of a name search (-Dhealthdb.search.pageSize=...) and rows the
+     * driver fetches per round trip while reading a page (-Dhealthdb.search.fetchSize=...)
+     */
+    static final int SEARCH_PAGE_SIZE = Integer.getInteger("healthdb.search.pageSize", 50);
+    static final int SEARCH_FETCH_SIZE = Integer.getInteger("healthdb.search.fetchSize", 50);
+    /** In-memory trigram index for the name search, off with -Dhealthdb.nameIndex.disabled=true */
+    static final boolean NAME_INDEX_ENABLED = !Boolean.getBoolean("healthdb.nameIndex.disabled");
+    /** Age after which a search rebuilds the name index in the background (-Dhealthdb.nameIndex.refreshMs=...) */
+    static final long NAME_INDEX_REFRESH_MS = Long.getLong("healthdb.nameIndex.refreshMs", 60 * 1000L);
+    /**
+     * Check every cached invoice balance against the database when it is read
+     * (-Dhealthdb.balances.verify=true). Mismatches are printed and corrected.
+     */
+    static final boolean VERIFY_BALANCES = Boolean.getBoolean("healthdb.balances.verify");
+    /** Rows sent per executeBatch by the batch create methods (-Dhealthdb.batch.size=...) */
+    static final int BATCH_SIZE = Integer.getInteger("healthdb.batch.size", 500);
+    /**
+     * Queue referrals and write them in the background (-Dhealthdb.writeBehind=true), see
+     * ReferralWriteBehind. The journal is -Dhealthdb.writeBehind.journal and queued
+     * referrals are written at least every -Dhealthdb.writeBehind.flushMs.
+     */
+    static final boolean WRITE_BEHIND = Boolean.getBoolean("healthdb.writeBehind");
+    static final String WRITE_BEHIND_JOURNAL = System.getProperty("healthdb.writeBehind.journal", "referrals.journal");
+    static final long WRITE_BEHIND_FLUSH_MS = Long.getLong("healthdb.writeBehind.flushMs", 1000L);
+    /**
+     * How long postal codes, medications and doctors are cached before they are read
+     * again (-Dhealthdb.referenceCache.ttlMs=...), see ReferenceCache
+     */
+    static final long REFERENCE_CACHE_TTL_MS = Long.getLong("healthdb.referenceCache.ttlMs", 10 * 60 * 1000L);
+    /**
+     * Most patients and child IDs kept by the patient cache (-Dhealthdb.patientCache.size=...),
+     * and most bytes of patient tuples (-Dhealthdb.patientCache.maxBytes=...), see PatientCache
+     */
+    static final int PATIENT_CACHE_SIZE = Integer.getInteger("healthdb.patientCache.size", 1000);
+    static final long PATIENT_CACHE_MAX_BYTES = Long.getLong("healthdb.patientCache.maxBytes", 4L * 1024 * 1024);
+    /**
+     * Isolation level of a unit of work when none is given, READ_COMMITTED or
+     * SERIALIZABLE (-Dhealthdb.transaction.isolation=...), see UnitOfWork
+     */
+    static final int TRANSACTION_ISOLATION = parseIsolation(
+            System.getProperty("healthdb.transaction.isolation", "READ_COMMITTED"));
+    /**
+     * Register per-operation metrics as JMX MBeans while connected, off with
+     * -Dhealthdb.metrics.jmx=false, and print them every n seconds with
+     * -Dhealthdb.metrics.dumpSeconds=n, see HealthDBMetrics
+     */
+    static final boolean METRICS_JMX = !"false".equals(System.getProperty("healthdb.metrics.jmx"));
+    static final long METRICS_DUMP_SECONDS = Long.getLong("healthdb.metrics.dumpSeconds", 0L);
+    /**
+     * Print every statement slower than n ms with -Dhealthdb.slowQuery.thresholdMs=n
+     * (0 prints them all), and the top statements by total time on disconnect.
+     * Off by default. Bind values hold patient data, leave them out with
+     * -Dhealthdb.slowQuery.logBinds=false. See StatementLog
+     */
+    static final long SLOW_QUERY_THRESHOLD_MS = Long.getLong("healthdb.slowQuery.thresholdMs", -1L);
+    static final int SLOW_QUERY_TOP_N = Integer.getInteger("healthdb.slowQuery.topN", 20);
+    static final boolean SLOW_QUERY_LOG_BINDS = !"false".equals(System.getProperty("healthdb.slowQuery.logBinds"));
+    /**
+     * Rows fetched per round trip by the patient history queries, see FetchSizes.
+     * Starts at -Dhealthdb.fetchSize.default and follows each query's row counts
+     * up to -Dhealthdb.fetchSize.max, unless -Dhealthdb.fetchSize.adaptive=false.
+     * One query is fixed with -Dhealthdb.fetchSize.<operation>=n.
+     */
+    static final int FETCH_SIZE_DEFAULT = Integer.getInteger("healthdb.fetchSize.default", 10);
+    static final int FETCH_SIZE_MAX = Integer.getInteger("healthdb.fetchSize.max", 500);
+    static final boolean FETCH_SIZE_ADAPTIVE = !"false".equals(System.getProperty("healthdb.fetchSize.adaptive"));
+    /** PIDs per query when the batch interaction check reads current medications */
+    private static final int MEDICATION_LOOKUP_SIZE = 100;
+    /** Units appended to the findTestValues columns, in query order */
+    private static final String[] TEST_VALUE_UNITS = {"mg/dL", "mg/dL", "mg/dL", "mg/dL", "/mcL", "/mcL", "%",
+            "/mcL", "%", "", " mEq/dL", " mg/dL", " mg/dL", ""};
+
+    private final StorageBackend backend;
+    private ConnectionPool pool;
+    private PlanSummaryLoader planSummaryLoader;
+    /** Null until built in the background after connecting */
+    private volatile PatientNameIndex patientNameIndex;
+    /** System.nanoTime() when the index build in use started */
+    private volatile long patientNameIndexBuiltAt;
+    /** True while a name index build is running */
+    private final AtomicBoolean patientNameIndexBuilding = new AtomicBoolean();
+    /** Postal codes, medications and doctors, null when not connected */
+    private volatile ReferenceCache referenceCache;
+    /** Interaction sets, loaded on the first prescription */
+    private volatile MedicationInteractions interactions;
+    /** Unpaid and overdue invoice totals of the patients viewed so far */
+    private final InvoiceBalances balances = new InvoiceBalances();
+    /** Recently found patients, and the patients of recently looked up prescriptions, tests and invoices */
+    private final PatientCache patientCache = new PatientCache(PATIENT_CACHE_SIZE, PATIENT_CACHE_MAX_BYTES);
+    /** Null unless write-behind is on */
+    private volatile ReferralWriteBehind referralWriter;
+    /** Calls, errors, rows and latency of every public operation */
+    private final HealthDBMetrics metrics = new HealthDBMetrics();
+    /** Fetch size and round trips of each patient history query */
+    private final FetchSizes fetchSizes = new FetchSizes(FETCH_SIZE_DEFAULT, FETCH_SIZE_MAX, FETCH_SIZE_ADAPTIVE);
+    /** Null unless the slow query log is on */
+    private final StatementLog statementLog = SLOW_QUERY_THRESHOLD_MS < 0 ? null
+            : new StatementLog(SLOW_QUERY_THRESHOLD_MS, SLOW_QUERY_LOG_BINDS);
+    /** Unit of work of each thread that has begun one */
+    private final ThreadLocal<UnitOfWork> currentWork = new ThreadLocal<UnitOfWork>();
+
+    /**
+     * Primary key allocators, backed by the sequences created in setupdb.sql
      * <p>
      * prescriptionID
      * testID
      * invoiceID
+     * paymentID
      */
-    static Integer prescriptionIDCounter;
-    static Integer testIDCounter;
-    static Integer invoiceIDCounter;
-    static Integer paymentIDCounter;
-    private DateFormat format = new SimpleDateFormat("MMMM dd yyyy");
+    private IdAllocator prescriptionIDs;
+    private IdAllocator testIDs;
+    private IdAllocator invoiceIDs;
+    private IdAllocator paymentIDs;
+    /** Plan dates as the UI shows them, e.g. "March 04 2018" */
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MMMM dd yyyy");
+    /** Today's date, replaced by the first call to today() after midnight */
+    private static volatile Today currentDay = new Today();
 
     /**
-     * HealthDB Constructor
+     * HealthDB Constructor, using the storage backend chosen by -Dhealthdb.storage
      */
     public HealthDB() {
+        this(createStorageBackend());
+    }
+
+    /**
+     * HealthDB Constructor
+     *
+     * @param backend - the database to store data in
+     */
+    public HealthDB(StorageBackend backend) {
+        this.backend = backend;
         System.out.println("HealthDB App Started");
-        try { // Load the Oracle JDBC driver
-            DriverManager.registerDriver(new oracle.jdbc.driver.OracleDriver());
-            System.out.println("Oracle driver loaded.");
+        try { // Load the JDBC driver
+            backend.loadDriver();
+            System.out.println(backend.getName() + " driver loaded.");
         } catch (SQLException ex) {
-            System.out.println("Error loading Oracle driver: " + ex.getMessage());
+            System.out.println("Error loading " + backend.getName() + " driver: " + ex.getMessage());
             System.exit(-1);
         }
     }
 
+    /**
+     * @return the backend named by -Dhealthdb.storage, Oracle if it is not set
+     */
+    static StorageBackend createStorageBackend() {
+        if (STORAGE.equalsIgnoreCase("embedded")) {
+            return new EmbeddedBackend();
+        } else if (!STORAGE.equalsIgnoreCase("oracle")) {
+            System.out.println("Unknown storage " + STORAGE + ", using Oracle");
+        }
+        return new OracleBackend();
+    }
+
+    /**
+     * @return the database data is stored in
+     */
+    public StorageBackend getStorageBackend() {
+        return backend;
+    }
+
     /**
      * setOracleCredentials Sets the username and password to be used to log into
      * the Oracle database
@@ -66,54 +219,334 @@ public class HealthDB {
     }
 
     /**
-     * connectToDB Connects to the Oracle DB using credentials
+     * connectToDB Connects to the database using credentials
      *
      * @param username - the username to log into the Oracle DB
      * @param password - the password to log into the Oracle DB
-     * @return true - if Oracle database is connected to the app, false otherwise
+     * @return true - if the database is connected to the app, false otherwise
      */
     public boolean connectToDB(String username, String password) {
-        String connectURL = "jdbc:oracle:thin:@dbhost.ugrad.cs.ubc.ca:1522:ug";
         try {
-            con = DriverManager.getConnection(connectURL, username, password);
-            System.out.println("\nConnected to Oracle!");
+            disconnect();
+            pool = new ConnectionPool(backend.getURL(), username, password, POOL_MIN_SIZE, POOL_MAX_SIZE,
+                    POOL_BORROW_TIMEOUT_MS, POOL_VALIDATION_INTERVAL_MS, backend.getValidationQuery(),
+                    STATEMENT_CACHE_SIZE);
+            pool.setStatementLog(statementLog);
+            Connection con = pool.getConnection();
+            try {
+                backend.initialize(con);
+            } finally {
+                pool.releaseConnection(con);
+            }
+            System.out.println("\nConnected to " + backend.getName() + "! " + pool);
+
+            // ID blocks are reserved lazily on the first insert
+            prescriptionIDs = new IdAllocator(pool, backend, "prescriptionIDSeq", "prescription", "prescriptionID");
+            testIDs = new IdAllocator(pool, backend, "testIDSeq", "labtest", "testID");
+            invoiceIDs = new IdAllocator(pool, backend, "invoiceIDSeq", "invoice", "invoiceID");
+            paymentIDs = new IdAllocator(pool, backend, "paymentIDSeq", "invoice", "paymentID");
+
+            if (WRITE_BEHIND) {
+                // Also writes what the last run left in the journal
+                ReferralWriteBehind writer = new ReferralWriteBehind(this, new File(WRITE_BEHIND_JOURNAL),
+                        WRITE_BEHIND_FLUSH_MS, BATCH_SIZE);
+                try {
+                    writer.start();
+                    referralWriter = writer;
+                } catch (IOException ex) {
+                    System.out.println("Failed to open referral journal, referrals are written directly. "
+                            + ex.getMessage());
+                }
+            }
 
+            // One thread per plan summary query, but never more than the pool can serve
+            planSummaryLoader = new PlanSummaryLoader(this, Math.min(7, POOL_MAX_SIZE));
 
-            // Set counters
-            String maxTest = "select max(testID) as max from labtest";
-            String maxInvoice = "select max(invoiceID) as max from invoice";
-            String maxPayment = "select max(paymentID) as max from invoice";
-            String maxPrescription = "select max(prescriptionID) as max from prescription";
+            referenceCache = new ReferenceCache(pool, REFERENCE_CACHE_TTL_MS);
+            final ConnectionPool preloadFrom = pool;
+            final ReferenceCache cache = referenceCache;
+            Thread preloader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    preloadReferenceCache(preloadFrom, cache);
+                }
+            }, "ReferenceCache-preload");
+            preloader.setDaemon(true);
+            preloader.start();
 
-            Statement stmt = con.createStatement();
-            ResultSet rs = stmt.executeQuery(maxTest);
-            if (rs.next()) {
-                testIDCounter = rs.getInt("max") + 1;
+            if (NAME_INDEX_ENABLED) {
+                // Name searches go to Oracle until the index is ready
+                startPatientNameIndexBuild(pool);
             }
 
-            rs = stmt.executeQuery(maxInvoice);
-            if (rs.next()) {
-                invoiceIDCounter = rs.getInt("max") + 1;
+            if (METRICS_JMX) {
+                metrics.registerMBeans();
             }
+            metrics.startDump(METRICS_DUMP_SECONDS * 1000);
+            return true;
+        } catch (SQLException ex) {
+            System.out.println("Error connecting to " + backend.getName() + ": " + ex.getMessage());
+            disconnect();
+            return false;
+        }
+    }
 
-            rs = stmt.executeQuery(maxPayment);
-            if (rs.next()) {
-                paymentIDCounter = rs.getInt("max") + 1;
+    /**
+     * Returns the connection pool so callers can inspect occupancy and wait times
+     *
+     * @return the connection pool, or null if not connected
+     */
+    public ConnectionPool getConnectionPool() {
+        return pool;
+    }
+
+    /**
+     * Returns the patient cache so callers can inspect its hit ratio and evictions
+     *
+     * @return the patient cache
+     */
+    public PatientCache getPatientCache() {
+        return patientCache;
+    }
+
+    /**
+     * Returns the per-operation metrics, also available through JMX while connected
+     *
+     * @return the metrics
+     */
+    public HealthDBMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the fetch size of each query with its estimated round trips
+     *
+     * @return the fetch sizes
+     */
+    public FetchSizes getFetchSizes() {
+        return fetchSizes;
+    }
+
+    /**
+     * Returns the slow query log, whose report lists the statements with the most total time
+     *
+     * @return the statement log, or null if -Dhealthdb.slowQuery.thresholdMs is not set
+     */
+    public StatementLog getStatementLog() {
+        return statementLog;
+    }
+
+    /**
+     * Loads the reference tables into the cache. Rows needed before this is done
+     * are read one at a time.
+     *
+     * @param builtFrom - pool of the connection the cache belongs to
+     * @param cache     - the cache to fill
+     */
+    private void preloadReferenceCache(ConnectionPool builtFrom, ReferenceCache cache) {
+        Connection con = null;
+        try {
+            con = builtFrom.getConnection();
+            long start = System.currentTimeMillis();
+            cache.preload(con);
+            System.out.println(cache + " preloaded in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (SQLException ex) {
+            System.out.println("Failed to preload reference tables. " + ex.getMessage());
+        } finally {
+            if (con != null) {
+                builtFrom.releaseConnection(con);
             }
+        }
+    }
 
-            rs = stmt.executeQuery(maxPrescription);
-            if (rs.next()) {
-                prescriptionIDCounter = rs.getInt("max") + 1;
+    /**
+     * Drops the cached postal codes, medications and doctors so they are read
+     * again, e.g. after they were changed outside the app
+     */
+    public void invalidateReferenceData() {
+        ReferenceCache cache = referenceCache;
+        if (cache != null) {
+            cache.invalidate();
+        }
+        // Cached patients include their postal code's city, province and country
+        patientCache.invalidatePatients();
+    }
+
+    /**
+     * @return the reference cache
+     * @throws SQLException if not connected
+     */
+    private ReferenceCache references() throws SQLException {
+        ReferenceCache cache = referenceCache;
+        if (cache == null) {
+            throw new SQLException("Not connected to the database");
+        }
+        return cache;
+    }
+
+    /**
+     * Closes all pooled connections
+     */
+    public void disconnect() {
+        ReferralWriteBehind writer = referralWriter;
+        if (writer != null) {
+            // Needs the pool for the last write
+            referralWriter = null;
+            writer.close(POOL_BORROW_TIMEOUT_MS);
+        }
+        metrics.stopDump();
+        metrics.unregisterMBeans();
+        patientNameIndex = null;
+        referenceCache = null;
+        interactions = null;
+        balances.clear();
+        patientCache.clear();
+        if (planSummaryLoader != null) {
+            planSummaryLoader.shutdown();
+            planSummaryLoader = null;
+        }
+        if (pool != null) {
+            if (statementLog != null) {
+                System.out.println(statementLog.report(SLOW_QUERY_TOP_N));
+                statementLog.reset();
             }
-            stmt.close();
+            pool.close();
+            pool = null;
+        }
+    }
 
-            return true;
+    /**
+     * Borrows a connection from the pool for a single operation, or returns the
+     * connection of this thread's unit of work. Must be paired with
+     * releaseConnection in a finally block.
+     *
+     * @return a pooled connection
+     * @throws SQLException if not connected or no connection is available
+     */
+    private Connection getConnection() throws SQLException {
+        UnitOfWork work = currentWork.get();
+        if (work != null) {
+            return work.getConnection();
+        }
+        ConnectionPool p = pool;
+        if (p == null) {
+            throw new SQLException("Not connected to the database");
+        }
+        long start = System.nanoTime();
+        Connection con = p.getConnection();
+        metrics.connectionWait(System.nanoTime() - start);
+        return con;
+    }
+
+    /**
+     * Returns a borrowed connection to the pool. Null is ignored.
+     *
+     * @param con - connection obtained from getConnection
+     */
+    private void releaseConnection(Connection con) {
+        if (workOf(con) != null) {
+            // Released when the unit of work ends
+            return;
+        }
+        ConnectionPool p = pool;
+        if (con != null && p != null) {
+            p.releaseConnection(con);
+        }
+    }
+
+    /**
+     * Starts a unit of work with the default isolation level. Every HealthDB call
+     * on this thread is part of it until it is committed or closed.
+     *
+     * @return the unit of work
+     * @throws SQLException if not connected, or this thread already has a unit of work
+     */
+    public UnitOfWork beginUnitOfWork() throws SQLException {
+        return beginUnitOfWork(TRANSACTION_ISOLATION);
+    }
+
+    /**
+     * @param isolation - Connection.TRANSACTION_READ_COMMITTED or TRANSACTION_SERIALIZABLE
+     * @return the unit of work
+     * @throws SQLException if not connected, or this thread already has a unit of work
+     */
+    public UnitOfWork beginUnitOfWork(int isolation) throws SQLException {
+        if (currentWork.get() != null) {
+            throw new SQLException("This thread already has a unit of work");
+        }
+        Connection con = getConnection();
+        try {
+            currentWork.set(new UnitOfWork(this, con, isolation));
         } catch (SQLException ex) {
-            System.out.println("Error connecting to Oracle: " + ex.getMessage());
-            return false;
+            releaseConnection(con);
+            throw ex;
+        }
+        return currentWork.get();
+    }
+
+    /**
+     * Called by UnitOfWork once it has ended, returns its connection to the pool
+     */
+    void unitOfWorkEnded(UnitOfWork work) {
+        currentWork.remove();
+        releaseConnection(work.getConnection());
+    }
+
+    /**
+     * Called by UnitOfWork when it rolls back. Balances loaded during the unit of
+     * work may include its rows.
+     */
+    void unitOfWorkRolledBack() {
+        balances.clear();
+    }
+
+    /**
+     * @param con - a connection, may be null
+     * @return this thread's unit of work if con is its connection, otherwise null
+     */
+    private UnitOfWork workOf(Connection con) {
+        UnitOfWork work = currentWork.get();
+        return work != null && con != null && work.getConnection() == con ? work : null;
+    }
+
+    /**
+     * Makes this thread's unit of work, if any, roll back instead of committing.
+     * Called by write methods when a statement fails.
+     */
+    private void failed(SQLException ex) {
+        UnitOfWork work = currentWork.get();
+        if (work != null) {
+            work.setRollbackOnly(ex.getMessage());
         }
     }
 
+    /**
+     * Runs an update to cached state now, or once this thread's unit of work
+     * commits if there is one
+     */
+    private void afterCommit(Runnable r) {
+        UnitOfWork work = currentWork.get();
+        if (work != null) {
+            work.afterCommit(r);
+        } else {
+            r.run();
+        }
+    }
+
+    /**
+     * @param name - READ_COMMITTED or SERIALIZABLE
+     * @return the Connection.TRANSACTION_ constant
+     */
+    private static int parseIsolation(String name) {
+        if (name.trim().equalsIgnoreCase("SERIALIZABLE")) {
+            return Connection.TRANSACTION_SERIALIZABLE;
+        }
+        if (!name.trim().equalsIgnoreCase("READ_COMMITTED")) {
+            System.out.println("Unknown isolation level " + name + ", using READ_COMMITTED");
+        }
+        return Connection.TRANSACTION_READ_COMMITTED;
+    }
+
     /**
      * createX methods: Creates a new X tuple
      */
@@ -126,26 +559,50 @@ public class HealthDB {
      * @param quantity
      * @param patientID
      * @param drHID
-     * @return return true if prescription was created
+     * @return return true if prescription was created, false if it failed or the
+     * medication would cause an interaction
      * <p>
      * Creates a prescription with current date as prescribedDate
      */
     public boolean createPrescription(String medication, String dosage, String quantity,
                                       String patientID, String drHID) {
+        long start = metrics.start();
+        Connection con = null;
         try {
+            con = getConnection();
+            // The check and the insert are one transaction, and the patient stays locked
+            // until it ends, so a concurrent prescription can't slip in between them
+            con.setAutoCommit(false);
+            if (getInteractions(con).getSetCount() > 0) {
+                lockPatient(con, patientID);
+            }
+            // Nothing is written if the medication interacts
+            List<String> interaction = findInteraction(con, patientID, medication);
+            if (interaction != null) {
+                System.out.println("Prescription not created. " + medication + " interacts with "
+                        + interaction + " for patient " + patientID);
+                // Nothing was written, this only releases the lock
+                commit(con);
+                return false;
+            }
+
             String query = "insert into prescription (prescriptionID, medication, dosage, quantity, patientID,"
-                    + " drHID, prescribedDate) values (" + prescriptionIDCounter + ",'" + medication + "', " + dosage
-                    + ", " + quantity + ", " + patientID + ", " + drHID + "," + today() + ")";
-            prescriptionIDCounter++;
-            // Create a statement
-            Statement stmt = con.createStatement();
-            // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            stmt.close();
-            return !checkInteraction(patientID, medication);
+                    + " drHID, prescribedDate) values (?, ?, ?, ?, ?, ?, ?)";
+            PreparedStatement ps = prepare(con, query, prescriptionIDs.next(con), medication, dosage,
+                    quantity, patientID, drHID, today());
+            // Execute the insert.
+            ps.executeUpdate();
+            commit(con);
+            return true;
         } catch (SQLException ex) {
+            metrics.error("createPrescription");
             System.out.println("Failed to create prescription" + ex.getMessage());
+            failed(ex);
+            rollback(con);
             return false;
+        } finally {
+            endTransaction(con);
+            metrics.record("createPrescription", start, 0, patientID);
         }
     }
 
@@ -158,19 +615,23 @@ public class HealthDB {
      * Creates a lab test with current date as ordered date
      */
     public boolean createTest(String patientID, String drHID) {
+        long start = metrics.start();
+        Connection con = null;
         try {
-            String query = "insert into labtest (testID, patientID, drHID, orderedDate) values (" + testIDCounter + ", "
-                    + patientID + ", " + drHID + ", " + today() + ")";
-            testIDCounter++;
-            // Create a statement
-            Statement stmt = con.createStatement();
-            // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            stmt.close();
+            con = getConnection();
+            String query = "insert into labtest (testID, patientID, drHID, orderedDate) values (?, ?, ?, ?)";
+            PreparedStatement ps = prepare(con, query, testIDs.next(con), patientID, drHID, today());
+            // Execute the insert.
+            ps.executeUpdate();
             return true;
         } catch (SQLException ex) {
+            metrics.error("createTest");
             System.out.println("Failed to create test" + ex.getMessage());
+            failed(ex);
             return false;
+        } finally {
+            releaseConnection(con);
+            metrics.record("createTest", start, 0, patientID);
         }
     }
 
@@ -180,23 +641,145 @@ public class HealthDB {
      * @param patientID
      * @param referrerHID - HID of doctor making the referral
      * @param referreeHID - HID of doctor being referred to
-     * @return returns true if the referral was successfully created
+     * @return returns true if the referral was successfully created, or queued if
+     * write-behind is on
      * <p>
      * Creates a referral with current date as referred date
      */
     public boolean createReferral(String patientID, String referrerHID, String referreeHID) {
+        long start = metrics.start();
+        ReferralWriteBehind writer = referralWriter;
+        if (writer != null) {
+            boolean queued = queueReferral(writer, patientID, referrerHID, referreeHID);
+            if (!queued) {
+                metrics.error("createReferral");
+            }
+            metrics.record("createReferral", start, 0, patientID);
+            return queued;
+        }
+        Connection con = null;
         try {
-            String query = "insert into referral (patientID, referrerHID, referreeHID, referredDate) values ("
-                    + patientID + ", " + referrerHID + ", " + referreeHID + ", " + today() + ")";
-            // Create a statement
-            Statement stmt = con.createStatement();
-            // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            stmt.close();
+            con = getConnection();
+            String query = "insert into referral (patientID, referrerHID, referreeHID, referredDate) values (?, ?, ?, ?)";
+            PreparedStatement ps = prepare(con, query, patientID, referrerHID, referreeHID, today());
+            // Execute the insert.
+            ps.executeUpdate();
             return true;
         } catch (SQLException ex) {
+            metrics.error("createReferral");
             System.out.println("Failed to create referral" + ex.getMessage());
+            failed(ex);
             return false;
+        } finally {
+            releaseConnection(con);
+            metrics.record("createReferral", start, 0, patientID);
+        }
+    }
+
+    /**
+     * Checks that the patient and both doctors exist, reads the referred doctor's
+     * details for the referral grid, and queues the referral
+     *
+     * @return true if the referral was queued
+     */
+    private boolean queueReferral(ReferralWriteBehind writer, String patientID, String referrerHID,
+                                  String referreeHID) {
+        Connection con = null;
+        try {
+            con = getConnection();
+            // The referree's details for the grid come from the reference cache
+            String query = "select 1 from Doctor d where d.HID = ? and exists (select 1 from Doctor where HID = ?)"
+                    + " and exists (select 1 from Patient where patientID = ?)";
+            ResultSet rs = prepare(con, query, referreeHID, referrerHID, patientID).executeQuery();
+            boolean found = rs.next();
+            rs.close();
+            if (!found) {
+                System.out.println("Failed to create referral. No such patient or doctor");
+                return false;
+            }
+            Referral referral = readReferral(con, Long.parseLong(referrerHID.trim()),
+                    Long.parseLong(referreeHID.trim()), null);
+            writer.add(new ReferralWriteBehind.PendingReferral(Long.parseLong(patientID.trim()), referral));
+            return true;
+        } catch (SQLException ex) {
+            System.out.println("Failed to create referral. " + ex.getMessage());
+            return false;
+        } catch (NumberFormatException ex) {
+            System.out.println("Failed to create referral. Not a valid ID " + ex.getMessage());
+            return false;
+        } catch (IOException ex) {
+            System.out.println("Failed to queue referral. " + ex.getMessage());
+            return false;
+        } finally {
+            releaseConnection(con);
+        }
+    }
+
+    /**
+     * Writes queued referrals for ReferralWriteBehind. Referrals that already
+     * exist are skipped, so a referral replayed from the journal is only written
+     * once. If the batch fails, the referrals are written one at a time. Those that
+     * break a constraint (e.g. the patient was deleted since) are dropped, and those
+     * rejected for another reason are left out of the result so ReferralWriteBehind
+     * can count the attempt and go on with the rest.
+     *
+     * @param referrals - the referrals to write
+     * @return the referrals that are done with: written, already there or dropped
+     * @throws SQLException if the database could not be reached, the referrals stay queued
+     */
+    List<ReferralWriteBehind.PendingReferral> writeReferrals(List<ReferralWriteBehind.PendingReferral> referrals)
+            throws SQLException {
+        String query = "insert into referral (patientID, referrerHID, referreeHID, referredDate)"
+                + " select ?, ?, ?, ? from dual where not exists (select 1 from referral"
+                + " where patientID = ? and referrerHID = ? and referreeHID = ?)";
+        ArrayList<Object[]> params = new ArrayList<Object[]>();
+        ArrayList<Integer> rows = new ArrayList<Integer>();
+        for (ReferralWriteBehind.PendingReferral p : referrals) {
+            Referral r = p.getReferral();
+            params.add(new Object[]{p.getPatientID(), r.getReferrerHID(), r.getReferreeHID(),
+                    java.sql.Date.valueOf(r.getReferredDate()), p.getPatientID(), r.getReferrerHID(),
+                    r.getReferreeHID()});
+            rows.add(rows.size());
+        }
+
+        Connection con = getConnection();
+        try {
+            try {
+                con.setAutoCommit(false);
+                executeBatch(con, query, params, rows, BATCH_SIZE, new BatchResult(referrals.size()));
+                commit(con);
+                return referrals;
+            } catch (SQLException ex) {
+                rollback(con);
+                con.setAutoCommit(true);
+            }
+
+            ArrayList<ReferralWriteBehind.PendingReferral> done = new ArrayList<ReferralWriteBehind.PendingReferral>();
+            for (int i = 0; i < referrals.size(); i++) {
+                try {
+                    prepare(con, query, params.get(i)).executeUpdate();
+                    done.add(referrals.get(i));
+                } catch (SQLException ex) {
+                    // Constraint violations will never succeed
+                    if (ex.getSQLState() != null && ex.getSQLState().startsWith("23")) {
+                        System.out.println("Dropping queued referral " + referrals.get(i).getKey() + ". "
+                                + ex.getMessage());
+                        done.add(referrals.get(i));
+                        continue;
+                    }
+                    // Anything else is tried again later, but only this referral if the database is up
+                    try {
+                        prepare(con, backend.getValidationQuery()).executeQuery().close();
+                    } catch (SQLException lost) {
+                        throw ex;
+                    }
+                    System.out.println("Failed to write queued referral " + referrals.get(i).getKey() + ". "
+                            + ex.getMessage());
+                }
+            }
+            return done;
+        } finally {
+            endTransaction(con);
         }
     }
 
@@ -218,38 +801,442 @@ public class HealthDB {
      */
     public boolean createInvoice(String patientID, String invoiceItem, String dueDate, String paymentStatus,
                                  String paymentDate, String paymentMethod, String amountOwing, String planID) {
+        long start = metrics.start();
+        Connection con = null;
         try {
-            String paymentDateValue = "''";
-            String paymentIDValue = "''";
-            if (!paymentDate.isEmpty()) {
-                paymentDateValue = "to_date('" + paymentDate + "', 'yyyy-MM-dd')";
-            }
+            con = getConnection();
+            Long paymentID = null;
             if (paymentMethod.equals("Credit\\Debit")) {
-                paymentIDValue = paymentIDCounter.toString();
+                paymentID = paymentIDs.next(con);
             }
 
-            // Oracle will insert null if you insert an empty string. Therefore do not need to check if optional values are empty strings
+            // Optional values that are empty strings are bound as null
             String query = "insert into invoice (invoiceID, patientID, invoiceItem, creationDate, dueDate, paymentStatus, "
-                    + "paymentDate, paymentMethod, amountOwing, paymentID, planID) values (" + invoiceIDCounter + ", "
-                    + patientID + ", '" + invoiceItem + "', " + today() + ", " + "to_date('" + dueDate + "', 'yyyy-MM-dd'), '" + paymentStatus + "', "
-                    + paymentDateValue + ", '" + paymentMethod + "', " + amountOwing + ", " + paymentIDValue + ", " + planID + ")";
-            invoiceIDCounter++;
-            // Don't increase paymentIDCounter if no payment info was entered
-            if (paymentMethod.equals("Credit\\Debit")) {
-                paymentIDCounter++;
+                    + "paymentDate, paymentMethod, amountOwing, paymentID, planID) values (?, ?, ?, ?,"
+                    + " to_date(?, 'yyyy-MM-dd'), ?, to_date(?, 'yyyy-MM-dd'), ?, ?, ?, ?)";
+            PreparedStatement ps = prepare(con, query, invoiceIDs.next(con), patientID, invoiceItem, today(), dueDate,
+                    paymentStatus, paymentDate, paymentMethod, amountOwing, paymentID, planID);
+            // Execute the insert.
+            ps.executeUpdate();
+
+            if (paymentStatus.equals("Unpaid")) {
+                addToBalance(patientID, dueDate, amountOwing);
             }
-            // Create a statement
-            Statement stmt = con.createStatement();
-            // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            stmt.close();
             return true;
         } catch (SQLException ex) {
+            metrics.error("createInvoice");
             System.out.println("Failed to create invoice" + ex.getMessage());
+            failed(ex);
             return false;
+        } finally {
+            releaseConnection(con);
+            metrics.record("createInvoice", start, 0, patientID);
         }
     }
 
+    /**
+     * Adds a new unpaid invoice to the patient's cached balance once it is committed
+     */
+    private void addToBalance(final String patientID, final String dueDate, final String amountOwing) {
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    balances.add(patientID, LocalDate.parse(dueDate),
+                            toCents(new java.math.BigDecimal(amountOwing.trim())));
+                } catch (RuntimeException ex) {
+                    // Oracle accepted a format we don't parse, load the balance again instead
+                    try {
+                        balances.invalidate(patientID);
+                    } catch (IllegalArgumentException notANumber) {
+                        balances.clear();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * createXs methods: Creates many X tuples in one transaction, sending
+     * BATCH_SIZE inserts per round trip. See BatchResult for what happens when a
+     * row fails.
+     */
+
+    /**
+     * Creates prescriptions, checking each one for interactions against the
+     * patient's current medications and the prescriptions before it in the list
+     *
+     * @param prescriptions - the prescriptions to create
+     * @return the outcome of every prescription
+     */
+    public BatchResult createPrescriptions(List<NewPrescription> prescriptions) {
+        return createPrescriptions(prescriptions, BATCH_SIZE);
+    }
+
+    /**
+     * @param prescriptions - the prescriptions to create
+     * @param batchSize     - inserts sent per round trip
+     * @return the outcome of every prescription
+     */
+    public BatchResult createPrescriptions(List<NewPrescription> prescriptions, int batchSize) {
+        long start = metrics.start();
+        BatchResult result = new BatchResult(prescriptions.size());
+        ArrayList<Object[]> params = new ArrayList<Object[]>();
+        ArrayList<Integer> rows = new ArrayList<Integer>();
+        Connection con = null;
+        try {
+            con = getConnection();
+            con.setAutoCommit(false);
+            // The whole batch gets the same date even if it runs past midnight
+            java.sql.Date created = today();
+            MedicationInteractions engine = getInteractions(con);
+            HashMap<Long, HashSet<String>> current = new HashMap<Long, HashSet<String>>();
+            if (engine.getSetCount() > 0) {
+                for (NewPrescription p : prescriptions) {
+                    if (p.getPID() != null) {
+                        current.put(p.getPID(), new HashSet<String>());
+                    }
+                }
+                // Locked in PID order, so two batches for the same patients can't deadlock
+                for (Long pid : new TreeSet<Long>(current.keySet())) {
+                    lockPatient(con, pid);
+                }
+                readMedications(con, current);
+            }
+
+            for (int i = 0; i < prescriptions.size(); i++) {
+                NewPrescription p = prescriptions.get(i);
+                HashSet<String> medications = current.get(p.getPID());
+                if (medications != null) {
+                    BitSet set = engine.findInteraction(medications, p.getMedication());
+                    if (set != null) {
+                        result.reject(i, BatchResult.Outcome.INTERACTION, p.getMedication() + " interacts with "
+                                + engine.describe(set) + " for patient " + p.getPatientID());
+                        continue;
+                    }
+                    medications.add(p.getMedication());
+                }
+                long id = prescriptionIDs.next(con);
+                result.setID(i, id);
+                params.add(new Object[]{id, p.getMedication(), p.getDosage(), p.getQuantity(), p.getPatientID(),
+                        p.getDrHID(), created});
+                rows.add(i);
+            }
+
+            String query = "insert into prescription (prescriptionID, medication, dosage, quantity, patientID,"
+                    + " drHID, prescribedDate) values (?, ?, ?, ?, ?, ?, ?)";
+            executeBatch(con, query, params, rows, batchSize, result);
+            commit(con);
+            result.committed(rows);
+        } catch (SQLException ex) {
+            metrics.error("createPrescriptions");
+            System.out.println("Failed to create prescriptions. " + ex.getMessage());
+            rollback(con);
+        } finally {
+            endTransaction(con);
+            metrics.record("createPrescriptions", start, 0);
+        }
+        return result;
+    }
+
+    /**
+     * Creates lab tests, ordered today
+     *
+     * @param tests - the tests to create
+     * @return the outcome of every test
+     */
+    public BatchResult createTests(List<NewTest> tests) {
+        return createTests(tests, BATCH_SIZE);
+    }
+
+    /**
+     * @param tests     - the tests to create
+     * @param batchSize - inserts sent per round trip
+     * @return the outcome of every test
+     */
+    public BatchResult createTests(List<NewTest> tests, int batchSize) {
+        long start = metrics.start();
+        BatchResult result = new BatchResult(tests.size());
+        ArrayList<Object[]> params = new ArrayList<Object[]>();
+        ArrayList<Integer> rows = new ArrayList<Integer>();
+        Connection con = null;
+        try {
+            con = getConnection();
+            con.setAutoCommit(false);
+            java.sql.Date created = today();
+            for (int i = 0; i < tests.size(); i++) {
+                NewTest t = tests.get(i);
+                long id = testIDs.next(con);
+                result.setID(i, id);
+                params.add(new Object[]{id, t.getPatientID(), t.getDrHID(), created});
+                rows.add(i);
+            }
+
+            String query = "insert into labtest (testID, patientID, drHID, orderedDate) values (?, ?, ?, ?)";
+            executeBatch(con, query, params, rows, batchSize, result);
+            commit(con);
+            result.committed(rows);
+        } catch (SQLException ex) {
+            metrics.error("createTests");
+            System.out.println("Failed to create tests. " + ex.getMessage());
+            rollback(con);
+        } finally {
+            endTransaction(con);
+            metrics.record("createTests", start, 0);
+        }
+        return result;
+    }
+
+    /**
+     * Creates referrals, referred today
+     *
+     * @param referrals - the referrals to create
+     * @return the outcome of every referral
+     */
+    public BatchResult createReferrals(List<NewReferral> referrals) {
+        return createReferrals(referrals, BATCH_SIZE);
+    }
+
+    /**
+     * @param referrals - the referrals to create
+     * @param batchSize - inserts sent per round trip
+     * @return the outcome of every referral
+     */
+    public BatchResult createReferrals(List<NewReferral> referrals, int batchSize) {
+        long start = metrics.start();
+        BatchResult result = new BatchResult(referrals.size());
+        ArrayList<Object[]> params = new ArrayList<Object[]>();
+        ArrayList<Integer> rows = new ArrayList<Integer>();
+        Connection con = null;
+        try {
+            con = getConnection();
+            con.setAutoCommit(false);
+            java.sql.Date created = today();
+            for (int i = 0; i < referrals.size(); i++) {
+                NewReferral r = referrals.get(i);
+                params.add(new Object[]{r.getPatientID(), r.getReferrerHID(), r.getReferreeHID(), created});
+                rows.add(i);
+            }
+
+            String query = "insert into referral (patientID, referrerHID, referreeHID, referredDate) values (?, ?, ?, ?)";
+            executeBatch(con, query, params, rows, batchSize, result);
+            commit(con);
+            result.committed(rows);
+        } catch (SQLException ex) {
+            metrics.error("createReferrals");
+            System.out.println("Failed to create referrals. " + ex.getMessage());
+            rollback(con);
+        } finally {
+            endTransaction(con);
+            metrics.record("createReferrals", start, 0);
+        }
+        return result;
+    }
+
+    /**
+     * Creates invoices, created today
+     *
+     * @param invoices - the invoices to create
+     * @return the outcome of every invoice
+     */
+    public BatchResult createInvoices(List<NewInvoice> invoices) {
+        return createInvoices(invoices, BATCH_SIZE);
+    }
+
+    /**
+     * @param invoices  - the invoices to create
+     * @param batchSize - inserts sent per round trip
+     * @return the outcome of every invoice
+     */
+    public BatchResult createInvoices(List<NewInvoice> invoices, int batchSize) {
+        long start = metrics.start();
+        BatchResult result = new BatchResult(invoices.size());
+        ArrayList<Object[]> params = new ArrayList<Object[]>();
+        ArrayList<Integer> rows = new ArrayList<Integer>();
+        Connection con = null;
+        try {
+            con = getConnection();
+            con.setAutoCommit(false);
+            java.sql.Date created = today();
+            for (int i = 0; i < invoices.size(); i++) {
+                NewInvoice inv = invoices.get(i);
+                Long paymentID = null;
+                if (inv.getPaymentMethod().equals("Credit\\Debit")) {
+                    paymentID = paymentIDs.next(con);
+                }
+                long id = invoiceIDs.next(con);
+                result.setID(i, id);
+                params.add(new Object[]{id, inv.getPatientID(), inv.getInvoiceItem(), created, inv.getDueDate(),
+                        inv.getPaymentStatus(), inv.getPaymentDate(), inv.getPaymentMethod(), inv.getAmountOwing(),
+                        paymentID, inv.getPlanID()});
+                rows.add(i);
+            }
+
+            String query = "insert into invoice (invoiceID, patientID, invoiceItem, creationDate, dueDate, paymentStatus, "
+                    + "paymentDate, paymentMethod, amountOwing, paymentID, planID) values (?, ?, ?, ?,"
+                    + " to_date(?, 'yyyy-MM-dd'), ?, to_date(?, 'yyyy-MM-dd'), ?, ?, ?, ?)";
+            executeBatch(con, query, params, rows, batchSize, result);
+            commit(con);
+            result.committed(rows);
+
+            // Balances only change once the invoices are committed
+            for (NewInvoice inv : invoices) {
+                if (inv.getPaymentStatus().equals("Unpaid")) {
+                    addToBalance(inv.getPatientID(), inv.getDueDate(), inv.getAmountOwing());
+                }
+            }
+        } catch (SQLException ex) {
+            metrics.error("createInvoices");
+            System.out.println("Failed to create invoices. " + ex.getMessage());
+            rollback(con);
+        } finally {
+            endTransaction(con);
+            metrics.record("createInvoices", start, 0);
+        }
+        return result;
+    }
+
+    /**
+     * Locks the patient's row until the transaction ends, so prescriptions for the
+     * patient are checked for interactions one at a time
+     *
+     * @param con - connection the caller already borrowed, with auto commit off
+     * @param pid - the patient's PID
+     */
+    private void lockPatient(Connection con, Object pid) throws SQLException {
+        PreparedStatement ps = prepare(con, "select patientID from patient where patientID = ? for update", pid);
+        ps.executeQuery().close();
+    }
+
+    /**
+     * Reads the medications already prescribed to each patient, a fixed number of
+     * PIDs per query so the statement is reused
+     *
+     * @param con     - connection the caller already borrowed from the pool
+     * @param current - PID to the set to fill with the patient's medications
+     */
+    private void readMedications(Connection con, Map<Long, HashSet<String>> current) throws SQLException {
+        StringBuilder query = new StringBuilder("select patientID, medication from prescription where patientID in (");
+        for (int i = 0; i < MEDICATION_LOOKUP_SIZE; i++) {
+            query.append(i == 0 ? "?" : ", ?");
+        }
+        query.append(")");
+
+        ArrayList<Long> pids = new ArrayList<Long>(current.keySet());
+        for (int from = 0; from < pids.size(); from += MEDICATION_LOOKUP_SIZE) {
+            // Unused places are bound as null, which matches nothing
+            Object[] params = new Object[MEDICATION_LOOKUP_SIZE];
+            for (int i = 0; i < MEDICATION_LOOKUP_SIZE && from + i < pids.size(); i++) {
+                params[i] = pids.get(from + i);
+            }
+            PreparedStatement ps = prepare(con, query.toString(), params);
+            int fetchSize = fetchSizes.apply(ps, "readMedications");
+            ResultSet rs = ps.executeQuery();
+            int rows = 0;
+            while (rs.next()) {
+                rows++;
+                HashSet<String> medications = current.get(rs.getLong(1));
+                if (medications != null) {
+                    medications.add(rs.getString(2));
+                }
+            }
+            rs.close();
+            fetchSizes.record("readMedications", fetchSize, rows);
+        }
+    }
+
+    /**
+     * Adds every row to the statement's batch and executes it batchSize rows at a time
+     *
+     * @param con       - connection the caller already borrowed, with auto commit off
+     * @param query     - the insert
+     * @param params    - parameters of each row
+     * @param rows      - position of each row in the caller's list, for the result
+     * @param batchSize - rows per executeBatch
+     * @param result    - where a failed row is recorded
+     * @throws SQLException if a row failed; the caller rolls back
+     */
+    private void executeBatch(Connection con, String query, List<Object[]> params, List<Integer> rows,
+                              int batchSize, BatchResult result) throws SQLException {
+        batchSize = Math.max(1, batchSize);
+        PreparedStatement ps = null;
+        int start = 0;
+        for (int i = 0; i < params.size(); i++) {
+            ps = prepare(con, query, params.get(i));
+            ps.addBatch();
+            if (i + 1 - start < batchSize && i + 1 < params.size()) {
+                continue;
+            }
+            try {
+                ps.executeBatch();
+            } catch (BatchUpdateException ex) {
+                ps.clearBatch();
+                int[] counts = ex.getUpdateCounts();
+                int size = i + 1 - start;
+                // Drivers either stop at the failed row or mark it and carry on
+                int failed = counts == null ? -1 : counts.length < size ? counts.length : -1;
+                for (int j = 0; failed < 0 && counts != null && j < counts.length; j++) {
+                    if (counts[j] == Statement.EXECUTE_FAILED) {
+                        failed = j;
+                    }
+                }
+                if (failed >= 0) {
+                    result.reject(rows.get(start + failed), BatchResult.Outcome.FAILED, ex.getMessage());
+                } else {
+                    for (int j = start; j <= i; j++) {
+                        result.reject(rows.get(j), BatchResult.Outcome.FAILED, ex.getMessage());
+                    }
+                }
+                throw ex;
+            }
+            start = i + 1;
+        }
+    }
+
+    /**
+     * Commits the current transaction, unless it is part of a unit of work
+     */
+    private void commit(Connection con) throws SQLException {
+        if (workOf(con) == null) {
+            con.commit();
+        }
+    }
+
+    /**
+     * Rolls back the current transaction. Null is ignored. In a unit of work, the
+     * unit of work is rolled back when it ends instead.
+     */
+    private void rollback(Connection con) {
+        UnitOfWork work = workOf(con);
+        if (work != null) {
+            work.setRollbackOnly("A statement failed");
+        } else if (con != null) {
+            try {
+                con.rollback();
+            } catch (SQLException ex) {
+                System.out.println("Failed to roll back. " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Turns auto commit back on and returns the connection to the pool, unless
+     * it belongs to a unit of work
+     */
+    private void endTransaction(Connection con) {
+        if (workOf(con) != null) {
+            return;
+        }
+        if (con != null) {
+            try {
+                con.setAutoCommit(true);
+            } catch (SQLException ex) {
+                System.out.println("Failed to restore auto commit. " + ex.getMessage());
+            }
+        }
+        releaseConnection(con);
+    }
+
     /**
      * deleteX method: Deletes an existing X tuple by specified ID
      */
@@ -263,17 +1250,40 @@ public class HealthDB {
      * referral, prescription, labtest, provincialhealthplan, extendedbenefitsplan, invoice tables
      */
     public boolean deletePatient(String pid) {
+        long start = metrics.start();
+        Connection con = null;
         try {
-            String query = "delete from patient where patientID = " + pid;
-            // Create a statement
-            Statement stmt = con.createStatement();
-            // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            stmt.close();
+            con = getConnection();
+            String query = "delete from patient where patientID = ?";
+            PreparedStatement ps = prepare(con, query, pid);
+            // Execute the delete.
+            ps.executeUpdate();
+
+            final String deleted = pid.trim();
+            afterCommit(new Runnable() {
+                @Override
+                public void run() {
+                    balances.invalidate(deleted);
+                    patientCache.invalidate(deleted);
+                    PatientNameIndex index = patientNameIndex;
+                    if (index != null) {
+                        try {
+                            index.remove(Long.parseLong(deleted));
+                        } catch (NumberFormatException ignored) {
+                            // Not a PID, so nothing was deleted
+                        }
+                    }
+                }
+            });
             return true;
         } catch (SQLException ex) {
+            metrics.error("deletePatient");
             System.out.println("Failed to delete patient" + ex.getMessage());
+            failed(ex);
             return false;
+        } finally {
+            releaseConnection(con);
+            metrics.record("deletePatient", start, 0, pid);
         }
     }
 
@@ -281,192 +1291,456 @@ public class HealthDB {
      */
 
     /**
-     * Finds all patients with a name containing the string provided.
+     * Starts a search for patients with a name containing the string provided.
+     * Nothing is queried until the first page is requested.
      *
      * @param name: the name of the patient to be searched for
-     * @return tuples of all patients whose first or last name starts with the string provided.
+     * @return the search, pages are read with PatientSearch.nextPage
      */
-    public ArrayList<ArrayList<String>> getPatients(String name) {
-        ArrayList<ArrayList<String>> tuples = new ArrayList<ArrayList<String>>();
+    public PatientSearch searchPatients(String name) {
+        return new PatientSearch(this, name, SEARCH_PAGE_SIZE);
+    }
+
+    /**
+     * Returns one page of the patients with a name containing the string provided,
+     * ordered by PID. Pages are found by PID (keyset pagination) rather than by
+     * offset, so later pages cost the same as the first.
+     *
+     * @param name           - the name of the patient to be searched for
+     * @param afterPatientID - only patients with a greater PID are returned
+     * @param limit          - maximum number of patients returned
+     * @param search         - the search the page belongs to, so it can cancel the running query
+     * @return up to limit patients, fewer if there are no more or the search was cancelled
+     */
+    ArrayList<Patient> getPatients(String name, long afterPatientID, int limit, PatientSearch search) {
+        long start = metrics.start();
+        ArrayList<Patient> patients = new ArrayList<Patient>();
+        Connection con = null;
         try {
-            String query = "select p.firstName, p.lastName, p.patientID, p.street, "
-                    + "pc.city, pc.province, pc.postalcode, pc.country, "
-                    + "p.homePhone, p.mobilePhone from patient p left join postalcode pc "
-                    + "on p.postalcode = pc.postalcode " + "where (lower(p.firstName) like '%"
-                    + name.toLowerCase() + "%'" + " or lower(p.lastName) like '%" + name.toLowerCase() + "%')";
-            // Create a statement
-            Statement stmt = con.createStatement();
-            // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            con = getConnection();
+            String query = "select * from (select p.firstName, p.lastName, p.patientID, p.street, "
+                    + "p.postalcode, p.homePhone, p.mobilePhone from patient p "
+                    + "where (lower(p.firstName) like ? escape '\\' or lower(p.lastName) like ? escape '\\') "
+                    + "and p.patientID > ? order by p.patientID) where rownum <= ?";
+            String pattern = "%" + escapeLike(name.toLowerCase()) + "%";
+            PreparedStatement ps = prepare(con, query, pattern, pattern, afterPatientID, limit);
+            ps.setFetchSize(Math.max(1, Math.min(limit, SEARCH_FETCH_SIZE)));
+            if (!search.started(ps)) {
+                return patients;
+            }
+            try {
+                // Execute the query.
+                ResultSet rs = ps.executeQuery();
+
+                while (rs.next() && !search.isCancelled()) {
+                    patients.add(readPatient(con, rs));
+                }
+
+                // Close the result set, the statement stays cached for reuse.
+                rs.close();
+            } finally {
+                search.finished();
+            }
+        } catch (SQLException ex) {
+            if (search.isCancelled()) {
+                System.out.println("Patient search cancelled.");
+            } else {
+                System.out.println("Failed to get patients. " + ex.getMessage());
+                metrics.error("searchPatients");
+            }
+        } finally {
+            releaseConnection(con);
+            metrics.record("searchPatients", start, patients.size());
+        }
+        return patients;
+    }
+
+    /**
+     * Looks up a name search in the in-memory name index
+     *
+     * @param name - the name of the patient to be searched for
+     * @return PIDs of the matching patients, best matches first, or null if the
+     * index is not available or has no match and the search has to go to Oracle
+     */
+    long[] findPatientIDs(String name) {
+        PatientNameIndex index = patientNameIndex;
+        if (index == null) {
+            return null;
+        }
+        if (System.nanoTime() - patientNameIndexBuiltAt > NAME_INDEX_REFRESH_MS * 1000000L) {
+            ConnectionPool p = pool;
+            if (p != null) {
+                startPatientNameIndexBuild(p);
+            }
+        }
+        long[] pids = index.search(name);
+        // The patient may have been added since the index was built
+        return pids.length == 0 ? null : pids;
+    }
+
+    /**
+     * Returns the patients with the given PIDs, in the order given. PIDs of patients
+     * that no longer exist are skipped.
+     *
+     * @param pids   - PIDs found by findPatientIDs
+     * @param from   - index of the first PID to read
+     * @param to     - index after the last PID to read, at most from + the search's page size
+     * @param search - the search the page belongs to, so it can cancel the running query
+     * @return the patients found
+     */
+    ArrayList<Patient> getPatients(long[] pids, int from, int to, PatientSearch search) {
+        long start = metrics.start();
+        ArrayList<Patient> patients = new ArrayList<Patient>();
+        Connection con = null;
+        try {
+            con = getConnection();
+            // Always page size placeholders so every page reuses one cached statement
+            int slots = search.getPageSize();
+            StringBuilder query = new StringBuilder("select p.firstName, p.lastName, p.patientID, p.street, "
+                    + "p.postalcode, p.homePhone, p.mobilePhone from patient p where p.patientID in (");
+            Object[] params = new Object[slots];
+            for (int i = 0; i < slots; i++) {
+                query.append(i == 0 ? "?" : ", ?");
+                // -1 is never a PID
+                params[i] = from + i < to ? pids[from + i] : -1L;
+            }
+            query.append(")");
+            PreparedStatement ps = prepare(con, query.toString(), params);
+            ps.setFetchSize(Math.max(1, Math.min(slots, SEARCH_FETCH_SIZE)));
+            if (!search.started(ps)) {
+                return patients;
+            }
+            HashMap<Long, Patient> byPID = new HashMap<Long, Patient>();
+            try {
+                // Execute the query.
+                ResultSet rs = ps.executeQuery();
+
+                while (rs.next() && !search.isCancelled()) {
+                    Patient patient = readPatient(con, rs);
+                    byPID.put(patient.getPatientID(), patient);
+                }
+
+                // Close the result set, the statement stays cached for reuse.
+                rs.close();
+            } finally {
+                search.finished();
+            }
+
+            // Back into ranked order
+            for (int i = from; i < to; i++) {
+                Patient patient = byPID.get(pids[i]);
+                if (patient != null) {
+                    patients.add(patient);
+                }
+            }
+        } catch (SQLException ex) {
+            if (search.isCancelled()) {
+                System.out.println("Patient search cancelled.");
+            } else {
+                System.out.println("Failed to get patients. " + ex.getMessage());
+                metrics.error("searchPatients");
+            }
+        } finally {
+            releaseConnection(con);
+            metrics.record("searchPatients", start, patients.size());
+        }
+        return patients;
+    }
+
+    /**
+     * Builds the name index on a background thread, unless a build is already running
+     *
+     * @param builtFrom - the pool the index is built from
+     */
+    private void startPatientNameIndexBuild(final ConnectionPool builtFrom) {
+        if (!patientNameIndexBuilding.compareAndSet(false, true)) {
+            return;
+        }
+        Thread builder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    buildPatientNameIndex(builtFrom);
+                } finally {
+                    patientNameIndexBuilding.set(false);
+                }
+            }
+        }, "PatientNameIndex-build");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * Reads every patient name into a new PatientNameIndex and starts using it,
+     * unless the connection has changed in the meantime
+     *
+     * @param builtFrom - the pool the index is built from
+     */
+    private void buildPatientNameIndex(ConnectionPool builtFrom) {
+        PatientNameIndex index = new PatientNameIndex();
+        long start = System.nanoTime();
+        Connection con = null;
+        try {
+            con = builtFrom.getConnection();
+            PreparedStatement ps = builtFrom.prepareStatement(con,
+                    "select patientID, firstName, lastName from patient");
+            ps.setFetchSize(1000);
+            ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
-                ArrayList<String> tuple = new ArrayList<String>();
-                tuple.add(rs.getString("firstName"));
-                tuple.add(rs.getString("lastName"));
-                tuple.add(rs.getString("patientID"));
-                tuple.add(rs.getString("street"));
-                tuple.add(rs.getString("city"));
-                tuple.add(rs.getString("province"));
-                tuple.add(rs.getString("postalcode"));
-                tuple.add(rs.getString("country"));
-                tuple.add(rs.getString("homePhone"));
-                tuple.add(rs.getString("mobilePhone"));
-                tuples.add(tuple);
+                index.add(rs.getLong(1), rs.getString(2), rs.getString(3));
             }
 
-            // Close the statement, the result set will be closed in the process.
-            stmt.close();
+            // Close the result set, the statement stays cached for reuse.
+            rs.close();
         } catch (SQLException ex) {
-            System.out.println("Failed to get patients. " + ex.getMessage());
+            System.out.println("Failed to build patient name index, searching Oracle instead. " + ex.getMessage());
+            // Try again after the refresh interval, not on every search
+            patientNameIndexBuiltAt = start;
+            return;
+        } finally {
+            if (con != null) {
+                builtFrom.releaseConnection(con);
+            }
+        }
+        if (pool == builtFrom) {
+            boolean first = patientNameIndex == null;
+            patientNameIndexBuiltAt = start;
+            patientNameIndex = index;
+            if (first) {
+                System.out.println(index + " built in "
+                        + String.format("%.1f", (System.nanoTime() - start) / 1e6) + " ms");
+            }
         }
-        return tuples;
     }
 
     /**
-     * Returns the prescriptions of the specified patient
-     * <p>
-     * tuple = {0 presID, 1 presDate, 2 medication, 3 dosage, 4 doseMeasure, 5 qty, 6 filledDate}
+     * Returns the prescriptions of the specified patient, newest first
      *
      * @param pid- the PID of the selected Patient, cannot be null
      * @return prescription data
      */
-    public ArrayList<ArrayList<String>> getPrescriptions(String pid) {
-        ArrayList<ArrayList<String>> tuples = new ArrayList<ArrayList<String>>();
+    public ArrayList<Prescription> getPrescriptions(String pid) {
+        long start = metrics.start();
+        ArrayList<Prescription> prescriptions = new ArrayList<Prescription>();
+        Connection con = null;
         try {
-            String query = "select pr.prescriptionID, pr.prescribedDate, m.medication," +
-                    " pr.dosage, m.dosageMeasure, pr.quantity, pr.filledDate" +
-                    " from prescription pr, medication m where pr.medication =" +
-                    " m.medication and pr.patientID = " + pid + " order by pr.prescribedDate desc";
-            // Create a statement
-            Statement stmt = con.createStatement();
+            con = getConnection();
+            String query = "select pr.prescriptionID, pr.prescribedDate, pr.medication," +
+                    " pr.dosage, pr.quantity, pr.filledDate from prescription pr" +
+                    " where pr.patientID = ? order by pr.prescribedDate desc";
+            PreparedStatement ps = prepare(con, query, pid);
             // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            int fetchSize = fetchSizes.apply(ps, "getPrescriptions");
+            ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
-                ArrayList<String> tuple = new ArrayList<String>();
-                tuple.add(rs.getString("prescriptionID"));
-                if (rs.getDate("prescribedDate") != null) {
-                    tuple.add(format.format(rs.getDate("prescribedDate")));
-                } else {
-                    tuple.add("");
-                }
-                tuple.add(rs.getString("medication"));
-                tuple.add(rs.getString("dosage"));
-                tuple.add(rs.getString("dosageMeasure"));
-                tuple.add(rs.getString("quantity"));
-                if (rs.getDate("filledDate") != null) {
-                    tuple.add(format.format(rs.getDate("filledDate")));
-                } else {
-                    tuple.add("");
-                }
-
-                if (rs.getString("filledDate") == null) {
-                    tuple.add("No");
-                } else {
-                    tuple.add("Yes");
-                }
-
-                tuples.add(tuple);
+                prescriptions.add(readPrescription(con, rs));
             }
 
-            // Close the statement, the result set will be closed in the process.
-            stmt.close();
+            // Close the result set, the statement stays cached for reuse.
+            rs.close();
+            fetchSizes.record("getPrescriptions", fetchSize, prescriptions.size());
         } catch (SQLException ex) {
+            metrics.error("getPrescriptions");
             System.out.println("Failed to get prescriptions. " + ex.getMessage());
+        } finally {
+            releaseConnection(con);
+            metrics.record("getPrescriptions", start, prescriptions.size(), pid);
         }
-        return tuples;
+        return prescriptions;
     }
 
     /**
-     * Returns the tests of the specified patient
-     * <p>
-     * tuple = {0 testID, 1 orderedDate, 2 performedDate}
+     * Returns the tests of the specified patient, newest first
      *
      * @param pid - the PID of the selected Patient
      * @return test data
      */
-    public ArrayList<ArrayList<String>> getTests(String pid) {
-        ArrayList<ArrayList<String>> tuples = new ArrayList<ArrayList<String>>();
+    public ArrayList<LabTest> getTests(String pid) {
+        long start = metrics.start();
+        ArrayList<LabTest> tests = new ArrayList<LabTest>();
+        Connection con = null;
         try {
-            String query = "select testID, orderedDate, performedDate from LabTest where patientID = " + pid + " order by orderedDate desc";
-            // Create a statement
-            Statement stmt = con.createStatement();
+            con = getConnection();
+            String query = "select testID, orderedDate, performedDate from LabTest where patientID = ? order by orderedDate desc";
+            PreparedStatement ps = prepare(con, query, pid);
             // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            int fetchSize = fetchSizes.apply(ps, "getTests");
+            ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
-                ArrayList<String> tuple = new ArrayList<String>();
-                tuple.add(rs.getString("testID"));
-                if (rs.getDate("orderedDate") != null) {
-                    tuple.add(format.format(rs.getDate("orderedDate")));
-                } else {
-                    tuple.add("");
-                }
-                if (rs.getDate("performedDate") != null) {
-                    tuple.add(format.format(rs.getDate("performedDate")));
-                } else {
-                    tuple.add("");
-                }
-
-                if (rs.getString("performedDate") == null) {
-                    tuple.add("No");
-                } else {
-                    tuple.add("Yes");
-                }
-                tuples.add(tuple);
+                tests.add(new LabTest(rs.getLong(1), toLocalDate(rs.getDate(2)), toLocalDate(rs.getDate(3))));
             }
 
-            // Close the statement, the result set will be closed in the process.
-            stmt.close();
+            // Close the result set, the statement stays cached for reuse.
+            rs.close();
+            fetchSizes.record("getTests", fetchSize, tests.size());
         } catch (SQLException ex) {
+            metrics.error("getTests");
             System.out.println("Failed to get test summary. " + ex.getMessage());
+        } finally {
+            releaseConnection(con);
+            metrics.record("getTests", start, tests.size(), pid);
         }
-        return tuples;
+        return tests;
     }
 
     /**
-     * Returns the referrals of the specified patient
-     * <p>
-     * tuple = {0 firstName, 1 lastName, 2 specialization, 3 referredDate}
+     * Returns the referrals of the specified patient, newest first
      *
      * @param pid - the PID of the selected Patient
      * @return referral data
      */
-    public ArrayList<ArrayList<String>> getReferrals(String pid) {
-        ArrayList<ArrayList<String>> tuples = new ArrayList<ArrayList<String>>();
+    public ArrayList<Referral> getReferrals(String pid) {
+        long start = metrics.start();
+        ArrayList<Referral> referrals = new ArrayList<Referral>();
+        Connection con = null;
         try {
-            String query = "select h.firstName, h.lastName, d.specialization," +
-                    " r.referredDate from Referral r, HealthcareProfessional h," +
-                    " Doctor d where r.referreeHID = h.HID and d.HID = h.hid" +
-                    " and r.patientID = " + pid + " order by referredDate desc";
-            // Create a statement
-            Statement stmt = con.createStatement();
+            con = getConnection();
+            String query = "select r.referrerHID, r.referreeHID, r.referredDate from Referral r" +
+                    " where r.patientID = ? order by referredDate desc";
+            PreparedStatement ps = prepare(con, query, pid);
             // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            int fetchSize = fetchSizes.apply(ps, "getReferrals");
+            ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
-                ArrayList<String> tuple = new ArrayList<String>();
-                tuple.add(rs.getString("firstName"));
-                tuple.add(rs.getString("lastName"));
-                tuple.add(rs.getString("specialization"));
-                if (rs.getDate("referredDate") != null) {
-                    tuple.add(format.format(rs.getDate("referredDate")));
+                referrals.add(readReferral(con, rs.getLong(1), rs.getLong(2), rs.getDate(3)));
+            }
+
+            // Close the result set, the statement stays cached for reuse.
+            rs.close();
+            fetchSizes.record("getReferrals", fetchSize, referrals.size());
+        } catch (SQLException ex) {
+            metrics.error("getReferrals");
+            System.out.println("Failed to get referrals. " + ex.getMessage());
+        } finally {
+            releaseConnection(con);
+            metrics.record("getReferrals", start, referrals.size(), pid);
+        }
+        ReferralWriteBehind writer = referralWriter;
+        return writer == null ? referrals : writer.overlay(pid, referrals);
+    }
+
+    /**
+     * Loads a patient together with their prescriptions, tests and referrals in a
+     * single query, so the Patient Summary view needs one round trip instead of four.
+     * The four parts are combined with union all; the kind column tells them apart.
+     *
+     * @param pid - the PID of the selected Patient
+     * @return the patient summary, isFound() is false if there is no such patient
+     */
+    public PatientSummary loadPatientSummary(String pid) {
+        long start = metrics.start();
+        PatientSummary summary = new PatientSummary();
+        Connection con = null;
+        try {
+            con = getConnection();
+            // Postal code places, dosage measures and doctors come from the reference cache
+            String query = "select 'P' as kind, p.patientID as id, cast(null as number) as dosage,"
+                    + " cast(null as number) as quantity, p.firstName as s1, p.lastName as s2, p.street as s3,"
+                    + " p.postalcode as s4, p.homePhone as s5, p.mobilePhone as s6,"
+                    + " cast(null as date) as d1, cast(null as date) as d2"
+                    + " from patient p where p.patientID = ?"
+                    + " union all"
+                    + " select 'R', pr.prescriptionID, pr.dosage, pr.quantity, pr.medication, null,"
+                    + " null, null, null, null, pr.prescribedDate, pr.filledDate"
+                    + " from prescription pr where pr.patientID = ?"
+                    + " union all"
+                    + " select 'T', testID, null, null, null, null, null, null, null, null,"
+                    + " orderedDate, performedDate from LabTest where patientID = ?"
+                    + " union all"
+                    + " select 'F', r.referreeHID, null, r.referrerHID, null, null, null, null, null, null,"
+                    + " r.referredDate, null from Referral r where r.patientID = ?"
+                    + " order by kind, d1 desc";
+            PreparedStatement ps = prepare(con, query, pid, pid, pid, pid);
+            // Execute the query.
+            int fetchSize = fetchSizes.apply(ps, "loadPatientSummary");
+            ResultSet rs = ps.executeQuery();
+
+            // Columns: 1 kind, 2 id, 3 dosage, 4 quantity, 5-10 s1-s6, 11 d1, 12 d2
+            int rows = 0;
+            while (rs.next()) {
+                rows++;
+                String kind = rs.getString(1);
+                if (kind.equals("P")) {
+                    ArrayList<String> tuple = summary.getPatient();
+                    String postalCode = rs.getString(8);
+                    ReferenceCache.Place place = references().getPlace(con, postalCode);
+                    tuple.add(rs.getString(5));
+                    tuple.add(rs.getString(6));
+                    tuple.add(rs.getString(2));
+                    tuple.add(emptyIfNull(rs.getString(7)));
+                    tuple.add(place == null ? "" : emptyIfNull(place.getCity()));
+                    tuple.add(place == null ? "" : emptyIfNull(place.getProvince()));
+                    tuple.add(place == null ? "" : emptyIfNull(postalCode));
+                    tuple.add(place == null ? null : place.getCountry());
+                    tuple.add(rs.getString(9));
+                    tuple.add(rs.getString(10));
+                } else if (kind.equals("R")) {
+                    long prescriptionID = rs.getLong(2);
+                    double dosage = rs.getDouble(3);
+                    int quantity = rs.getInt(4);
+                    String medication = rs.getString(5);
+                    summary.getPrescriptions().add(new Prescription(prescriptionID, toLocalDate(rs.getDate(11)),
+                            medication, dosage, references().getDosageMeasure(con, medication), quantity,
+                            toLocalDate(rs.getDate(12))));
+                } else if (kind.equals("T")) {
+                    summary.getTests().add(new LabTest(rs.getLong(2), toLocalDate(rs.getDate(11)),
+                            toLocalDate(rs.getDate(12))));
                 } else {
-                    tuple.add("");
+                    // The referrer and referree HIDs are in the quantity and id columns
+                    long referreeHID = rs.getLong(2);
+                    long referrerHID = rs.getLong(4);
+                    summary.getReferrals().add(readReferral(con, referrerHID, referreeHID, rs.getDate(11)));
                 }
-                tuples.add(tuple);
             }
 
-            // Close the statement, the result set will be closed in the process.
-            stmt.close();
+            // Close the result set, the statement stays cached for reuse.
+            rs.close();
+            fetchSizes.record("loadPatientSummary", fetchSize, rows);
         } catch (SQLException ex) {
-            System.out.println("Failed to get referrals. " + ex.getMessage());
+            metrics.error("loadPatientSummary");
+            System.out.println("Failed to load patient summary. " + ex.getMessage());
+        } finally {
+            releaseConnection(con);
+            metrics.record("loadPatientSummary", start, summary.getPrescriptions().size() + summary.getTests().size()
+                    + summary.getReferrals().size(), pid);
+        }
+        ReferralWriteBehind writer = referralWriter;
+        if (writer != null && summary.isFound()) {
+            writer.overlay(pid, summary.getReferrals());
+        }
+        return summary;
+    }
+
+    /**
+     * Loads everything shown on the Plan Summary view for a patient. The queries
+     * run concurrently on separate pooled connections.
+     *
+     * @param pid - the PID of the selected Patient
+     * @return the plan summary with per-query timings, isFound() is false if there is no such patient
+     */
+    public PlanSummary loadPlanSummary(String pid) {
+        long start = metrics.start();
+        PlanSummaryLoader loader = planSummaryLoader;
+        if (loader == null) {
+            System.out.println("Failed to load plan summary. Not connected to the database");
+            metrics.error("loadPlanSummary");
+            metrics.record("loadPlanSummary", start, 0, pid);
+            return new PlanSummary();
+        }
+        try {
+            return loader.load(pid);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            System.out.println("Interrupted while loading plan summary.");
+            metrics.error("loadPlanSummary");
+            return new PlanSummary();
+        } finally {
+            metrics.record("loadPlanSummary", start, 0, pid);
         }
-        return tuples;
     }
 
     /**
@@ -478,35 +1752,34 @@ public class HealthDB {
      * @return provincial plan information
      */
     public ArrayList<String> getPlan(String pid) {
+        long start = metrics.start();
         ArrayList<String> tuple = new ArrayList<String>();
+        Connection con = null;
         try {
+            con = getConnection();
             String query = "select planID, policyType, startDate, endDate from " +
-                    "ProvincialHealthPlan where patientID = " + pid;
-            // Create a statement
-            Statement stmt = con.createStatement();
+                    "ProvincialHealthPlan where patientID = ?";
+            PreparedStatement ps = prepare(con, query, pid);
             // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
-                tuple.add(rs.getString("planID"));
-                tuple.add(rs.getString("policyType"));
-                if (rs.getDate("startDate") != null) {
-                    tuple.add(format.format(rs.getDate("startDate")));
-                } else {
-                    tuple.add("");
-                }
-                if (rs.getDate("endDate") != null) {
-                    tuple.add(format.format(rs.getDate("endDate")));
-                } else {
-                    tuple.add("");
-                }
+                tuple.add(rs.getString(1));
+                tuple.add(rs.getString(2));
+                LocalDate startDate = toLocalDate(rs.getDate(3));
+                tuple.add(startDate == null ? "" : DATE_FORMAT.format(startDate));
+                LocalDate endDate = toLocalDate(rs.getDate(4));
+                tuple.add(endDate == null ? "" : DATE_FORMAT.format(endDate));
             }
 
-            // Close the statement, the result set will be closed in the process.
-            stmt.close();
+            // Close the result set, the statement stays cached for reuse.
+            rs.close();
         } catch (SQLException ex) {
+            metrics.error("getPlan");
             System.out.println("Failed to get provincial plan information " + ex.getMessage());
+        } finally {
+            releaseConnection(con);
+            metrics.record("getPlan", start, tuple.isEmpty() ? 0 : 1, pid);
         }
         return tuple;
     }
@@ -520,149 +1793,223 @@ public class HealthDB {
      * @return extended benefits information
      */
     public ArrayList<ArrayList<String>> getExtendedBenefits(String pid) {
+        long start = metrics.start();
         ArrayList<ArrayList<String>> tuples = new ArrayList<ArrayList<String>>();
+        Connection con = null;
         try {
+            con = getConnection();
             String query = "select chiropractic, chiropracticAnnualLimit, chiropracticYTD," +
                     " physiotherapy, physiotherapyAnnualLimit, physiotherapyYTD," +
                     " nonSurgicalPodiatry, nonSurgicalPodiatryAnnualLimit, " +
                     "nonSurgicalPodiatryYTD, acupuncture, acupunctureAnnualLimit," +
                     " acupunctureYTD, medication, medicationAnnualLimit, " +
-                    "medicationYTD from ExtendedBenefitsPlan ebp, ProvincialHealthPlan php where ebp.planID = php.planID and php.patientID = " + pid;
-            // Create a statement
-            Statement stmt = con.createStatement();
+                    "medicationYTD from ExtendedBenefitsPlan ebp, ProvincialHealthPlan php where ebp.planID = php.planID and php.patientID = ?";
+            PreparedStatement ps = prepare(con, query, pid);
             // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
-                ArrayList<String> tuple = new ArrayList<String>();
-                tuple.add(rs.getString("chiropractic"));
-                tuple.add(rs.getString("chiropracticAnnualLimit"));
-                tuple.add(rs.getString("chiropracticYTD"));
-                tuple.add(rs.getString("physiotherapy"));
-                tuple.add(rs.getString("physiotherapyAnnualLimit"));
-                tuple.add(rs.getString("physiotherapyYTD"));
-                tuple.add(rs.getString("nonSurgicalPodiatry"));
-                tuple.add(rs.getString("nonSurgicalPodiatryAnnualLimit"));
-                tuple.add(rs.getString("nonSurgicalPodiatryYTD"));
-                tuple.add(rs.getString("acupuncture"));
-                tuple.add(rs.getString("acupunctureAnnualLimit"));
-                tuple.add(rs.getString("acupunctureYTD"));
-                tuple.add(rs.getString("medication"));
-                tuple.add(rs.getString("medicationAnnualLimit"));
-                tuple.add(rs.getString("medicationYTD"));
+                // The 15 columns in query order
+                ArrayList<String> tuple = new ArrayList<String>(15);
+                for (int i = 1; i <= 15; i++) {
+                    tuple.add(rs.getString(i));
+                }
                 tuples.add(tuple);
             }
-
-            // Close the statement, the result set will be closed in the process.
-            stmt.close();
-        } catch (SQLException ex) {
-            System.out.println("Failed to get extended benefits information " + ex.getMessage());
+
+            // Close the result set, the statement stays cached for reuse.
+            rs.close();
+        } catch (SQLException ex) {
+            metrics.error("getExtendedBenefits");
+            System.out.println("Failed to get extended benefits information " + ex.getMessage());
+        } finally {
+            releaseConnection(con);
+            metrics.record("getExtendedBenefits", start, tuples.size(), pid);
+        }
+        return tuples;
+    }
+
+    /**
+     * Returns total unpaid amount owing for specified patient. Comes from the
+     * patient's running balance, which is only read from the database once.
+     *
+     * @param pid - the PID of the selected Patient
+     * @return total unpaid amount owing
+     */
+    public double getAmountOwing(String pid) {
+        long start = metrics.start();
+        InvoiceBalances.Balance balance = getBalance(pid);
+        if (balance == null) {
+            metrics.error("getAmountOwing");
+        }
+        metrics.record("getAmountOwing", start, 0, pid);
+        return balance == null ? 0 : balance.getUnpaidCents() / 100.0;
+    }
+
+    /**
+     * Returns total OVERDUE unpaid amount owing for specified patient. Comes from
+     * the patient's running balance, which is only read from the database once.
+     *
+     * @param pid - the PID of the selected Patient
+     * @return total OVERDUE unpaid amount owing
+     */
+    public double getOverdueAmountOwing(String pid) {
+        long start = metrics.start();
+        InvoiceBalances.Balance balance = getBalance(pid);
+        if (balance == null) {
+            metrics.error("getOverdueAmountOwing");
+        }
+        metrics.record("getOverdueAmountOwing", start, 0, pid);
+        return balance == null ? 0 : balance.getOverdueCents(currentDate()) / 100.0;
+    }
+
+    /**
+     * Returns the cached balance of a patient, loading it on first use
+     *
+     * @param pid - the PID of the selected Patient
+     * @return the balance, or null if it could not be loaded
+     */
+    private InvoiceBalances.Balance getBalance(String pid) {
+        InvoiceBalances.Balance balance;
+        try {
+            balance = balances.get(pid);
+        } catch (IllegalArgumentException ex) {
+            System.out.println("Failed to get amount owing. " + ex.getMessage());
+            return null;
+        }
+        if (balance == null) {
+            long loadStartedAt = balances.startLoad();
+            balance = loadBalance(pid);
+            if (balance != null) {
+                balance = balances.put(pid, balance, loadStartedAt);
+            }
+        } else if (VERIFY_BALANCES) {
+            verifyBalance(pid, balance);
         }
-        return tuples;
+        return balance;
     }
 
     /**
-     * Returns total unpaid amount owing for specified patient
+     * Reads the unpaid invoice amounts of a patient, summed per due date
      *
      * @param pid - the PID of the selected Patient
-     * @return total unpaid amount owing
+     * @return the balance, or null on failure
      */
-    public double getAmountOwing(String pid) {
-        double amountOwing = 0;
+    private InvoiceBalances.Balance loadBalance(String pid) {
+        Connection con = null;
         try {
-            String query = "select sum(amountOwing) as amountOwing from Invoice where " +
-                    "patientID = " + pid + " and paymentStatus = 'Unpaid'";
-            // Create a statement
-            Statement stmt = con.createStatement();
+            con = getConnection();
+            String query = "select trunc(dueDate) as dueDate, sum(amountOwing) as amountOwing from Invoice "
+                    + "where patientID = ? and paymentStatus = 'Unpaid' group by trunc(dueDate)";
+            PreparedStatement ps = prepare(con, query, pid);
             // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            ResultSet rs = ps.executeQuery();
 
-            if (rs.next()) {
-                amountOwing = rs.getDouble("amountOwing");
+            InvoiceBalances.Balance balance = new InvoiceBalances.Balance(currentDate());
+            while (rs.next()) {
+                balance.add(toLocalDate(rs.getDate(1)), toCents(rs.getBigDecimal(2)));
             }
 
-            // Close the statement, the result set will be closed in the process.
-            stmt.close();
+            // Close the result set, the statement stays cached for reuse.
+            rs.close();
+            return balance;
         } catch (SQLException ex) {
             System.out.println("Failed to get amount owing " + ex.getMessage());
+        } finally {
+            releaseConnection(con);
         }
-        return amountOwing;
+        return null;
     }
 
     /**
-     * Returns total OVERDUE unpaid amount owing for specified patient.
+     * Reconciles a cached balance with a sum over the patient's invoices and
+     * replaces it if they differ, e.g. because another client changed an invoice
      *
-     * @param pid - the PID of the selected Patient
-     * @return total OVERDUE unpaid amount owing
+     * @param pid     - the PID of the selected Patient
+     * @param balance - the cached balance
+     * @return true if the cached balance was correct
      */
-    public double getOverdueAmountOwing(String pid) {
-        double amountOverdue = 0;
+    public boolean verifyBalance(String pid, InvoiceBalances.Balance balance) {
+        long start = metrics.start();
+        Connection con = null;
         try {
-            String query = "select sum(amountOwing) as overdueAmountOwing from Invoice " +
-                    "where patientID = " + pid + "and paymentStatus = 'Unpaid' and dueDate < " + today();
-            // Create a statement
-            Statement stmt = con.createStatement();
+            con = getConnection();
+            String query = "select sum(amountOwing) as amountOwing, "
+                    + "sum(case when dueDate < ? then amountOwing end) as overdueAmountOwing "
+                    + "from Invoice where patientID = ? and paymentStatus = 'Unpaid'";
+            PreparedStatement ps = prepare(con, query, today(), pid);
             // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            ResultSet rs = ps.executeQuery();
 
+            long unpaid = 0;
+            long overdue = 0;
             if (rs.next()) {
-                amountOverdue = rs.getDouble("overdueAmountOwing");
+                unpaid = toCents(rs.getBigDecimal(1));
+                overdue = toCents(rs.getBigDecimal(2));
             }
 
-            // Close the statement, the result set will be closed in the process.
-            stmt.close();
-            return amountOverdue;
+            // Close the result set, the statement stays cached for reuse.
+            rs.close();
+
+            long cachedUnpaid = balance.getUnpaidCents();
+            long cachedOverdue = balance.getOverdueCents(currentDate());
+            if (unpaid == cachedUnpaid && overdue == cachedOverdue) {
+                return true;
+            }
+            System.out.println("Balance of patient " + pid + " was unpaid=" + cachedUnpaid + "c overdue="
+                    + cachedOverdue + "c, database has unpaid=" + unpaid + "c overdue=" + overdue + "c. Reloading.");
         } catch (SQLException ex) {
-            System.out.println("Failed to get overdue amount owing " + ex.getMessage());
+            metrics.error("verifyBalance");
+            System.out.println("Failed to verify amount owing " + ex.getMessage());
+            return false;
+        } finally {
+            releaseConnection(con);
+            metrics.record("verifyBalance", start, 0, pid);
         }
-        return amountOverdue;
+        InvoiceBalances.Balance reloaded = loadBalance(pid);
+        if (reloaded != null) {
+            balances.replace(pid, reloaded);
+        } else {
+            balances.invalidate(pid);
+        }
+        return false;
     }
 
     /**
-     * Returns invoices for specified patient
+     * Returns invoices for specified patient, newest first
      *
      * @param pid - the PID of the selected Patient
      * @return invoices for specified patient
      */
-    public ArrayList<ArrayList<String>> getInvoices(String pid) {
-        ArrayList<ArrayList<String>> tuples = new ArrayList<ArrayList<String>>();
+    public ArrayList<Invoice> getInvoices(String pid) {
+        long start = metrics.start();
+        ArrayList<Invoice> invoices = new ArrayList<Invoice>();
+        Connection con = null;
         try {
+            con = getConnection();
             String query = "select invoiceID, invoiceItem, creationDate, dueDate, " +
-                    "paymentStatus, amountOwing from Invoice where patientID = " + pid + " order by creationDate desc";
-            // Create a statement
-            Statement stmt = con.createStatement();
+                    "paymentStatus, amountOwing from Invoice where patientID = ? order by creationDate desc";
+            PreparedStatement ps = prepare(con, query, pid);
             // Execute each query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            int fetchSize = fetchSizes.apply(ps, "getInvoices");
+            ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
-                ArrayList<String> tuple = new ArrayList<String>();
-                tuple.add(rs.getString("invoiceID"));
-                tuple.add(rs.getString("invoiceItem"));
-                if (rs.getDate("creationDate") != null) {
-                    tuple.add(format.format(rs.getDate("creationDate")));
-                } else {
-                    tuple.add("");
-                }
-                if (rs.getDate("dueDate") != null) {
-                    tuple.add(format.format(rs.getDate("dueDate")));
-                } else {
-                    tuple.add("");
-                }
-                tuple.add(rs.getString("paymentStatus"));
-                tuple.add(rs.getString("amountOwing"));
-                tuples.add(tuple);
+                invoices.add(new Invoice(rs.getLong(1), rs.getString(2), toLocalDate(rs.getDate(3)),
+                        toLocalDate(rs.getDate(4)), rs.getString(5), rs.getDouble(6)));
             }
 
-            // Close the statement, the result set will be closed in the process.
-            stmt.close();
+            // Close the result set, the statement stays cached for reuse.
+            rs.close();
+            fetchSizes.record("getInvoices", fetchSize, invoices.size());
         } catch (SQLException ex) {
+            metrics.error("getInvoices");
             System.out.println("Failed to get invoice information " + ex.getMessage());
+        } finally {
+            releaseConnection(con);
+            metrics.record("getInvoices", start, invoices.size(), pid);
         }
-        return tuples;
+        return invoices;
     }
 
     /**
@@ -678,50 +2025,57 @@ public class HealthDB {
      * @return the single tuple for the patient with the given PID
      */
     public ArrayList<String> findPatient(String PID) {
+        long start = metrics.start();
+        ArrayList<String> cached = patientCache.getPatient(PID.trim());
+        if (cached != null) {
+            metrics.record("findPatient", start, 1, PID);
+            return cached;
+        }
+        long loadStartedAt = patientCache.startLoad();
         ArrayList<String> tuple = new ArrayList<String>();
+        Connection con = null;
         try {
-            String query = "select p.firstName, p.lastName, p.patientID, p.street," +
-                    " pc.city, pc.province, pc.postalcode, pc.country, " +
-                    "p.homePhone, p.mobilePhone from patient p left join postalcode" +
-                    " pc on p.postalcode = pc.postalcode where p.patientID = " + PID;
-            // Create a statement
-            Statement stmt = con.createStatement();
+            con = getConnection();
+            String query = "select p.firstName, p.lastName, p.patientID, p.street, p.postalcode," +
+                    " p.homePhone, p.mobilePhone from patient p where p.patientID = ?";
+            PreparedStatement ps = prepare(con, query, PID);
             // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
-                tuple.add(rs.getString("firstName"));
-                tuple.add(rs.getString("lastName"));
-                tuple.add(rs.getString("patientID"));
-                if (rs.getString("street") == null) {
+                String postalCode = rs.getString(5);
+                ReferenceCache.Place place = references().getPlace(con, postalCode);
+                tuple.add(rs.getString(1));
+                tuple.add(rs.getString(2));
+                tuple.add(rs.getString(3));
+                tuple.add(emptyIfNull(rs.getString(4)));
+                if (place == null || place.getCity() == null) {
                     tuple.add("");
                 } else {
-                    tuple.add(rs.getString("street"));
+                    tuple.add(place.getCity());
                 }
-                if (rs.getString("city") == null) {
+                if (place == null || place.getProvince() == null) {
                     tuple.add("");
                 } else {
-                    tuple.add(rs.getString("city"));
+                    tuple.add(place.getProvince());
                 }
-                if (rs.getString("province") == null) {
+                if (place == null) {
                     tuple.add("");
                 } else {
-                    tuple.add(rs.getString("province"));
+                    tuple.add(postalCode);
                 }
-                if (rs.getString("postalcode") == null) {
-                    tuple.add("");
-                } else {
-                    tuple.add(rs.getString("postalcode"));
-                }
-                tuple.add(rs.getString("country"));
-                tuple.add(rs.getString("homePhone"));
-                tuple.add(rs.getString("mobilePhone"));
+                tuple.add(place == null ? null : place.getCountry());
+                tuple.add(rs.getString(6));
+                tuple.add(rs.getString(7));
             }
-            stmt.close();
-
+            rs.close();
+            patientCache.putPatient(PID.trim(), tuple, loadStartedAt);
         } catch (SQLException ex) {
+            metrics.error("findPatient");
             System.out.println("Failed to get patient personal info. " + ex.getMessage());
+        } finally {
+            releaseConnection(con);
+            metrics.record("findPatient", start, tuple.isEmpty() ? 0 : 1, PID);
         }
         return tuple;
     }
@@ -731,48 +2085,33 @@ public class HealthDB {
      * Finds prescription tuple for given prescriptionID
      *
      * @param prescriptionID: ID of the prescription
-     * @return tuple for given prescriptionID
-     * string if no prescription is found.
+     * @return the prescription with the given prescriptionID, null if no
+     * prescription is found.
      */
-    public ArrayList<String> findPrescription(String prescriptionID) {
-        ArrayList<String> tuple = new ArrayList<>();
+    public Prescription findPrescription(String prescriptionID) {
+        long start = metrics.start();
+        Prescription prescription = null;
+        Connection con = null;
         try {
-            String query = "select pr.prescriptionID, pr.prescribedDate, m.medication, pr.dosage, "
-                    + "m.dosageMeasure, pr.quantity, pr.filledDate from prescription pr, medication m "
-                    + "where pr.medication = m.medication and pr.prescriptionID = " + prescriptionID;
-            Statement stmt = con.createStatement();
+            con = getConnection();
+            String query = "select pr.prescriptionID, pr.prescribedDate, pr.medication, pr.dosage, "
+                    + "pr.quantity, pr.filledDate from prescription pr where pr.prescriptionID = ?";
+            PreparedStatement ps = prepare(con, query, prescriptionID);
             // Execute each query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
-
-            while (rs.next()) {
-                tuple.add(rs.getString("prescriptionID"));
-                if (rs.getDate("prescribedDate") != null) {
-                    tuple.add(format.format(rs.getDate("prescribedDate")));
-                } else {
-                    tuple.add("");
-                }
-                tuple.add(rs.getString("medication"));
-                tuple.add(rs.getString("dosage"));
-                tuple.add(rs.getString("dosageMeasure"));
-                tuple.add(rs.getString("quantity"));
-                if (rs.getDate("filledDate") != null) {
-                    tuple.add(format.format(rs.getDate("filledDate")));
-                } else {
-                    tuple.add("");
-                }
-                if (rs.getString("filledDate") == null) {
-                    tuple.add("No");
-                } else {
-                    tuple.add("Yes");
-                }
+            ResultSet rs = ps.executeQuery();
 
+            if (rs.next()) {
+                prescription = readPrescription(con, rs);
             }
-            stmt.close();
+            rs.close();
         } catch (SQLException ex) {
+            metrics.error("findPrescription");
             System.out.println("Error finding prescription. " + ex.getMessage());
+        } finally {
+            releaseConnection(con);
+            metrics.record("findPrescription", start, prescription == null ? 0 : 1);
         }
-        return tuple;
+        return prescription;
     }
 
     /**
@@ -783,21 +2122,8 @@ public class HealthDB {
      * string if no prescription is found.
      */
     public String findPIDfromPrescription(String prescriptionID) {
-        try {
-            String query = "select patientID from Prescription where prescriptionID = " + prescriptionID;
-            Statement stmt = con.createStatement();
-            // Execute each query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
-
-            if (rs.next()) {
-                return rs.getString("patientID");
-            }
-
-        } catch (SQLException ex) {
-            System.out.println("Error finding PID from prescription. " + ex.getMessage());
-        }
-        return "";
+        return findPID("findPIDfromPrescription", PatientCache.PRESCRIPTION, "select patientID from Prescription where prescriptionID = ?",
+                prescriptionID, "Error finding PID from prescription. ");
     }
 
     /**
@@ -808,21 +2134,8 @@ public class HealthDB {
      * string if no invoice is found.
      */
     public String findPIDfromInvoice(String invoiceID) {
-        try {
-            String query = "select patientID from Invoice where invoiceID = " + invoiceID;
-            Statement stmt = con.createStatement();
-            // Execute each query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
-
-            if (rs.next()) {
-                return rs.getString("patientID");
-            }
-
-        } catch (SQLException ex) {
-            System.out.println("Error getting PID from invoice. " + ex.getMessage());
-        }
-        return "";
+        return findPID("findPIDfromInvoice", PatientCache.INVOICE, "select patientID from Invoice where invoiceID = ?", invoiceID,
+                "Error getting PID from invoice. ");
     }
 
     /**
@@ -833,62 +2146,80 @@ public class HealthDB {
      * returns the empty string.
      */
     public String findPIDfromTest(String testID) {
+        return findPID("findPIDfromTest", PatientCache.TEST, "select patientID from LabTest where testID = ?", testID,
+                "Error finding PID from test. ");
+    }
+
+    /**
+     * Runs one of the findPIDfromX lookups, unless the ID is in the patient cache
+     *
+     * @param operation - name of the public method, for the metrics
+     * @param kind      - PatientCache.PRESCRIPTION, TEST or INVOICE
+     * @param query     - query selecting patientID by a single bound ID
+     * @param id        - the ID to look up
+     * @param errorMsg  - message printed on failure
+     * @return the PID, or the empty string if nothing is found
+     */
+    private String findPID(String operation, char kind, String query, String id, String errorMsg) {
+        long start = metrics.start();
+        String cached = patientCache.getPID(kind, id.trim());
+        if (cached != null) {
+            metrics.record(operation, start, 1, cached);
+            return cached;
+        }
+        long loadStartedAt = patientCache.startLoad();
+        String pid = "";
+        Connection con = null;
         try {
-            String query = "select patientID from LabTest where testID = " + testID;
-            Statement stmt = con.createStatement();
+            con = getConnection();
+            PreparedStatement ps = prepare(con, query, id);
             // Execute each query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            ResultSet rs = ps.executeQuery();
 
             if (rs.next()) {
-                return rs.getString("patientID");
+                pid = rs.getString(1);
             }
-
+            rs.close();
+            patientCache.putPID(kind, id.trim(), pid, loadStartedAt);
         } catch (SQLException ex) {
-            System.out.println("Error finding PID from test. " + ex.getMessage());
+            metrics.error(operation);
+            System.out.println(errorMsg + ex.getMessage());
+        } finally {
+            releaseConnection(con);
+            metrics.record(operation, start, pid.isEmpty() ? 0 : 1, pid.isEmpty() ? null : pid);
         }
-        return "";
+        return pid;
     }
 
     /**
      * Finds test tuple for given testID
      *
      * @param testID: ID of the test to be found
-     * @return the tuple of the test with the ID provided if no tuple is found
-     * returns the empty string.
+     * @return the test with the ID provided, null if no test is found.
      */
-    public ArrayList<String> findTest(String testID) {
-        ArrayList<String> test = new ArrayList<>();
+    public LabTest findTest(String testID) {
+        long start = metrics.start();
+        LabTest test = null;
+        Connection con = null;
         try {
+            con = getConnection();
             String query = "select testID, orderedDate, performedDate " +
-                    "from labtest where testID=" + testID;
-
-            // Create a statement
-            Statement stmt = con.createStatement();
+                    "from labtest where testID = ?";
+            PreparedStatement ps = prepare(con, query, testID);
             // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            ResultSet rs = ps.executeQuery();
 
-            while (rs.next()) {
-                test.add(rs.getString("testID"));
-                if (rs.getDate("orderedDate") != null) {
-                    test.add(format.format(rs.getDate("orderedDate")));
-                }
-                if (rs.getDate("performedDate") != null) {
-                    test.add(format.format(rs.getDate("performedDate")));
-                } else {
-                    test.add("");
-                }
-                if (rs.getString("performedDate") == null) {
-                    test.add("No");
-                } else {
-                    test.add("Yes");
-                }
+            if (rs.next()) {
+                test = new LabTest(rs.getLong(1), toLocalDate(rs.getDate(2)), toLocalDate(rs.getDate(3)));
             }
-            // Close the statement, the result set will be closed in the process.
-            stmt.close();
+            // Close the result set, the statement stays cached for reuse.
+            rs.close();
         } catch (SQLException ex) {
+            metrics.error("findTest");
             System.out.println("Failed to get test summary. " + ex.getMessage());
+        } finally {
+            releaseConnection(con);
+            metrics.record("findTest", start, test == null ? 0 : 1);
         }
         return test;
     }
@@ -901,96 +2232,33 @@ public class HealthDB {
      * returns the empty string.
      */
     public ArrayList<String> findTestValues(String testID) {
+        long start = metrics.start();
         ArrayList<String> test = new ArrayList<>();
+        Connection con = null;
         try {
+            con = getConnection();
             String query = "select cholesterol, HDLcholesterol, LDLcholesterol, triglycerides," +
                     "whiteBloodCellCount, redBloodCellCount, hematocrit, plateletCount," +
                     "NRBCPercent, NRBCAbsolute, sodium, glucose, phosphorus, labTechHID " +
-                    "from labtest where testID=" + testID;
-
-            // Create a statement
-            Statement stmt = con.createStatement();
+                    "from labtest where testID = ?";
+            PreparedStatement ps = prepare(con, query, testID);
             // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            ResultSet rs = ps.executeQuery();
 
             if (rs.next()) {
-                if (rs.getString("cholesterol") != null) {
-                    test.add(rs.getString("cholesterol") + "mg/dL");
-                } else {
-                    test.add("");
-                }
-                if (rs.getString("HDLcholesterol") != null) {
-                    test.add(rs.getString("HDLcholesterol") + "mg/dL");
-                } else {
-                    test.add("");
-                }
-                if (rs.getString("LDLcholesterol") != null) {
-                    test.add(rs.getString("LDLcholesterol") + "mg/dL");
-                } else {
-                    test.add("");
-                }
-                if (rs.getString("triglycerides") != null) {
-                    test.add(rs.getString("triglycerides") + "mg/dL");
-                } else {
-                    test.add("");
-                }
-                if (rs.getString("whiteBloodCellCount") != null) {
-                    test.add(rs.getString("whiteBloodCellCount") + "/mcL");
-                } else {
-                    test.add("");
-                }
-                if (rs.getString("redBloodCellCount") != null) {
-                    test.add(rs.getString("redBloodCellCount") + "/mcL");
-                } else {
-                    test.add("");
-                }
-                if (rs.getString("hematocrit") != null) {
-                    test.add(rs.getString("hematocrit") + "%");
-                } else {
-                    test.add("");
-                }
-                if (rs.getString("plateletCount") != null) {
-                    test.add(rs.getString("plateletCount") + "/mcL");
-                } else {
-                    test.add("");
-                }
-                if (rs.getString("NRBCPercent") != null) {
-                    test.add(rs.getString("NRBCPercent") + "%");
-                } else {
-                    test.add("");
-                }
-                if (rs.getString("NRBCAbsolute") != null) {
-                    test.add(rs.getString("NRBCAbsolute"));
-                } else {
-                    test.add("");
-                }
-                if (rs.getString("sodium") != null) {
-                    test.add(rs.getString("sodium") + " mEq/dL");
-                } else {
-                    test.add("");
-                }
-                if (rs.getString("glucose") != null) {
-                    test.add(rs.getString("glucose") + " mg/dL");
-                } else {
-                    test.add("");
-                }
-                if (rs.getString("phosphorus") != null) {
-                    test.add(rs.getString("phosphorus") + " mg/dL");
-                } else {
-                    test.add("");
-                }
-                if (rs.getString("labTechHID") != null) {
-                    test.add(rs.getString("labTechHID"));
-                } else {
-                    test.add("");
+                for (int i = 0; i < TEST_VALUE_UNITS.length; i++) {
+                    String value = rs.getString(i + 1);
+                    test.add(value == null ? "" : value + TEST_VALUE_UNITS[i]);
                 }
-
             }
-            // Close the statement, the result set will be closed in the process.
-            stmt.close();
+            // Close the result set, the statement stays cached for reuse.
+            rs.close();
         } catch (SQLException ex) {
+            metrics.error("findTestValues");
             System.out.println("Failed to get test summary. " + ex.getMessage());
+        } finally {
+            releaseConnection(con);
+            metrics.record("findTestValues", start, test.isEmpty() ? 0 : 1);
         }
         return test;
     }
@@ -1006,73 +2274,31 @@ public class HealthDB {
      * returns the empty string.
      */
     public ArrayList<String> findInvoice(String invoiceID) {
+        long start = metrics.start();
         ArrayList<String> tuple = new ArrayList<String>();
+        Connection con = null;
         try {
+            con = getConnection();
             String query = "select patientID, invoiceItem, dueDate, paymentStatus, paymentDate, paymentMethod, amountOwing, paymentID, planID, creationDate"
-                    + " from Invoice where invoiceID = " + invoiceID;
-            // Create a statement
-            Statement stmt = con.createStatement();
+                    + " from Invoice where invoiceID = ?";
+            PreparedStatement ps = prepare(con, query, invoiceID);
             // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            ResultSet rs = ps.executeQuery();
 
             if (rs.next()) {
-                if (rs.getString("patientID") != null) {
-                    tuple.add(rs.getString("patientID"));
-                } else {
-                    tuple.add("");
-                }
-                if (rs.getString("invoiceItem") != null) {
-                    tuple.add(rs.getString("invoiceItem"));
-                } else {
-                    tuple.add("");
-                }
-                if (rs.getString("dueDate") != null) {
-                    tuple.add(rs.getString("dueDate"));
-                } else {
-                    tuple.add("");
-                }
-                if (rs.getString("paymentStatus") != null) {
-                    tuple.add(rs.getString("paymentStatus"));
-                } else {
-                    tuple.add("");
-                }
-                if (rs.getString("paymentDate") != null) {
-                    tuple.add(rs.getString("paymentDate"));
-                } else {
-                    tuple.add("");
-                }
-                if (rs.getString("paymentMethod") != null) {
-                    tuple.add(rs.getString("paymentMethod"));
-                } else {
-                    tuple.add("");
-                }
-                // amountOwing, paymentID , planID, creationDate
-                if (rs.getString("amountOwing") != null) {
-                    tuple.add(rs.getString("amountOwing"));
-                } else {
-                    tuple.add("");
-                }
-                if (rs.getString("paymentID") != null) {
-                    tuple.add(rs.getString("paymentID"));
-                } else {
-                    tuple.add("");
-                }
-                if (rs.getString("planID") != null) {
-                    tuple.add(rs.getString("planID"));
-                } else {
-                    tuple.add("");
-                }
-                if (rs.getString("creationDate") != null) {
-                    tuple.add(rs.getString("creationDate"));
-                } else {
-                    tuple.add("");
+                // The 10 columns in query order, empty for null
+                for (int i = 1; i <= 10; i++) {
+                    tuple.add(emptyIfNull(rs.getString(i)));
                 }
             }
-            // Close the statement, the result set will be closed in the process.
-            stmt.close();
+            // Close the result set, the statement stays cached for reuse.
+            rs.close();
         } catch (SQLException ex) {
+            metrics.error("findInvoice");
             System.out.println("Failed to get invoice summary. " + ex.getMessage());
+        } finally {
+            releaseConnection(con);
+            metrics.record("findInvoice", start, tuple.isEmpty() ? 0 : 1);
         }
         return tuple;
 
@@ -1086,25 +2312,30 @@ public class HealthDB {
      * @return the single tuple for the plan with the given planID
      */
     public ArrayList<String> findPlan(String planID) {
+        long start = metrics.start();
         ArrayList<String> tuple = new ArrayList<String>();
+        Connection con = null;
         try {
-            String query = "select policyType, startDate, endDate, patientID from ProvincialHealthPlan where planID = " + planID;
-            // Create a statement
-            Statement stmt = con.createStatement();
+            con = getConnection();
+            String query = "select policyType, startDate, endDate, patientID from ProvincialHealthPlan where planID = ?";
+            PreparedStatement ps = prepare(con, query, planID);
             // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
-                tuple.add(rs.getString("policyType"));
-                tuple.add(rs.getString("startDate"));
-                tuple.add(rs.getString("endDate"));
-                tuple.add(rs.getString("patientID"));
+                tuple.add(rs.getString(1));
+                tuple.add(rs.getString(2));
+                tuple.add(rs.getString(3));
+                tuple.add(rs.getString(4));
             }
-            stmt.close();
+            rs.close();
 
         } catch (SQLException ex) {
+            metrics.error("findPlan");
             System.out.println("Failed to get plan info. " + ex.getMessage());
+        } finally {
+            releaseConnection(con);
+            metrics.record("findPlan", start, tuple.isEmpty() ? 0 : 1);
         }
         return tuple;
     }
@@ -1120,18 +2351,24 @@ public class HealthDB {
      * @param prescriptionID: the ID of the prescription being filled
      */
     public boolean updatePrescription(String hid, String prescriptionID) {
+        long start = metrics.start();
         boolean success = false;
+        Connection con = null;
         try {
-            String prescription = "update prescription set pharmHID=" + hid +
-                    ", filledDate=" + today() + " where prescriptionID="
-                    + prescriptionID;
+            con = getConnection();
+            String prescription = "update prescription set pharmHID = ?, filledDate = ? where prescriptionID = ?";
 
-            Statement stmt = con.createStatement();
-            stmt.executeUpdate(prescription);
+            PreparedStatement ps = prepare(con, prescription, hid, today(), prescriptionID);
+            ps.executeUpdate();
             success = true;
 
         } catch (SQLException ex) {
+            metrics.error("updatePrescription");
             System.out.println("Error updating prescription. " + ex.getMessage());
+            failed(ex);
+        } finally {
+            releaseConnection(con);
+            metrics.record("updatePrescription", start, 0);
         }
         return success;
     }
@@ -1139,6 +2376,9 @@ public class HealthDB {
     /**
      * Updates an existing test.
      * Returns true if update/creation was sucessful.
+     * <p>
+     * Empty values are bound as null and keep the current column value, so the
+     * same statement text is used no matter which values were filled in.
      *
      * @param testID:     ID of the test
      * @param labTechHID: HID of the lab tech filling in the test info.
@@ -1149,63 +2389,48 @@ public class HealthDB {
                               String redBloodCellCount, String hematocrit, String plateletCount,
                               String NRBCPercent, String NRBCAbsolute, String sodium, String glucose,
                               String phosphorus, String labTechHID) {
+        long start = metrics.start();
         boolean success = false;
+        Connection con = null;
         try {
-            StringBuilder test = new StringBuilder();
-            test.append("update labtest set ");
-            if (!cholesterol.isEmpty()) {
-                test.append("cholesterol=" + cholesterol + ", ");
-            }
-            if (!HDLcholesterol.isEmpty()) {
-                test.append("HDLcholesterol=" + HDLcholesterol + ", ");
-            }
-            if (!LDLcholesterol.isEmpty()) {
-                test.append("LDLcholesterol=" + LDLcholesterol + ", ");
-            }
-            if (!triglycerides.isEmpty()) {
-                test.append("triglycerides=" + triglycerides + ", ");
-            }
-            if (!whiteBloodCellCount.isEmpty()) {
-                test.append("whiteBloodCellCount=" + whiteBloodCellCount + ", ");
-            }
-            if (!redBloodCellCount.isEmpty()) {
-                test.append("redBloodCellCount=" + redBloodCellCount + ", ");
-            }
-            if (!hematocrit.isEmpty()) {
-                test.append("hematocrit=" + hematocrit + ", ");
-            }
-            if (!plateletCount.isEmpty()) {
-                test.append("plateletCount=" + plateletCount + ", ");
-            }
-            if (!NRBCPercent.isEmpty()) {
-                test.append("NRBCpercent=" + NRBCPercent + ", ");
-            }
-            if (!NRBCAbsolute.isEmpty()) {
-                test.append("NRBCabsolute=" + NRBCAbsolute + ", ");
-            }
-            if (!sodium.isEmpty()) {
-                test.append("sodium=" + sodium + ", ");
-            }
-            if (!glucose.isEmpty()) {
-                test.append("glucose=" + glucose + ", ");
-            }
-            if (!phosphorus.isEmpty()) {
-                test.append("phosphorus=" + phosphorus + ", ");
-            }
-            test.append("labTechHID=" + labTechHID + ", performedDate=" + today() + " where testID=" + testID);
-
-            Statement stmt = con.createStatement();
-            stmt.executeUpdate(test.toString());
+            con = getConnection();
+            String test = "update labtest set cholesterol = coalesce(?, cholesterol),"
+                    + " HDLcholesterol = coalesce(?, HDLcholesterol),"
+                    + " LDLcholesterol = coalesce(?, LDLcholesterol),"
+                    + " triglycerides = coalesce(?, triglycerides),"
+                    + " whiteBloodCellCount = coalesce(?, whiteBloodCellCount),"
+                    + " redBloodCellCount = coalesce(?, redBloodCellCount),"
+                    + " hematocrit = coalesce(?, hematocrit),"
+                    + " plateletCount = coalesce(?, plateletCount),"
+                    + " NRBCpercent = coalesce(?, NRBCpercent),"
+                    + " NRBCabsolute = coalesce(?, NRBCabsolute),"
+                    + " sodium = coalesce(?, sodium),"
+                    + " glucose = coalesce(?, glucose),"
+                    + " phosphorus = coalesce(?, phosphorus),"
+                    + " labTechHID = ?, performedDate = ? where testID = ?";
+
+            PreparedStatement ps = prepare(con, test, cholesterol, HDLcholesterol, LDLcholesterol,
+                    triglycerides, whiteBloodCellCount, redBloodCellCount, hematocrit, plateletCount,
+                    NRBCPercent, NRBCAbsolute, sodium, glucose, phosphorus, labTechHID, today(), testID);
+            ps.executeUpdate();
             success = true;
 
         } catch (SQLException ex) {
+            metrics.error("updateTest");
             System.out.println("Error updating test. " + ex.getMessage());
+            failed(ex);
+        } finally {
+            releaseConnection(con);
+            metrics.record("updateTest", start, 0);
         }
         return success;
     }
 
     /**
      * Updates an existing invoice in the database.
+     * <p>
+     * Empty values are bound as null and keep the current column value, so the
+     * same statement text is used no matter which values were filled in.
      *
      * @param invoiceID:     The ID of the invoice to be updated.
      * @param dueDate:       Date the invoice is due.
@@ -1218,52 +2443,109 @@ public class HealthDB {
                                  String paymentStatus, String paymentDate, String paymentMethod,
                                  String amountOwing) {
         boolean success = false;
-        // If there is nothing to update, return true. Otherwise, causes sql error.
+        // If there is nothing to update, return true.
         if (dueDate.isEmpty() && invoiceItem.isEmpty() && paymentStatus.isEmpty() &&
                 paymentDate.isEmpty() && paymentMethod.isEmpty() && amountOwing.isEmpty()) {
             return true;
         }
+        long start = metrics.start();
+        Connection con = null;
         try {
-            StringBuilder invoice = new StringBuilder();
-            invoice.append("update invoice set ");
-            if (!dueDate.isEmpty()) {
-                invoice.append("dueDate= to_date('" + dueDate + "', 'yyyy-MM-dd'), ");
-            }
-            if (!invoiceItem.isEmpty()) {
-                invoice.append("invoiceItem='" + invoiceItem + "', ");
-            }
-            if (!paymentStatus.isEmpty()) {
-                invoice.append("paymentStatus='" + paymentStatus + "', ");
-            }
-            if (!paymentMethod.isEmpty()) {
-                invoice.append("paymentMethod='" + paymentMethod + "', ");
-                if (paymentMethod.equals("Credit\\Debit")) {
-                    invoice.append("paymentID= case when paymentID is null then " + paymentIDCounter.toString() + " else paymentID end, ");
-                    paymentIDCounter++;
-                }
-                else if (paymentMethod.equals("Cash") || paymentMethod.equals("Cheque")) {
-                    invoice.append("paymentID='', ");
-                }
-                System.out.println(invoice);
-            }
-            if (!amountOwing.isEmpty()) {
-                invoice.append("amountOwing=" + amountOwing + ", ");
-            }
-            if (!paymentDate.isEmpty()) {
-            	invoice.append("paymentDate=trunc(to_timestamp('" + paymentDate + "','yyyy-mm-dd HH24:MI:SS.FF1')), ");
+            con = getConnection();
+            // The reads and the update are one transaction, so no other update can
+            // change the invoice in between and leave the balance off
+            con.setAutoCommit(false);
+            // Credit\Debit payments get a payment ID if they don't have one yet,
+            // cash and cheque payments never have one.
+            Long newPaymentID = null;
+            String clearPaymentID = "N";
+            if (paymentMethod.equals("Credit\\Debit")) {
+                newPaymentID = paymentIDs.next(con);
+            } else if (paymentMethod.equals("Cash") || paymentMethod.equals("Cheque")) {
+                clearPaymentID = "Y";
             }
-            invoice.delete(invoice.length() - 2, invoice.length() - 1);
-            invoice.append("where invoiceID=" + invoiceID);
-            Statement stmt = con.createStatement();
-            stmt.executeUpdate(invoice.toString());
-            success = true;
 
+            String invoice = "update invoice set dueDate = coalesce(to_date(?, 'yyyy-MM-dd'), dueDate),"
+                    + " invoiceItem = coalesce(?, invoiceItem),"
+                    + " paymentStatus = coalesce(?, paymentStatus),"
+                    + " paymentMethod = coalesce(?, paymentMethod),"
+                    + " paymentID = case when ? = 'Y' then null else coalesce(paymentID, ?) end,"
+                    + " amountOwing = coalesce(?, amountOwing),"
+                    + " paymentDate = coalesce(trunc(to_timestamp(?, 'yyyy-mm-dd HH24:MI:SS.FF1')), paymentDate)"
+                    + " where invoiceID = ?";
+            // The old and new unpaid amount keep the patient's running balance current
+            final InvoiceBalance before = readInvoiceBalance(con, invoiceID, true);
+            PreparedStatement ps = prepare(con, invoice, dueDate, invoiceItem, paymentStatus, paymentMethod,
+                    clearPaymentID, newPaymentID, amountOwing, paymentDate, invoiceID);
+            ps.executeUpdate();
+            final InvoiceBalance after = readInvoiceBalance(con, invoiceID, false);
+            commit(con);
+            success = true;
+            afterCommit(new Runnable() {
+                @Override
+                public void run() {
+                    if (before != null && after != null) {
+                        if (before.unpaid) {
+                            balances.add(before.pid, before.dueDate, -before.cents);
+                        }
+                        if (after.unpaid) {
+                            balances.add(after.pid, after.dueDate, after.cents);
+                        }
+                    } else if (after != null) {
+                        balances.invalidate(after.pid);
+                    }
+                }
+            });
         } catch (SQLException ex) {
+            metrics.error("updateInvoice");
             System.out.println("Error updating invoice. " + ex.getMessage());
+            failed(ex);
+            rollback(con);
+        } finally {
+            endTransaction(con);
+            metrics.record("updateInvoice", start, 0);
         }
         return success;
     }
 
+    /**
+     * Reads the columns of an invoice that make up the patient's balance
+     *
+     * @param con       - connection the caller already borrowed from the pool
+     * @param invoiceID - ID of the invoice
+     * @param lock      - true to lock the invoice until the transaction ends
+     * @return the invoice's balance columns, or null if there is no such invoice
+     */
+    private InvoiceBalance readInvoiceBalance(Connection con, String invoiceID, boolean lock) throws SQLException {
+        PreparedStatement ps = prepare(con, "select patientID, trunc(dueDate) as dueDate, paymentStatus, "
+                + "amountOwing from Invoice where invoiceID = ?" + (lock ? " for update" : ""), invoiceID);
+        ResultSet rs = ps.executeQuery();
+        InvoiceBalance balance = null;
+        if (rs.next()) {
+            balance = new InvoiceBalance(rs.getString(1), toLocalDate(rs.getDate(2)), "Unpaid".equals(rs.getString(3)),
+                    toCents(rs.getBigDecimal(4)));
+        }
+        rs.close();
+        return balance;
+    }
+
+    /**
+     * The columns of one invoice that make up the patient's balance
+     */
+    private static final class InvoiceBalance {
+        final String pid;
+        final LocalDate dueDate;
+        final boolean unpaid;
+        final long cents;
+
+        InvoiceBalance(String pid, LocalDate dueDate, boolean unpaid, long cents) {
+            this.pid = pid;
+            this.dueDate = dueDate;
+            this.unpaid = unpaid;
+            this.cents = cents;
+        }
+    }
+
     /**
      * Get monthly summary for average unpaid balance owing per invoice item
      * <p>
@@ -1272,33 +2554,40 @@ public class HealthDB {
      * @return invoices grouped by invoice item, month, average unpaid balance owing
      */
     public ArrayList<ArrayList<String>> getOwingInvoicesMonthlySummary(String pid) {
+        long start = metrics.start();
         ArrayList<ArrayList<String>> tuples = new ArrayList<ArrayList<String>>();
+        Connection con = null;
         try {
+            con = getConnection();
             // basic query just to test if hooked up properly with ui
 
             String query = "select invoiceItem, to_char(dueDate, 'Month, YYYY') as monthYear, avg(balanceSum) as balanceSumAvg from( "
 
                     + "select invoiceItem, dueDate, paymentStatus, sum(amountOwing) as balanceSum "
-                    + "from invoice where patientID = " + pid + " group by invoiceItem, dueDate, paymentStatus) "
+                    + "from invoice where patientID = ? group by invoiceItem, dueDate, paymentStatus) "
                     + "where paymentStatus = 'Unpaid' group by invoiceItem, to_char(dueDate, 'Month, YYYY') order by monthYear, invoiceItem";
 
-            // Create a statement
-            Statement stmt = con.createStatement();
+            PreparedStatement ps = prepare(con, query, pid);
             // Execute the query.
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            int fetchSize = fetchSizes.apply(ps, "getOwingInvoicesMonthlySummary");
+            ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
                 ArrayList<String> tuple = new ArrayList<String>();
                 // default results to test for now
-                tuple.add(rs.getString("invoiceItem"));
-                tuple.add(rs.getString("monthYear"));
-                tuple.add(rs.getString("balanceSumAvg"));
+                tuple.add(rs.getString(1));
+                tuple.add(rs.getString(2));
+                tuple.add(rs.getString(3));
                 tuples.add(tuple);
             }
-            stmt.close();
+            rs.close();
+            fetchSizes.record("getOwingInvoicesMonthlySummary", fetchSize, tuples.size());
         } catch (SQLException ex) {
+            metrics.error("getOwingInvoicesMonthlySummary");
             System.out.println("Error getting owing invoices monthly summary " + ex.getMessage());
+        } finally {
+            releaseConnection(con);
+            metrics.record("getOwingInvoicesMonthlySummary", start, tuples.size(), pid);
         }
         return tuples;
     }
@@ -1308,29 +2597,230 @@ public class HealthDB {
      *
      * @param patientID
      * @param medication
-     * @return true if the medication would cause an interction, false
-     * otherwise.
+     * @return the interaction set the medication would complete, or null if there
+     * is no interaction
      */
-    private boolean checkInteraction(String patientID, String medication) {
-        boolean interaction = false;
+    public List<String> findInteraction(String patientID, String medication) {
+        long start = metrics.start();
+        Connection con = null;
         try {
-            String query = "select p.patientID from patient p where not exists " +
-                    "(select * from medInteraction med where not exists " +
-                    "(select * from prescription pr where p.patientID=" +
-                    "pr.patientID and pr.medication=med.medication and p.patientID=" + patientID + "))";
-
-            Statement stmt = con.createStatement();
-            ResultSet rs = stmt.executeQuery(query);
-            if (rs.next() && !rs.getString("patientID").isEmpty()) {
-                String update = "delete from Prescription where patientID =" + patientID + " and medication='" + medication + "'";
-                stmt.executeUpdate(update);
-                return true;
+            con = getConnection();
+            return findInteraction(con, patientID, medication);
+        } catch (SQLException ex) {
+            metrics.error("findInteraction");
+            System.out.println("Error checking for medication interaction. " + ex.getMessage());
+            return null;
+        } finally {
+            releaseConnection(con);
+            metrics.record("findInteraction", start, 0, patientID);
+        }
+    }
+
+    /**
+     * Checks the patient's current medications against the interaction sets that
+     * contain the new medication
+     *
+     * @param con - connection the caller already borrowed from the pool
+     * @param patientID
+     * @param medication
+     * @return the interaction set the medication would complete, or null if there
+     * is no interaction
+     */
+    private List<String> findInteraction(Connection con, String patientID, String medication) throws SQLException {
+        MedicationInteractions engine = getInteractions(con);
+        if (engine.getSetCount() == 0) {
+            return null;
+        }
+        PreparedStatement ps = prepare(con, "select distinct medication from prescription where patientID = ?",
+                patientID);
+        ResultSet rs = ps.executeQuery();
+        ArrayList<String> current = new ArrayList<String>();
+        while (rs.next()) {
+            current.add(rs.getString(1));
+        }
+        rs.close();
+
+        BitSet set = engine.findInteraction(current, medication);
+        return set == null ? null : engine.describe(set);
+    }
+
+    /**
+     * Returns the interaction engine, loading the interaction sets on first use
+     *
+     * @param con - connection the caller already borrowed from the pool
+     * @return the interaction engine
+     */
+    private MedicationInteractions getInteractions(Connection con) throws SQLException {
+        MedicationInteractions engine = interactions;
+        if (engine != null) {
+            return engine;
+        }
+        synchronized (this) {
+            if (interactions == null) {
+                interactions = loadInteractions(con);
             }
+            return interactions;
+        }
+    }
 
+    /**
+     * Reads the interaction sets from the InteractionSet table. Schemas created
+     * before the table was added only have the medInteraction view, which is read
+     * as a single set.
+     */
+    private MedicationInteractions loadInteractions(Connection con) throws SQLException {
+        LinkedHashMap<Integer, ArrayList<String>> sets = new LinkedHashMap<Integer, ArrayList<String>>();
+        String query = "select setID, medication from InteractionSet order by setID";
+        PreparedStatement ps;
+        try {
+            ps = prepare(con, query);
         } catch (SQLException ex) {
-            System.out.println("Error checking for medication interaction. " + ex.getMessage());
+            System.out.println("InteractionSet table not found, using medInteraction. Run setupdb.sql to create it.");
+            query = "select 1 as setID, medication from medInteraction";
+            ps = prepare(con, query);
+        }
+        ResultSet rs = ps.executeQuery();
+        while (rs.next()) {
+            int setID = rs.getInt(1);
+            ArrayList<String> set = sets.get(setID);
+            if (set == null) {
+                set = new ArrayList<String>();
+                sets.put(setID, set);
+            }
+            set.add(rs.getString(2));
+        }
+        rs.close();
+        return new MedicationInteractions(sets.values());
+    }
+
+    /**
+     * Drops the loaded interaction sets so they are read again on the next
+     * prescription, e.g. after the InteractionSet table was changed
+     */
+    public void reloadInteractions() {
+        interactions = null;
+    }
+
+    /**
+     * Prepares (or reuses) a cached statement on a borrowed connection and binds
+     * the given parameters in order. Empty strings are bound as null, which is how
+     * Oracle treats '' anyway. The statement must not be closed by the caller.
+     *
+     * @param con    - connection obtained from getConnection
+     * @param sql    - SQL text with ? placeholders
+     * @param params - values for the placeholders
+     * @return the bound statement
+     * @throws SQLException if the statement cannot be prepared or bound
+     */
+    private PreparedStatement prepare(Connection con, String sql, Object... params) throws SQLException {
+        PreparedStatement ps = pool.prepareStatement(con, sql);
+        for (int i = 0; i < params.length; i++) {
+            Object value = params[i];
+            if (value == null || "".equals(value)) {
+                ps.setNull(i + 1, Types.VARCHAR);
+            } else if (value instanceof Integer) {
+                ps.setInt(i + 1, (Integer) value);
+            } else if (value instanceof Long) {
+                ps.setLong(i + 1, (Long) value);
+            } else if (value instanceof Double) {
+                ps.setDouble(i + 1, (Double) value);
+            } else if (value instanceof java.sql.Date) {
+                ps.setDate(i + 1, (java.sql.Date) value);
+            } else {
+                ps.setString(i + 1, value.toString());
+            }
         }
-        return interaction;
+        return ps;
+    }
+
+    /**
+     * Escapes the LIKE wildcards in user input so they are matched literally
+     *
+     * @param s - user input
+     * @return input with \, % and _ escaped using \ as the escape character
+     */
+    private static String escapeLike(String s) {
+        return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Reads a patient from the current row of a name search result set, whose
+     * columns are firstName, lastName, patientID, street, postalcode, homePhone,
+     * mobilePhone in that order
+     *
+     * @param con - connection the result set belongs to
+     * @param rs  - result set positioned on a row
+     * @return the patient
+     */
+    private Patient readPatient(Connection con, ResultSet rs) throws SQLException {
+        String firstName = rs.getString(1);
+        String lastName = rs.getString(2);
+        long pid = rs.getLong(3);
+        String street = rs.getString(4);
+        String postalCode = rs.getString(5);
+        String homePhone = rs.getString(6);
+        String mobilePhone = rs.getString(7);
+        ReferenceCache.Place place = references().getPlace(con, postalCode);
+        return new Patient(pid, firstName, lastName, street, place == null ? null : place.getCity(),
+                place == null ? null : place.getProvince(), place == null ? null : postalCode,
+                place == null ? null : place.getCountry(), homePhone, mobilePhone);
+    }
+
+    /**
+     * Reads a prescription from the current row of a getPrescriptions or
+     * findPrescription result set, whose columns are prescriptionID,
+     * prescribedDate, medication, dosage, quantity, filledDate in that order
+     *
+     * @param con - connection the result set belongs to
+     * @param rs  - result set positioned on a row
+     * @return the prescription
+     */
+    private Prescription readPrescription(Connection con, ResultSet rs) throws SQLException {
+        long prescriptionID = rs.getLong(1);
+        LocalDate prescribedDate = toLocalDate(rs.getDate(2));
+        String medication = rs.getString(3);
+        double dosage = rs.getDouble(4);
+        int quantity = rs.getInt(5);
+        LocalDate filledDate = toLocalDate(rs.getDate(6));
+        return new Prescription(prescriptionID, prescribedDate, medication, dosage,
+                references().getDosageMeasure(con, medication), quantity, filledDate);
+    }
+
+    /**
+     * Creates a referral with the referred doctor's details from the reference cache
+     *
+     * @param con          - connection the caller already borrowed from the pool
+     * @param referrerHID  - HID of the referring doctor
+     * @param referreeHID  - HID of the referred doctor
+     * @param referredDate - date of the referral, today if null
+     * @return the referral
+     */
+    private Referral readReferral(Connection con, long referrerHID, long referreeHID, java.sql.Date referredDate)
+            throws SQLException {
+        ReferenceCache.Doctor doctor = references().getDoctor(con, referreeHID);
+        return new Referral(referrerHID, referreeHID, doctor == null ? null : doctor.getFirstName(),
+                doctor == null ? null : doctor.getLastName(), doctor == null ? null : doctor.getSpecialization(),
+                referredDate == null ? currentDate() : toLocalDate(referredDate));
+    }
+
+    /**
+     * @param amount - amount from a result set, may be null
+     * @return the amount in cents, 0 for null
+     */
+    private static long toCents(java.math.BigDecimal amount) {
+        return amount == null ? 0 : amount.movePointRight(2).setScale(0, java.math.RoundingMode.HALF_UP).longValueExact();
+    }
+
+    /**
+     * @param date - date from a result set, may be null
+     * @return the date without a time of day, or null for null
+     */
+    private static LocalDate toLocalDate(java.sql.Date date) {
+        return date == null ? null : date.toLocalDate();
+    }
+
+    private static String emptyIfNull(String s) {
+        return s == null ? "" : s;
     }
 
     private void printTuple(ArrayList<String> tuple) {
@@ -1344,13 +2834,45 @@ public class HealthDB {
     }
 
     /**
-     * Helper method that generates todays date in the proper format to submit in a query.
+     * Today's date to bind in a query. The same instance is returned all day, so
+     * it must not be modified.
      *
-     * @return today's date as a string in SQL query format.
+     * @return today's date
+     */
+    private static java.sql.Date today() {
+        return day().sqlDate;
+    }
+
+    /**
+     * @return today's date
      */
-    static String today() {
-        DateFormat sqlDate = new SimpleDateFormat("yyyy-MM-dd");
-        java.sql.Date today = new java.sql.Date(Calendar.getInstance().getTimeInMillis());
-        return "TO_DATE('" + sqlDate.format(today) + "','YYYY-MM-DD')";
+    private static LocalDate currentDate() {
+        return day().date;
+    }
+
+    private static Today day() {
+        Today day = currentDay;
+        if (System.currentTimeMillis() >= day.endsAt) {
+            day = new Today();
+            currentDay = day;
+        }
+        return day;
+    }
+
+    /**
+     * Today's date, worked out once a day instead of on every insert
+     */
+    private static final class Today {
+        final LocalDate date;
+        final java.sql.Date sqlDate;
+        /** Start of tomorrow in epoch milliseconds */
+        final long endsAt;
+
+        Today() {
+            ZonedDateTime now = ZonedDateTime.now();
+            date = now.toLocalDate();
+            sqlDate = java.sql.Date.valueOf(date);
+            endsAt = date.plusDays(1).atStartOfDay(now.getZone()).toInstant().toEpochMilli();
+        }
     }
 }
@@ -0,0 +1,393 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * <h2>HealthDBBenchmark</h2>
+ * Benchmarks the HealthDB data access methods the UI uses most: the patient name
+ * search, getPrescriptions, findTestValues, createPrescription (including the
+ * interaction check), createInvoice and updateInvoice.
+ * <p>
+ * Runs against the embedded database by default (see EmbeddedBackend), so results
+ * do not depend on the network, optionally fills it with synthetic patients
+ * first (see DataGenerator), and draws its arguments at random from the rows in
+ * the database. Every benchmark is warmed up and then timed one call
+ * at a time on a single thread. Reports throughput, latency percentiles and the
+ * bytes allocated per call.
+ * <p>
+ * Settings (-D...):
+ * <br>healthdb.bench.warmupSeconds, healthdb.bench.seconds - time per benchmark (5, 10)
+ * <br>healthdb.bench.only - comma separated benchmarks to run, all if not set
+ * <br>healthdb.bench.patients - synthetic patients to generate first, 0 for only the sample data
+ * <br>healthdb.bench.seed - seed of the generated data and the argument choices (304)
+ * <br>healthdb.bench.user, healthdb.bench.password - database login
+ * <br>healthdb.bench.output - file to write the results to as CSV
+ * <br>healthdb.bench.baseline - results CSV of an earlier run; exits with status 1 if a
+ * benchmark's throughput dropped by more than healthdb.bench.tolerance (0.2 = 20%)
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class HealthDBBenchmark {
+    static final int WARMUP_SECONDS = Integer.getInteger("healthdb.bench.warmupSeconds", 5);
+    static final int MEASURE_SECONDS = Integer.getInteger("healthdb.bench.seconds", 10);
+    static final String ONLY = System.getProperty("healthdb.bench.only");
+    static final long PATIENTS = Long.getLong("healthdb.bench.patients", 0L);
+    static final long SEED = Long.getLong("healthdb.bench.seed", 304L);
+    static final String OUTPUT = System.getProperty("healthdb.bench.output");
+    static final String BASELINE = System.getProperty("healthdb.bench.baseline");
+    static final double TOLERANCE = Double.parseDouble(System.getProperty("healthdb.bench.tolerance", "0.2"));
+
+    /** Rows sampled from each table to draw arguments from */
+    private static final int SAMPLE_SIZE = 1000;
+
+    private final HealthDB hdb;
+    private final Random random = new Random(SEED);
+
+    private final ArrayList<String> patientIDs = new ArrayList<String>();
+    private final ArrayList<String> lastNames = new ArrayList<String>();
+    private final ArrayList<String> testIDs = new ArrayList<String>();
+    private final ArrayList<String> invoiceIDs = new ArrayList<String>();
+    /** Patient ID and plan ID of each sampled plan */
+    private final ArrayList<String[]> plans = new ArrayList<String[]>();
+    private final ArrayList<String> doctorHIDs = new ArrayList<String>();
+    private final ArrayList<String> medications = new ArrayList<String>();
+
+    public static void main(String args[]) {
+        // The embedded database unless another storage was asked for
+        StorageBackend backend = System.getProperty("healthdb.storage") == null
+                ? new EmbeddedBackend() : HealthDB.createStorageBackend();
+        HealthDB hdb = new HealthDB(backend);
+        String user = System.getProperty("healthdb.bench.user", "sa");
+        String password = System.getProperty("healthdb.bench.password", "");
+        if (!hdb.connectToDB(user, password)) {
+            System.exit(-1);
+        }
+
+        HealthDBBenchmark bench = new HealthDBBenchmark(hdb);
+        boolean passed;
+        try {
+            if (PATIENTS > 0) {
+                new DataGenerator(hdb.getConnectionPool(), backend, PATIENTS, SEED).generate();
+                // Reconnect so the name index and caches are built from the generated data
+                if (!hdb.connectToDB(user, password)) {
+                    throw new SQLException("Could not reconnect after generating data");
+                }
+            }
+            bench.sample();
+            List<Result> results = bench.runAll();
+            printResults(results);
+            System.out.println(hdb.getPatientCache());
+            System.out.println(hdb.getMetrics());
+            System.out.println(hdb.getFetchSizes());
+            if (OUTPUT != null) {
+                writeResults(results, new File(OUTPUT));
+            }
+            passed = BASELINE == null || compareToBaseline(results, new File(BASELINE));
+        } catch (Exception ex) {
+            System.out.println("Benchmark failed. " + ex.getMessage());
+            passed = false;
+        } finally {
+            hdb.disconnect();
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * @param hdb - a connected HealthDB
+     */
+    public HealthDBBenchmark(HealthDB hdb) {
+        this.hdb = hdb;
+    }
+
+    /**
+     * Reads the IDs and names the benchmarks draw their arguments from
+     */
+    void sample() throws SQLException {
+        ConnectionPool pool = hdb.getConnectionPool();
+        Connection con = pool.getConnection();
+        try {
+            Statement stmt = con.createStatement();
+            stmt.setMaxRows(SAMPLE_SIZE);
+            readColumn(stmt, "select patientID, lastName from patient", patientIDs, lastNames);
+            readColumn(stmt, "select testID from labtest", testIDs, null);
+            readColumn(stmt, "select invoiceID from invoice", invoiceIDs, null);
+            readColumn(stmt, "select HID from doctor", doctorHIDs, null);
+            readColumn(stmt, "select medication from medication", medications, null);
+            ResultSet rs = stmt.executeQuery("select patientID, planID from provincialHealthPlan");
+            while (rs.next()) {
+                plans.add(new String[]{rs.getString(1), rs.getString(2)});
+            }
+            stmt.close();
+        } finally {
+            pool.releaseConnection(con);
+        }
+        if (patientIDs.isEmpty() || testIDs.isEmpty() || invoiceIDs.isEmpty() || plans.isEmpty()
+                || doctorHIDs.isEmpty() || medications.isEmpty()) {
+            throw new SQLException("The database has no rows to benchmark with, run setupdb.sql");
+        }
+        System.out.println("Sampled " + patientIDs.size() + " patients, " + testIDs.size() + " tests, "
+                + invoiceIDs.size() + " invoices, " + plans.size() + " plans");
+    }
+
+    private static void readColumn(Statement stmt, String query, List<String> first, List<String> second)
+            throws SQLException {
+        ResultSet rs = stmt.executeQuery(query);
+        while (rs.next()) {
+            first.add(rs.getString(1));
+            if (second != null) {
+                second.add(rs.getString(2));
+            }
+        }
+        rs.close();
+    }
+
+    /**
+     * @return the benchmarks, in the order they run
+     */
+    List<Operation> operations() {
+        ArrayList<Operation> ops = new ArrayList<Operation>();
+        ops.add(new Operation("searchPatients") {
+            @Override
+            boolean run() {
+                return !hdb.searchPatients(pick(lastNames)).nextPage().isEmpty();
+            }
+        });
+        ops.add(new Operation("getPrescriptions") {
+            @Override
+            boolean run() {
+                return hdb.getPrescriptions(pick(patientIDs)) != null;
+            }
+        });
+        ops.add(new Operation("findTestValues") {
+            @Override
+            boolean run() {
+                return !hdb.findTestValues(pick(testIDs)).isEmpty();
+            }
+        });
+        ops.add(new Operation("createPrescription") {
+            @Override
+            boolean run() {
+                // False when the medication interacts, which is part of what is measured
+                return hdb.createPrescription(pick(medications), "10", "30", pick(patientIDs), pick(doctorHIDs));
+            }
+        });
+        ops.add(new Operation("createInvoice") {
+            @Override
+            boolean run() {
+                String[] plan = pick(plans);
+                return hdb.createInvoice(plan[0], "Benchmark", "2030-01-01", "Unpaid", "", "Cash",
+                        String.valueOf(random.nextInt(20000) / 100.0), plan[1]);
+            }
+        });
+        ops.add(new Operation("updateInvoice") {
+            @Override
+            boolean run() {
+                return hdb.updateInvoice(pick(invoiceIDs), "", "", "", "", "",
+                        String.valueOf(random.nextInt(20000) / 100.0));
+            }
+        });
+        return ops;
+    }
+
+    /**
+     * Runs every benchmark selected by healthdb.bench.only
+     */
+    List<Result> runAll() {
+        Set<String> only = null;
+        if (ONLY != null) {
+            only = new HashSet<String>(Arrays.asList(ONLY.split("\\s*,\\s*")));
+        }
+        ArrayList<Result> results = new ArrayList<Result>();
+        for (Operation op : operations()) {
+            if (only == null || only.contains(op.name)) {
+                System.out.println("Running " + op.name);
+                results.add(run(op));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Warms up and then times one benchmark
+     */
+    Result run(Operation op) {
+        long warmupEnd = System.nanoTime() + WARMUP_SECONDS * 1000000000L;
+        while (System.nanoTime() < warmupEnd) {
+            op.run();
+        }
+
+        com.sun.management.ThreadMXBean threads = allocationBean();
+        long threadID = Thread.currentThread().getId();
+        long[] latencies = new long[1 << 16];
+        int count = 0;
+        int falseCount = 0;
+
+        long allocatedBefore = threads == null ? 0 : threads.getThreadAllocatedBytes(threadID);
+        long start = System.nanoTime();
+        long end = start + MEASURE_SECONDS * 1000000000L;
+        long now = start;
+        while (now < end) {
+            if (!op.run()) {
+                falseCount++;
+            }
+            long done = System.nanoTime();
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = done - now;
+            now = done;
+        }
+        long allocated = threads == null ? -1 : threads.getThreadAllocatedBytes(threadID) - allocatedBefore;
+
+        Arrays.sort(latencies, 0, count);
+        return new Result(op.name, count, falseCount, (now - start) / 1e9, latencies, allocated);
+    }
+
+    /**
+     * @return the JVM's per-thread allocation counter, or null if it is not available
+     */
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    private <T> T pick(List<T> list) {
+        return list.get(random.nextInt(list.size()));
+    }
+
+    static void printResults(List<Result> results) {
+        System.out.println();
+        System.out.println(String.format("%-20s %10s %10s %10s %10s %10s %10s %12s %8s",
+                "Benchmark", "ops/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us", "bytes/op", "false"));
+        for (Result r : results) {
+            System.out.println(String.format("%-20s %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %12s %8d",
+                    r.name, r.getOpsPerSecond(), r.p50 / 1e3, r.p90 / 1e3, r.p99 / 1e3, r.p999 / 1e3,
+                    r.max / 1e3, r.getBytesPerOp() < 0 ? "n/a" : String.valueOf(r.getBytesPerOp()), r.falseCount));
+        }
+    }
+
+    static void writeResults(List<Result> results, File file) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            out.println("benchmark,opsPerSecond,p50Nanos,p90Nanos,p99Nanos,p999Nanos,maxNanos,bytesPerOp");
+            for (Result r : results) {
+                out.println(r.name + "," + r.getOpsPerSecond() + "," + r.p50 + "," + r.p90 + "," + r.p99
+                        + "," + r.p999 + "," + r.max + "," + r.getBytesPerOp());
+            }
+        } finally {
+            out.close();
+        }
+        System.out.println("Results written to " + file);
+    }
+
+    /**
+     * Compares throughput against an earlier results file
+     *
+     * @return false if any benchmark got slower than the tolerance allows
+     */
+    static boolean compareToBaseline(List<Result> results, File file) throws IOException {
+        HashMap<String, Double> baseline = new HashMap<String, Double>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            in.readLine();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(",");
+                baseline.put(fields[0], Double.parseDouble(fields[1]));
+            }
+        } finally {
+            in.close();
+        }
+
+        boolean passed = true;
+        for (Result r : results) {
+            Double before = baseline.get(r.name);
+            if (before == null) {
+                continue;
+            }
+            double change = r.getOpsPerSecond() / before - 1;
+            boolean regressed = change < -TOLERANCE;
+            System.out.println(String.format("%-20s %+.1f%% vs baseline%s", r.name, change * 100,
+                    regressed ? "  REGRESSION" : ""));
+            passed &= !regressed;
+        }
+        return passed;
+    }
+
+    /**
+     * One benchmarked call
+     */
+    abstract static class Operation {
+        final String name;
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the method's boolean result, or whether it found anything
+         */
+        abstract boolean run();
+    }
+
+    /**
+     * Measurements of one benchmark. Latencies are in nanoseconds.
+     */
+    static final class Result {
+        final String name;
+        final int count;
+        final int falseCount;
+        final double seconds;
+        final long p50;
+        final long p90;
+        final long p99;
+        final long p999;
+        final long max;
+        /** Bytes allocated by the benchmark thread while measuring, -1 if unknown */
+        final long allocated;
+
+        /**
+         * @param sortedLatencies - latency of every call, sorted, in the first count entries
+         */
+        Result(String name, int count, int falseCount, double seconds, long[] sortedLatencies, long allocated) {
+            this.name = name;
+            this.count = count;
+            this.falseCount = falseCount;
+            this.seconds = seconds;
+            this.p50 = percentile(sortedLatencies, count, 0.50);
+            this.p90 = percentile(sortedLatencies, count, 0.90);
+            this.p99 = percentile(sortedLatencies, count, 0.99);
+            this.p999 = percentile(sortedLatencies, count, 0.999);
+            this.max = count == 0 ? 0 : sortedLatencies[count - 1];
+            this.allocated = allocated;
+        }
+
+        double getOpsPerSecond() {
+            return count / seconds;
+        }
+
+        long getBytesPerOp() {
+            return allocated < 0 || count == 0 ? -1 : allocated / count;
+        }
+
+        private static long percentile(long[] sorted, int count, double p) {
+            if (count == 0) {
+                return 0;
+            }
+            return sorted[Math.min(count - 1, (int) Math.ceil(p * count) - 1)];
+        }
+    }
+}
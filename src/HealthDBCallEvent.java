@@ -0,0 +1,44 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * <h2>HealthDBCallEvent</h2>
+ * Java Flight Recorder event for one call of a HealthDB data access method,
+ * begun by HealthDBMetrics.start and committed by HealthDBMetrics.record, so
+ * the event's duration is the call's. Costs one isEnabled check per call unless
+ * a recording with the event enabled is running, e.g.
+ * -XX:StartFlightRecording:filename=healthdb.jfr
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+@Name("healthdb.Call")
+@Label("HealthDB Call")
+@Category({"HealthDB"})
+@Description("A call of a HealthDB data access method")
+@StackTrace(false)
+public class HealthDBCallEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Patient ID")
+    @Description("PID the call was for, null if it was not for one patient")
+    String patientID;
+
+    @Label("Rows")
+    @Description("Rows returned, 0 for writes")
+    int rows;
+
+    @Label("Connection Wait")
+    @Description("Time spent waiting for a pooled connection")
+    @Timespan(Timespan.NANOSECONDS)
+    long connectionWait;
+}
@@ -0,0 +1,340 @@
+import jdk.jfr.EventType;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h2>HealthDBMetrics</h2>
+ * Per-operation metrics of one HealthDB: calls, errors, rows returned and a
+ * latency histogram for each public data access method, see OperationMetrics.
+ * HealthDB records every call; recording takes a map lookup and a few atomic
+ * adds, and allocates nothing once the operation has been seen.
+ * <p>
+ * While connected the operations are registered as JMX MBeans, so they can be
+ * watched in JConsole or VisualVM, and with -Dhealthdb.metrics.dumpSeconds=n
+ * a table of all operations is printed every n seconds. Every call is also a
+ * HealthDBCallEvent for Java Flight Recorder, begun by start and committed by
+ * record.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class HealthDBMetrics {
+    private static final AtomicInteger instanceCount = new AtomicInteger();
+    private static final EventType HEALTHDB_CALL_EVENT = EventType.getEventType(HealthDBCallEvent.class);
+
+    private final int instance = instanceCount.incrementAndGet();
+    private final ConcurrentHashMap<String, OperationMetrics> operations =
+            new ConcurrentHashMap<String, OperationMetrics>();
+    private final AtomicLong callCount = new AtomicLong();
+    /** Connection wait of each thread not yet reported in a HealthDBCallEvent */
+    private final ThreadLocal<long[]> connectionWaitNanos = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+    /** Counter of the task each thread is running calls for, see setTaskCounter */
+    private final ThreadLocal<AtomicLong> taskCalls = new ThreadLocal<AtomicLong>();
+    /** Begun HealthDBCallEvents of the calls running on each thread, innermost last */
+    private final ThreadLocal<ArrayList<OpenCall>> openCalls = new ThreadLocal<ArrayList<OpenCall>>() {
+        @Override
+        protected ArrayList<OpenCall> initialValue() {
+            return new ArrayList<OpenCall>();
+        }
+    };
+    private boolean registered = false;
+    private Thread dumper;
+
+    /**
+     * @param name - name of the HealthDB method
+     * @return the operation's metrics, created on first use
+     */
+    public OperationMetrics get(String name) {
+        OperationMetrics op = operations.get(name);
+        if (op == null) {
+            OperationMetrics created = new OperationMetrics(name);
+            op = operations.putIfAbsent(name, created);
+            if (op == null) {
+                op = created;
+                synchronized (this) {
+                    if (registered) {
+                        register(op);
+                    }
+                }
+            }
+        }
+        return op;
+    }
+
+    /**
+     * Starts a call. While a recording has HealthDBCallEvent enabled, the call's
+     * event is begun here and committed by record.
+     *
+     * @return System.nanoTime(), to pass to record
+     */
+    long start() {
+        long now = System.nanoTime();
+        if (HEALTHDB_CALL_EVENT.isEnabled()) {
+            HealthDBCallEvent event = new HealthDBCallEvent();
+            event.begin();
+            openCalls.get().add(new OpenCall(now, event));
+        }
+        return now;
+    }
+
+    /**
+     * Records a finished call
+     *
+     * @param name       - name of the HealthDB method
+     * @param startNanos - System.nanoTime() when the call started
+     * @param rows       - rows the call returned, 0 for writes
+     */
+    void record(String name, long startNanos, int rows) {
+        record(name, startNanos, rows, null);
+    }
+
+    /**
+     * Records a finished call for one patient
+     *
+     * @param name       - name of the HealthDB method
+     * @param startNanos - System.nanoTime() when the call started
+     * @param rows       - rows the call returned, 0 for writes
+     * @param patientID  - PID the call was for, null if none
+     */
+    void record(String name, long startNanos, int rows, String patientID) {
+        long elapsed = System.nanoTime() - startNanos;
+        get(name).record(elapsed, rows);
+        callCount.incrementAndGet();
+        AtomicLong task = taskCalls.get();
+        if (task != null) {
+            task.incrementAndGet();
+        }
+
+        HealthDBCallEvent event = endCall(startNanos);
+        if (event != null) {
+            long[] wait = connectionWaitNanos.get();
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = name;
+                event.patientID = patientID;
+                event.rows = rows;
+                event.connectionWait = wait[0];
+                event.commit();
+            }
+            wait[0] = 0;
+        }
+    }
+
+    /**
+     * Takes the event begun by start off this thread's open calls. Calls started
+     * inside it that never recorded are dropped with it.
+     *
+     * @param startNanos - value start returned
+     * @return the call's event, or null if it was started without one
+     */
+    private HealthDBCallEvent endCall(long startNanos) {
+        ArrayList<OpenCall> open = openCalls.get();
+        for (int i = open.size() - 1; i >= 0; i--) {
+            OpenCall call = open.get(i);
+            if (call.startNanos == startNanos) {
+                open.subList(i, open.size()).clear();
+                return call.event;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds to the connection wait reported with the next call recorded on this thread
+     *
+     * @param nanos - time spent borrowing a pooled connection
+     */
+    void connectionWait(long nanos) {
+        if (HEALTHDB_CALL_EVENT.isEnabled()) {
+            connectionWaitNanos.get()[0] += nanos;
+        }
+    }
+
+    /**
+     * @return number of calls recorded so far, on every thread
+     */
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    /**
+     * Counts the calls the calling thread makes from now on in a task's counter,
+     * so overlapping tasks don't count each other's calls. Threads working for a
+     * task pass its counter on, see PlanSummaryLoader.
+     *
+     * @param counter - the task's counter, null to stop counting
+     */
+    public void setTaskCounter(AtomicLong counter) {
+        if (counter == null) {
+            taskCalls.remove();
+        } else {
+            taskCalls.set(counter);
+        }
+    }
+
+    /**
+     * @return the counter the calling thread's calls are counted in, null if none
+     */
+    public AtomicLong getTaskCounter() {
+        return taskCalls.get();
+    }
+
+    /**
+     * Records a failed call. record is still called for it when it finishes.
+     *
+     * @param name - name of the HealthDB method
+     */
+    void error(String name) {
+        get(name).error();
+    }
+
+    /**
+     * @return every operation seen so far, by name
+     */
+    public List<OperationMetrics> getOperations() {
+        ArrayList<OperationMetrics> list = new ArrayList<OperationMetrics>(operations.values());
+        Collections.sort(list, new Comparator<OperationMetrics>() {
+            @Override
+            public int compare(OperationMetrics a, OperationMetrics b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Registers every operation, and those seen from now on, with the platform MBean server
+     */
+    public synchronized void registerMBeans() {
+        if (registered) {
+            return;
+        }
+        registered = true;
+        for (OperationMetrics op : operations.values()) {
+            register(op);
+        }
+    }
+
+    /**
+     * Removes the operations from the platform MBean server
+     */
+    public synchronized void unregisterMBeans() {
+        if (!registered) {
+            return;
+        }
+        registered = false;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (OperationMetrics op : operations.values()) {
+            try {
+                ObjectName name = objectName(op);
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (JMException ex) {
+                System.out.println("Failed to unregister metrics for " + op.getName() + ". " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Prints the metrics table every interval until stopDump is called
+     *
+     * @param intervalMillis - time between tables
+     */
+    public synchronized void startDump(final long intervalMillis) {
+        if (dumper != null || intervalMillis <= 0) {
+            return;
+        }
+        dumper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Thread.sleep(intervalMillis);
+                        System.out.println(dump());
+                    }
+                } catch (InterruptedException ex) {
+                    // Stopped
+                }
+            }
+        }, "HealthDBMetrics-dump");
+        dumper.setDaemon(true);
+        dumper.start();
+    }
+
+    /**
+     * Stops the periodic table started by startDump
+     */
+    public synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.interrupt();
+            dumper = null;
+        }
+    }
+
+    /**
+     * @return a table with one line per operation, times in milliseconds
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder("HealthDB operations\n");
+        sb.append(String.format("%-32s %9s %7s %10s %9s %9s %9s %9s %9s", "operation", "calls", "errors",
+                "rows", "mean", "p50", "p99", "p99.9", "max"));
+        for (OperationMetrics op : getOperations()) {
+            sb.append('\n').append(op);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return dump();
+    }
+
+    private void register(OperationMetrics op) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName(op);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(op, name);
+            }
+        } catch (JMException ex) {
+            System.out.println("Failed to register metrics for " + op.getName() + ". " + ex.getMessage());
+        }
+    }
+
+    private ObjectName objectName(OperationMetrics op) throws JMException {
+        return new ObjectName("HealthDB:type=Operation,instance=" + instance + ",name=" + op.getName());
+    }
+
+    /**
+     * A call whose HealthDBCallEvent has begun
+     */
+    private static final class OpenCall {
+        final long startNanos;
+        final HealthDBCallEvent event;
+
+        OpenCall(long startNanos, HealthDBCallEvent event) {
+            this.startNanos = startNanos;
+            this.event = event;
+        }
+    }
+}
@@ -1,3 +1,6 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.*;
 import java.util.*;
 
@@ -9,6 +12,10 @@ public class HealthDBTest{
   public static void main(String args[]) {
       test = new HealthDBTest();
 
+      // Tests that do not need the database //
+      test.testReferralJournal();
+      test.testParseScript();
+
       hdb = new HealthDB();
       hdb.connectToDB("ora_k1j8", "a30442115");
 
@@ -36,39 +43,56 @@ public class HealthDBTest{
       System.out.println("  Expected: ");
       System.out.println("  Actual: " + hdb.findPrescription("1234") + "\n");
 
+      System.out.println("Test loadPatientSummary");
+      PatientSummary summary = hdb.loadPatientSummary("12345678");
+      test.printTuple(summary.getPatient());
+      test.printRows(summary.getPrescriptions());
+      test.printRows(summary.getTests());
+      test.printRows(summary.getReferrals());
+      System.out.println("  Expected: false");
+      System.out.println("  Actual: " + hdb.loadPatientSummary("1234").isFound() + "\n");
+
+      System.out.println("Test loadPlanSummary");
+      PlanSummary planSummary = hdb.loadPlanSummary("31000000");
+      System.out.println(planSummary);
+      test.printTuple(planSummary.getPlan());
+      test.printRows(planSummary.getInvoices());
+      System.out.println("  Expected: false");
+      System.out.println("  Actual: " + hdb.loadPlanSummary("1234").isFound() + "\n");
+
       // Test get methods //
       /*System.out.println("Test getPatients");
-      test.printTuples(hdb.getPatients("John"));
-      test.printTuples(hdb.getPatients("Mary"));
-      test.printTuples(hdb.getPatients("john"));
+      test.printRows(hdb.searchPatients("John").nextPage());
+      test.printRows(hdb.searchPatients("Mary").nextPage());
+      test.printRows(hdb.searchPatients("john").nextPage());
 
       System.out.println("Test getPrescriptions");
-      test.printTuples(hdb.getPrescriptions("1"));
-      test.printTuples(hdb.getPrescriptions("2"));
-      test.printTuples(hdb.getPrescriptions("3"));
-      test.printTuples(hdb.getPrescriptions("4"));
-      test.printTuples(hdb.getPrescriptions("pineapple"));
+      test.printRows(hdb.getPrescriptions("1"));
+      test.printRows(hdb.getPrescriptions("2"));
+      test.printRows(hdb.getPrescriptions("3"));
+      test.printRows(hdb.getPrescriptions("4"));
+      test.printRows(hdb.getPrescriptions("pineapple"));
 
       System.out.println("Test getTests");
-      test.printTuples(hdb.getTests("1"));
-      test.printTuples(hdb.getTests("2"));
-      test.printTuples(hdb.getTests("3"));
-      test.printTuples(hdb.getTests("4"));
-      test.printTuples(hdb.getTests("John"));
+      test.printRows(hdb.getTests("1"));
+      test.printRows(hdb.getTests("2"));
+      test.printRows(hdb.getTests("3"));
+      test.printRows(hdb.getTests("4"));
+      test.printRows(hdb.getTests("John"));
 
       System.out.println("Test getInvoices");
-      test.printTuples(hdb.getInvoices("1"));
-      test.printTuples(hdb.getInvoices("2"));
-      test.printTuples(hdb.getInvoices("3"));
-      test.printTuples(hdb.getInvoices("4"));
-      test.printTuples(hdb.getInvoices("banana"));
+      test.printRows(hdb.getInvoices("1"));
+      test.printRows(hdb.getInvoices("2"));
+      test.printRows(hdb.getInvoices("3"));
+      test.printRows(hdb.getInvoices("4"));
+      test.printRows(hdb.getInvoices("banana"));
 
       System.out.println("Test getReferrals");
-      test.printTuples(hdb.getReferrals("1"));
-      test.printTuples(hdb.getReferrals("2"));
-      test.printTuples(hdb.getReferrals("3"));
-      test.printTuples(hdb.getReferrals("4"));
-      test.printTuples(hdb.getReferrals("peach"));
+      test.printRows(hdb.getReferrals("1"));
+      test.printRows(hdb.getReferrals("2"));
+      test.printRows(hdb.getReferrals("3"));
+      test.printRows(hdb.getReferrals("4"));
+      test.printRows(hdb.getReferrals("peach"));
 
       System.out.println("Test getPlan");
       test.printTuple(hdb.getPlan("1"));
@@ -98,10 +122,99 @@ public class HealthDBTest{
       System.out.println("PID=4 Expected: 37.31, Actual: " + hdb.getOverdueAmountOwing("4"));
 
 
-      // Test checkInteraction //
-      System.out.println("Expected: true, Actual: " + hdb.checkInteraction("3", "Metformin"));
-      System.out.println("Expected: false, Actual: " + hdb.checkInteraction("3", "Pregabalin"));
-      System.out.println("Expected: false, Actual: " + hdb.checkInteraction("1", "Metformin"));*/
+      // Test findInteraction //
+      System.out.println("Expected: true, Actual: " + (hdb.findInteraction("3", "Metformin") != null));
+      System.out.println("Expected: false, Actual: " + (hdb.findInteraction("3", "Pregabalin") != null));
+      System.out.println("Expected: false, Actual: " + (hdb.findInteraction("1", "Metformin") != null));
+
+      // Test createPrescriptions //
+      List<NewPrescription> prescriptions = new ArrayList<NewPrescription>();
+      prescriptions.add(new NewPrescription("Pregabalin", "25", "60", "3", "55544"));
+      prescriptions.add(new NewPrescription("Metformin", "500", "60", "3", "55544"));
+      BatchResult result = hdb.createPrescriptions(prescriptions);
+      System.out.println("Expected: CREATED, INTERACTION, Actual: " + result.getOutcome(0) + ", " + result.getOutcome(1));
+
+      // Test beginUnitOfWork, both tests are committed together //
+      UnitOfWork work = hdb.beginUnitOfWork();
+      try {
+          hdb.createTest("3", "55544");
+          hdb.createTest("3", "55544");
+          work.commit();
+      } finally {
+          work.close();
+      }
+      System.out.println("Expected: false, Actual: " + work.isActive());*/
+  }
+
+  /**
+   * Replays a journal with a pending referral, a written one, a parked one and a
+   * line cut short by a crash, without connecting to the database
+   */
+  private void testReferralJournal() {
+      System.out.println("Test referral journal replay");
+      try {
+          File journal = File.createTempFile("referrals", ".journal");
+          journal.deleteOnExit();
+          Writer out = new OutputStreamWriter(new FileOutputStream(journal), StandardCharsets.UTF_8);
+          out.write("+\t1/2/3\t2020-01-01\tAnn\tLee\tCardiology\n");
+          out.write("+\t4/5/6\t2020-01-02\tBob\tKim\tOncology\n");
+          out.write("-\t4/5/6\n");
+          out.write("!\t7/8/9\t2020-01-03\tCy\tNg\tDermatology\n");
+          out.write("+\t10/11/12\t2020-01");
+          out.close();
+
+          // Not connected, so nothing is written and everything stays in the journal
+          ReferralWriteBehind writer = new ReferralWriteBehind(new HealthDB(), journal, 60000, 100);
+          writer.start();
+          System.out.println("  Expected: pending=1, parked=1");
+          System.out.println("  Actual: pending=" + writer.getPendingCount() + ", parked=" + writer.getParkedCount());
+          writer.close(1000);
+
+          List<String> lines = Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8);
+          System.out.println("  Expected: [!\t7/8/9\t2020-01-03\tCy\tNg\tDermatology, +\t1/2/3\t2020-01-01\tAnn\tLee\tCardiology]");
+          System.out.println("  Actual: " + lines + "\n");
+      } catch (IOException ex) {
+          System.out.println("  Failed: " + ex.getMessage() + "\n");
+      }
+  }
+
+  /**
+   * Splits setupdb.sql, which the embedded backend runs to create the schema, and
+   * a script with the cases that must not end a statement
+   */
+  private void testParseScript() {
+      System.out.println("Test parse setupdb.sql");
+      try {
+          File script = new File("setupdb.sql");
+          if (!script.isFile()) {
+              script = new File("src", "setupdb.sql");
+          }
+          String text = new String(Files.readAllBytes(script.toPath()), StandardCharsets.UTF_8);
+          int drop = 0, create = 0, insert = 0;
+          List<String> statements = EmbeddedBackend.parseScript(text);
+          for (String sql : statements) {
+              String verb = sql.split("\\s+")[0].toLowerCase();
+              if (verb.equals("drop")) {
+                  drop++;
+              } else if (verb.equals("create")) {
+                  create++;
+              } else if (verb.equals("insert")) {
+                  insert++;
+              }
+          }
+          System.out.println("  Expected: 309 statements, 19 drop, 20 create, 270 insert");
+          System.out.println("  Actual: " + statements.size() + " statements, " + drop + " drop, " + create
+                  + " create, " + insert + " insert\n");
+      } catch (IOException ex) {
+          System.out.println("  Failed: " + ex.getMessage() + "\n");
+      }
+
+      System.out.println("Test parse quotes, comments and a last statement without a semicolon");
+      List<String> statements = EmbeddedBackend.parseScript("insert into t values ('a;b', 'it''s'); -- note; here\n"
+              + "/* skip; this */ select 1 from dual;\n"
+              + "select 2 from dual");
+      System.out.println("  Expected: [insert into t values ('a;b', 'it''s'), select 1 from dual, select 2 from dual]");
+      System.out.println("  Actual: " + statements + "\n");
   }
 
   private void printTuples(ArrayList<ArrayList<String>> tuples){
@@ -117,6 +230,15 @@ public class HealthDBTest{
       System.out.println(sb.toString());
   }
 
+  private void printRows(List<?> rows){
+      StringBuilder sb = new StringBuilder();
+      for (Object row : rows){
+        sb.append(row);
+        sb.append("\n");
+      }
+      System.out.println(sb.toString());
+  }
+
   private void printTuple(ArrayList<String> tuple){
       StringBuilder sb = new StringBuilder();
         for (String s : tuple){
@@ -3,7 +3,12 @@ import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <h2>HealthDBUI</h2>
@@ -24,6 +29,7 @@ import java.util.*;
  */
 
 public class HealthDBUI extends JFrame {
+    private static final long serialVersionUID = 1L;
 
     static HealthDB hdb;
     private String username;
@@ -72,7 +78,6 @@ public class HealthDBUI extends JFrame {
     private JScrollPane panePrescriptionPrescriptions;
 
     private Boolean singlePrescBool;
-    private String[] singlePrescData;
 
     private JPanel panelTestFinder;
     private JPanel panelTestInfo;
@@ -116,11 +121,11 @@ public class HealthDBUI extends JFrame {
     private ArrayList<String> planArray;
     private ArrayList<String> planNumArray;
     private ArrayList<String> planInvoiceArray;
-    private ArrayList<ArrayList<String>> prescriptions;
-    private ArrayList<ArrayList<String>> tests;
-    private ArrayList<ArrayList<String>> referrals;
+    private ArrayList<Prescription> prescriptions;
+    private ArrayList<LabTest> tests;
+    private ArrayList<Referral> referrals;
     private ArrayList<ArrayList<String>> extendedBenefitsArray;
-    private ArrayList<ArrayList<String>> invoiceHistoryGridArray;
+    private ArrayList<Invoice> invoiceHistoryGridArray;
     private ArrayList<ArrayList<String>> monthlyInvoiceSummaryArray;
 
 
@@ -137,25 +142,31 @@ public class HealthDBUI extends JFrame {
     private JTextField txtLabMobileNum;
 
     private JTable prescPSTable;
-    private DefaultTableModel prescPSTableModel;
+    private RowTableModel<Prescription> prescPSTableModel;
     private JTable testPSTable;
-    private DefaultTableModel testPSTableModel;
+    private RowTableModel<LabTest> testPSTableModel;
     private JTable refPSTable;
-    private DefaultTableModel refPSTableModel;
+    private RowTableModel<Referral> refPSTableModel;
     private JTable prescPPTable;
-    private DefaultTableModel prescPPTableModel;
+    private RowTableModel<Prescription> prescPPTableModel;
 
     // view tables
     private JTable testTPTable;
-    private DefaultTableModel testTPTableModel;
+    private RowTableModel<LabTest> testTPTableModel;
 
     private JTable extendedBenefitsTable;
     private DefaultTableModel extendedBenefitsTableModel;
     private JTable invoiceHistoryGridTable;
-    private DefaultTableModel invoiceHistoryGridTableModel;
+    private RowTableModel<Invoice> invoiceHistoryGridTableModel;
     private JTable monthlyInvoiceSummaryTable;
     private DefaultTableModel monthlyInvoiceSummaryTableModel;
 
+    // status bar shown while database calls run in the background
+    private JLabel lblStatus;
+    private JProgressBar progressStatus;
+    private final ArrayList<DBTask<?>> activeTasks = new ArrayList<DBTask<?>>();
+    private final Map<String, DBTask<?>> slotTasks = new HashMap<String, DBTask<?>>();
+
     /**
      * Program entry point
      * @param args
@@ -166,8 +177,8 @@ public class HealthDBUI extends JFrame {
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
-                HealthDBUI ui = new HealthDBUI();
-                ui.frame.setVisible(true);
+                new HealthDBUI();
+                frame.setVisible(true);
             }
         });
     }
@@ -212,7 +223,19 @@ public class HealthDBUI extends JFrame {
         frame.setBounds(50, 0, width, height);
         frame.setMinimumSize(new Dimension(width, height));
         panelRoot.setLayout(new CardLayout(0, 0));
-        frame.setContentPane(panelRoot);
+
+        JPanel panelContent = new JPanel(new BorderLayout());
+        panelContent.add(panelRoot, BorderLayout.CENTER);
+        frame.setContentPane(panelContent);
+
+        JPanel panelStatus = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        lblStatus = new JLabel("Ready");
+        progressStatus = new JProgressBar();
+        progressStatus.setIndeterminate(true);
+        progressStatus.setVisible(false);
+        panelStatus.add(progressStatus);
+        panelStatus.add(lblStatus);
+        panelContent.add(panelStatus, BorderLayout.SOUTH);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
         patientArray = new ArrayList<String>();
@@ -225,18 +248,20 @@ public class HealthDBUI extends JFrame {
      * Clears all data for all views for fresh start
      */
     private void clearPanelData() {
+        // Results of lookups still running would refill the cleared views
+        cancelLookups();
+
         patientArray.clear();
         planArray.clear();
         planNumArray.clear();
         planInvoiceArray.clear();
-        singlePrescData = new String[0];
         singlePrescBool = Boolean.FALSE;
 
-        prescPPTableModel.setRowCount(0);
-        prescPSTableModel.setRowCount(0);
-        testPSTableModel.setRowCount(0);
-        testTPTableModel.setRowCount(0);
-        refPSTableModel.setRowCount(0);
+        prescPPTableModel.clear();
+        prescPSTableModel.clear();
+        testPSTableModel.clear();
+        testTPTableModel.clear();
+        refPSTableModel.clear();
 
         txtDocName.setText("");
         txtDocPID.setText("");
@@ -276,7 +301,7 @@ public class HealthDBUI extends JFrame {
         txtEndDate.setText("");
 
         extendedBenefitsTableModel.setRowCount(0);
-        invoiceHistoryGridTableModel.setRowCount(0);
+        invoiceHistoryGridTableModel.clear();
         monthlyInvoiceSummaryTableModel.setRowCount(0);
     }
 
@@ -312,85 +337,358 @@ public class HealthDBUI extends JFrame {
     }
 
     /**
-     * Converts the Array of array of tuples into a 2D array for use by JTables
-     * @param tuples
+     * Updates a JTable's TableModel given an array of tuples
+     * @param arr
+     * @param tableModel
+     */
+    private void updateTable(ArrayList<ArrayList<String>> arr, DefaultTableModel tableModel) {
+        for (ArrayList<String> tuple : arr) {
+            // DefaultTableModel keeps the Vector as the row, no further copy
+            tableModel.addRow(new Vector<Object>(tuple));
+        }
+    }
+
+    /**
+     * Creates the model of the prescription grids
+     * @return
+     */
+    private RowTableModel<Prescription> createPrescriptionTableModel() {
+        String cols[] = {"ID", "Date", "Medication", "Dosage", "Dosage Unit", "Quantity", "Filled Date", "Filled?"};
+        Class<?> classes[] = {Long.class, LocalDate.class, String.class, Double.class, String.class, Integer.class,
+                LocalDate.class, String.class};
+        return new RowTableModel<Prescription>(cols, classes) {
+            @Override
+            protected Object getValueAt(Prescription p, int column) {
+                switch (column) {
+                    case 0: return p.getPrescriptionID();
+                    case 1: return p.getPrescribedDate();
+                    case 2: return p.getMedication();
+                    case 3: return p.getDosage();
+                    case 4: return p.getDosageMeasure();
+                    case 5: return p.getQuantity();
+                    case 6: return p.getFilledDate();
+                    default: return p.isFilled() ? "Yes" : "No";
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates the model of the test grids
      * @return
      */
-    private String[][] createData(ArrayList<ArrayList<String>> tuples) {
-        String[][] data = new String[tuples.size()][tuples.get(0).size()];
+    private RowTableModel<LabTest> createTestTableModel() {
+        String cols[] = {"Test ID", "Ordered Date", "Performed Date", "Completed?"};
+        Class<?> classes[] = {Long.class, LocalDate.class, LocalDate.class, String.class};
+        return new RowTableModel<LabTest>(cols, classes) {
+            @Override
+            protected Object getValueAt(LabTest t, int column) {
+                switch (column) {
+                    case 0: return t.getTestID();
+                    case 1: return t.getOrderedDate();
+                    case 2: return t.getPerformedDate();
+                    default: return t.isPerformed() ? "Yes" : "No";
+                }
+            }
+        };
+    }
+
+    /**
+     * Runs database calls on a background thread so the window does not freeze
+     * while waiting on Oracle. query() runs off the event dispatch thread and must
+     * not touch any Swing components, succeeded() runs back on the event dispatch
+     * thread with the result. Each task is a UIActionEvent for Java Flight Recorder,
+     * from the button press until the views are updated.
+     *
+     * @param <T> - type of the query result
+     */
+    private abstract class DBTask<T> extends SwingWorker<T, Void> {
+        private final String slot;
+        private final String description;
+        private final UIActionEvent event = new UIActionEvent();
+        /** HealthDB calls made by query(), other tasks running at the same time don't add to it */
+        private final AtomicLong calls = new AtomicLong();
+
+        /**
+         * @param slot        - a new task started in the same slot cancels this one, null for
+         *                    tasks that write to the database and must never be cancelled
+         * @param description - shown in the status bar while the task runs
+         */
+        DBTask(String slot, String description) {
+            this.slot = slot;
+            this.description = description;
+            event.begin();
+        }
+
+        /**
+         * Database calls, runs in the background
+         * @return the result handed to succeeded
+         */
+        protected abstract T query();
+
+        /**
+         * Updates the views, runs on the event dispatch thread
+         * @param result
+         */
+        protected abstract void succeeded(T result);
+
+        /**
+         * Stops a query that is still running when the task is cancelled. Interrupting
+         * the worker thread does not stop a JDBC call, so tasks that can cancel their
+         * query override this. Runs on the event dispatch thread.
+         */
+        protected void cancelQuery() {
+        }
 
-        int row = 0;
-        int col = 0;
+        /**
+         * Cancels the task and its query
+         */
+        void abort() {
+            cancel(true);
+            cancelQuery();
+        }
 
-        /* Using same code as printTuples */
-        for (ArrayList<String> tuple : tuples) {
-            for (String s : tuple) {
-                data[row][col] = s;
-                col++;
+        @Override
+        protected T doInBackground() {
+            hdb.getMetrics().setTaskCounter(calls);
+            try {
+                return query();
+            } finally {
+                hdb.getMetrics().setTaskCounter(null);
             }
-            col = 0;
-            row++;
         }
 
-        System.out.println(Arrays.deepToString(data));
+        @Override
+        protected void done() {
+            taskFinished(this);
+            if (isCancelled()) {
+                System.out.println("Cancelled: " + description);
+                commitEvent("cancelled");
+                return;
+            }
+            try {
+                succeeded(get());
+                commitEvent("succeeded");
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                commitEvent("failed");
+                System.out.println("Failed: " + description + " " + ex.getCause());
+                JOptionPane.showMessageDialog(frame, "Failed: " + description, "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
 
-        return data;
+        private void commitEvent(String outcome) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.action = description;
+                event.panel = slot;
+                event.calls = calls.get();
+                event.outcome = outcome;
+                event.commit();
+            }
+        }
     }
 
     /**
-     * Updates a JTable's TableModel given an array of tuples
-     * @param arr
-     * @param tableModel
+     * Starts a background task, cancelling the task it supersedes
+     * @param task
      */
-    private void updateTable(ArrayList<ArrayList<String>> arr, DefaultTableModel tableModel) {
-        //printTuples(arr);
-        if (arr.size() > 0) {
-            String[][] data = createData(arr);
-            for (int row = 0; row < data.length; row++) {
-                tableModel.addRow(data[row]);
+    private void runTask(DBTask<?> task) {
+        if (task.slot != null) {
+            DBTask<?> previous = slotTasks.put(task.slot, task);
+            if (previous != null) {
+                previous.abort();
             }
         }
+        activeTasks.add(task);
+        updateStatus();
+        task.execute();
+    }
+
+    /**
+     * Cancels every running lookup. Tasks that write to the database are left running.
+     */
+    private void cancelLookups() {
+        for (DBTask<?> task : new ArrayList<DBTask<?>>(slotTasks.values())) {
+            task.abort();
+        }
+    }
+
+    private void taskFinished(DBTask<?> task) {
+        activeTasks.remove(task);
+        if (task.slot != null && slotTasks.get(task.slot) == task) {
+            slotTasks.remove(task.slot);
+        }
+        updateStatus();
+    }
+
+    /**
+     * Shows the most recently started task in the status bar
+     */
+    private void updateStatus() {
+        if (activeTasks.isEmpty()) {
+            lblStatus.setText("Ready");
+            progressStatus.setVisible(false);
+            frame.setCursor(Cursor.getDefaultCursor());
+        } else {
+            lblStatus.setText(activeTasks.get(activeTasks.size() - 1).description + "...");
+            progressStatus.setVisible(true);
+            frame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        }
+    }
+
+    /**
+     * Called with the PID chosen by findPatientByPIDOrName
+     */
+    private interface PatientLoader {
+        void load(String pid);
     }
 
     /**
-     * Gets the patient ID of a certain patient's name from an array of tuples
-     * @param names
+     * Finds a patient by PID, or by name if no PID was entered, in which case the
+     * user picks one of the matching patients. With neither, the current patient
+     * is reloaded. The chosen PID (empty if none) is passed to the loader.
+     * @param slot
+     * @param pidTxt
      * @param nameTxt
-     * @return
+     * @param loader
+     */
+    private void findPatientByPIDOrName(String slot, String pidTxt, final String nameTxt, final PatientLoader loader) {
+        System.out.println(pidTxt + " " + nameTxt);
+
+        if (pidTxt.equals("") && !nameTxt.isEmpty()) {
+            final PatientSearch search = hdb.searchPatients(nameTxt);
+            runTask(new PatientPageTask(slot, search, "Searching for " + nameTxt) {
+                @Override
+                protected void succeeded(ArrayList<Patient> names) {
+                    if (names.isEmpty()) {
+                        loader.load("");
+                    } else {
+                        loader.load(new PatientChooser(slot, search, names).choose());
+                    }
+                }
+            });
+        } else if (!pidTxt.isEmpty()) {
+            loader.load(pidTxt);
+        } else {
+            loader.load(patientArray.size() > 0 ? patientArray.get(2) : "");
+        }
+    }
+
+    /**
+     * Reads the next page of a patient search in the background
+     */
+    private abstract class PatientPageTask extends DBTask<ArrayList<Patient>> {
+        private final PatientSearch search;
+
+        PatientPageTask(String slot, PatientSearch search, String description) {
+            super(slot, description);
+            this.search = search;
+        }
+
+        @Override
+        protected ArrayList<Patient> query() {
+            return search.nextPage();
+        }
+
+        @Override
+        protected void cancelQuery() {
+            search.cancel();
+        }
+    }
+
+    /**
+     * Lets the user pick one of the patients found by a name search. The list
+     * starts with the first page and reads the next page in the background when
+     * it is scrolled to the bottom.
      */
-    private String getPIDfromName(ArrayList<ArrayList<String>> names, String nameTxt) {
-        // Do a name search
-        Object[] nameArr = new Object[names.size()];
+    private class PatientChooser {
+        private final String slot;
+        private final PatientSearch search;
+        private final DefaultListModel<Patient> listModel = new DefaultListModel<Patient>();
+        private final JList<Patient> list = new JList<Patient>(listModel);
+        private final JLabel lblLoaded = new JLabel();
+        private PatientPageTask loading;
+
+        /**
+         * @param slot      - slot of the search, used for the page tasks
+         * @param search    - the search the pages come from
+         * @param firstPage - the page already read
+         */
+        PatientChooser(String slot, PatientSearch search, ArrayList<Patient> firstPage) {
+            this.slot = slot;
+            this.search = search;
+            addPage(firstPage);
+        }
+
+        /**
+         * Shows the list and waits for the user
+         * @return the PID of the chosen patient, or the empty string if none was chosen
+         */
+        String choose() {
+            list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+            list.setVisibleRowCount(12);
+            list.setFixedCellHeight(list.getFontMetrics(list.getFont()).getHeight() + 2);
+            list.setSelectedIndex(0);
+
+            JScrollPane pane = new JScrollPane(list);
+            pane.getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener() {
+                @Override
+                public void adjustmentValueChanged(AdjustmentEvent e) {
+                    BoundedRangeModel range = ((JScrollBar) e.getSource()).getModel();
+                    // Read ahead once the last few rows come into view
+                    if (range.getValue() + range.getExtent() >= range.getMaximum() - 3 * list.getFixedCellHeight()) {
+                        loadMore();
+                    }
+                }
+            });
+
+            Object[] message = {"Choose a patient with " + search.getName() + " in their name:", pane, lblLoaded};
+            int resp = JOptionPane.showConfirmDialog(frame, message, "Choose a Patient",
+                    JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
 
-        int row = 0;
-        int index = 0;
+            // Nothing more is needed once the dialog is closed
+            search.cancel();
+            if (loading != null) {
+                loading.abort();
+            }
 
-        for (ArrayList<String> tuple : names) {
-            nameArr[row] = tuple.get(0) + " " + tuple.get(1) + " - " + tuple.get(2);
-            row++;
+            Patient chosen = list.getSelectedValue();
+            if (resp == JOptionPane.OK_OPTION && chosen != null) {
+                return String.valueOf(chosen.getPatientID());
+            }
+            return "";
         }
 
-        // Generate dialog
-        String s = (String) JOptionPane.showInputDialog(frame,
-                "Choose a patient with " + nameTxt + " in their name:",
-                "Choose a Patient",
-                JOptionPane.PLAIN_MESSAGE,
-                null,
-                nameArr,
-                null);
-
-        // Find the index
-        row = 0;
-        if (s != null) {
-            for (Object obj : nameArr) {
-                if (s.equals(nameArr[row])) {
-                    index = row;
+        /**
+         * Reads the next page unless one is already being read or there are no more
+         */
+        private void loadMore() {
+            if (loading != null || !search.hasMore()) {
+                return;
+            }
+            loading = new PatientPageTask(slot, search, "Loading more patients") {
+                @Override
+                protected void succeeded(ArrayList<Patient> page) {
+                    loading = null;
+                    addPage(page);
                 }
-                row++;
+            };
+            runTask(loading);
+        }
+
+        private void addPage(ArrayList<Patient> page) {
+            for (Patient patient : page) {
+                listModel.addElement(patient);
+            }
+            lblLoaded.setText(listModel.getSize() + (search.hasMore() ? "+ patients found, scroll for more" : " patients found"));
+
+            // A short list has nothing to scroll, so keep reading until it is filled
+            if (listModel.getSize() < list.getVisibleRowCount()) {
+                loadMore();
             }
-            return names.get(index).get(2);
         }
-        return "";
     }
 
     /**
@@ -398,7 +696,37 @@ public class HealthDBUI extends JFrame {
      * @param table
      * @param tableModel
      */
-    private void viewTestData(JTable table, DefaultTableModel tableModel) {
+    private void viewTestData(JTable table, RowTableModel<LabTest> tableModel) {
+        if (patientArray.size() > 0) {
+            int row = table.getSelectedRow();
+
+            if (row >= 0) {
+                final String testID = tableModel.getValueAt(row, 0).toString();
+                runTask(new DBTask<ArrayList<String>>("viewTest", "Loading test " + testID) {
+                    @Override
+                    protected ArrayList<String> query() {
+                        return hdb.findTestValues(testID);
+                    }
+
+                    @Override
+                    protected void succeeded(ArrayList<String> testData) {
+                        showTestData(testID, testData);
+                    }
+                });
+            } else {
+                JOptionPane.showMessageDialog(frame, "Please select a test from the Test table.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        } else {
+            JOptionPane.showMessageDialog(frame, "No patient selected!", "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Shows the values of a test in a dialog box
+     * @param testID
+     * @param testData
+     */
+    private void showTestData(String testID, ArrayList<String> testData) {
         JTextField dChol = new JTextField();
         JTextField dHDL = new JTextField();
         JTextField dLDL = new JTextField();
@@ -417,12 +745,7 @@ public class HealthDBUI extends JFrame {
         if (patientArray.size() > 0) {
             String name = patientArray.get(0) + " " + patientArray.get(1);
 
-            int row = table.getSelectedRow();
-
-            if (row >= 0) {
-                String testID = tableModel.getValueAt(row, 0).toString();
-                ArrayList<String> testData = hdb.findTestValues(testID);
-
+            if (testData.size() > 0) {
                 dChol.setEditable(false);
                 dHDL.setEditable(false);
                 dLDL.setEditable(false);
@@ -463,7 +786,7 @@ public class HealthDBUI extends JFrame {
                 String s = testData.get(0);
                 JOptionPane.showMessageDialog(frame, data, "Test # " + testID + " for Patient " + name, JOptionPane.PLAIN_MESSAGE);
             } else {
-                JOptionPane.showMessageDialog(frame, "Please select a test from the Test table.", "Error", JOptionPane.ERROR_MESSAGE);
+                JOptionPane.showMessageDialog(frame, "Test " + testID + " not found!", "Error", JOptionPane.ERROR_MESSAGE);
             }
         } else {
             JOptionPane.showMessageDialog(frame, "No patient selected!", "Error", JOptionPane.ERROR_MESSAGE);
@@ -471,88 +794,109 @@ public class HealthDBUI extends JFrame {
     }
 
     /**
-     * Finds a single prescription and puts it into a JTable
+     * Finds a single prescription in the background and puts it into a JTable
      * @param prescNum
-     * @return
+     * @param notFound - run if the prescription does not exist, may be null
      */
-    private int findSinglePrescription(String prescNum) {
-        ArrayList<String> tuple = hdb.findPrescription(prescNum);
+    private void findSinglePrescription(final String prescNum, final Runnable notFound) {
+        runTask(new DBTask<Prescription>("prescription", "Loading prescription " + prescNum) {
+            ArrayList<String> patient;
 
-        if (tuple.size() > 0) {
-            singlePrescData = new String[tuple.size()];
-
-            patientArray = hdb.findPatient(hdb.findPIDfromPrescription(prescNum));
+            @Override
+            protected Prescription query() {
+                Prescription prescription = hdb.findPrescription(prescNum);
+                if (prescription != null) {
+                    patient = hdb.findPatient(hdb.findPIDfromPrescription(prescNum));
+                }
+                return prescription;
+            }
 
-            // Clear the data tables
-            prescPPTableModel.setRowCount(0);
+            @Override
+            protected void succeeded(Prescription prescription) {
+                if (prescription != null) {
+                    patientArray = patient;
+                    showSinglePrescription(prescription);
+                } else if (notFound != null) {
+                    notFound.run();
+                }
+            }
+        });
+    }
 
-            patientID = patientArray.get(2);
-            String name = patientArray.get(0) + " " + patientArray.get(1);
-            String addr = patientArray.get(3) + " " + patientArray.get(4) + " " + patientArray.get(6) + " " + patientArray.get(5);
+    /**
+     * Puts a single prescription into a JTable
+     * @param prescription
+     */
+    private void showSinglePrescription(Prescription prescription) {
+        singlePrescBool = Boolean.TRUE;
 
-            System.out.println(patientArray.get(2) + ", " + name);
+        patientID = patientArray.get(2);
+        String name = patientArray.get(0) + " " + patientArray.get(1);
+        String addr = patientArray.get(3) + " " + patientArray.get(4) + " " + patientArray.get(6) + " " + patientArray.get(5);
 
-            txtPharmName.setText(name);
-            txtPharmPID.setText(patientArray.get(2));
-            txtPharmAddr.setText(addr);
-            txtPharmHomeNum.setText(patientArray.get(7));
-            txtPharmMobileNum.setText(patientArray.get(8));
+        System.out.println(patientArray.get(2) + ", " + name);
 
-            int col = 0;
-            if (tuple.size() > 0) {
-                for (String s : tuple) {
-                    singlePrescData[col] = s;
-                    col++;
-                }
+        txtPharmName.setText(name);
+        txtPharmPID.setText(patientArray.get(2));
+        txtPharmAddr.setText(addr);
+        txtPharmHomeNum.setText(patientArray.get(7));
+        txtPharmMobileNum.setText(patientArray.get(8));
 
-                prescPPTableModel.addRow(singlePrescData);
-            }
-            return 1;
-        }
-        return 0;
+        prescPPTableModel.setRows(Collections.singletonList(prescription));
     }
 
     /**
-     * Finds a single test and puts it into a JTable
+     * Finds a single test in the background and puts it into a JTable
      * @param testNum
-     * @return
+     * @param found    - run once the test is shown, may be null
+     * @param notFound - run if the test does not exist, may be null
      */
-    private int findSingleTest(String testNum) {
-        ArrayList<String> tuple = hdb.findTest(testNum);
+    private void findSingleTest(final String testNum, final Runnable found, final Runnable notFound) {
+        runTask(new DBTask<LabTest>("test", "Loading test " + testNum) {
+            ArrayList<String> patient;
 
-        String[] data = new String[tuple.size()];
-
-        if (tuple.size() > 0) {
-
-            patientArray = hdb.findPatient(hdb.findPIDfromTest(testNum));
-
-            // Clear the data tables
-            testTPTableModel.setRowCount(0);
+            @Override
+            protected LabTest query() {
+                LabTest test = hdb.findTest(testNum);
+                if (test != null) {
+                    patient = hdb.findPatient(hdb.findPIDfromTest(testNum));
+                }
+                return test;
+            }
 
-            patientID = patientArray.get(2);
-            String name = patientArray.get(0) + " " + patientArray.get(1);
-            String addr = patientArray.get(3) + " " + patientArray.get(4) + " " + patientArray.get(6) + " " + patientArray.get(5);
+            @Override
+            protected void succeeded(LabTest test) {
+                if (test != null) {
+                    patientArray = patient;
+                    showSingleTest(test);
+                    if (found != null) {
+                        found.run();
+                    }
+                } else if (notFound != null) {
+                    notFound.run();
+                }
+            }
+        });
+    }
 
-            System.out.println(patientArray.get(2) + ", " + name);
+    /**
+     * Puts a single test into a JTable
+     * @param test
+     */
+    private void showSingleTest(LabTest test) {
+        patientID = patientArray.get(2);
+        String name = patientArray.get(0) + " " + patientArray.get(1);
+        String addr = patientArray.get(3) + " " + patientArray.get(4) + " " + patientArray.get(6) + " " + patientArray.get(5);
 
-            txtLabName.setText(name);
-            txtLabPID.setText(patientArray.get(2));
-            txtLabAddr.setText(addr);
-            txtLabHomeNum.setText(patientArray.get(8));
-            txtLabMobileNum.setText(patientArray.get(9));
+        System.out.println(patientArray.get(2) + ", " + name);
 
-            int col = 0;
-            if (tuple.size() > 0) {
-                for (String s : tuple) {
-                    data[col] = s;
-                    col++;
-                }
+        txtLabName.setText(name);
+        txtLabPID.setText(patientArray.get(2));
+        txtLabAddr.setText(addr);
+        txtLabHomeNum.setText(patientArray.get(8));
+        txtLabMobileNum.setText(patientArray.get(9));
 
-                testTPTableModel.addRow(data);
-            }
-            return 1;
-        }
-        return 0;
+        testTPTableModel.setRows(Collections.singletonList(test));
     }
 
     /**
@@ -670,15 +1014,25 @@ public class HealthDBUI extends JFrame {
 
                     hdb.setOracleCredentials(username, password);
 
-                    /* Switch to next view only if database connection is made */
-                    if (hdb.connectToDB(username, password)) {
+                    runTask(new DBTask<Boolean>("login", "Connecting to Oracle") {
+                        @Override
+                        protected Boolean query() {
+                            return hdb.connectToDB(username, password);
+                        }
 
-                        /* Switch to User Class panel when login achieved */
-                        switchToUserSelectPanel();
-                    } else {
-                        System.out.println("Login Failed!");
-                        JOptionPane.showMessageDialog(frame, "Login Failed: Database could not connect!", "Login Failed Error", JOptionPane.ERROR_MESSAGE);
-                    }
+                        @Override
+                        protected void succeeded(Boolean connected) {
+                            /* Switch to next view only if database connection is made */
+                            if (connected) {
+
+                                /* Switch to User Class panel when login achieved */
+                                switchToUserSelectPanel();
+                            } else {
+                                System.out.println("Login Failed!");
+                                JOptionPane.showMessageDialog(frame, "Login Failed: Database could not connect!", "Login Failed Error", JOptionPane.ERROR_MESSAGE);
+                            }
+                        }
+                    });
                 }
             }
         });
@@ -912,8 +1266,18 @@ public class HealthDBUI extends JFrame {
                             JOptionPane.YES_NO_OPTION);
 
                     if (resp == JOptionPane.YES_OPTION) {
-                        hdb.deletePatient(patientID);
-                        clearPanelData();
+                        final String pid = patientID;
+                        runTask(new DBTask<Boolean>(null, "Deleting " + name) {
+                            @Override
+                            protected Boolean query() {
+                                return hdb.deletePatient(pid);
+                            }
+
+                            @Override
+                            protected void succeeded(Boolean deleted) {
+                                clearPanelData();
+                            }
+                        });
                     }
                 } else {
                     JOptionPane.showMessageDialog(frame,
@@ -946,10 +1310,8 @@ public class HealthDBUI extends JFrame {
 
 
         /* Row 5 */
-        String colsP[] = {"ID", "Date", "Medication", "Dosage", "Dosage Unit", "Quantity", "Filled Date", "Filled?"};
-        String data[][] = {};
-        prescPSTableModel = new DefaultTableModel(data, colsP);
-        prescPSTable = new JTable(prescPSTableModel);
+        prescPSTableModel = createPrescriptionTableModel();
+        prescPSTable = RowTableModel.createTable(prescPSTableModel);
 
         panePatientSummaryPrescriptions = new JScrollPane(prescPSTable);
         panePatientSummaryPrescriptions.setLayout(new ScrollPaneLayout());
@@ -979,15 +1341,24 @@ public class HealthDBUI extends JFrame {
                     int resp = JOptionPane.showConfirmDialog(frame, fields, "Create prescription for " + name, JOptionPane.OK_CANCEL_OPTION);
 
                     if (resp == JOptionPane.OK_OPTION) {
-                        String medication = dMedication.getText();
-                        String dosage = dDosage.getText();
-                        String qty = dQty.getText();
-                        hdb.createPrescription(medication, dosage, qty, patientID, drHID);
-
-                        // Clear and update the table with new data
-                        prescPSTableModel.setRowCount(0);
-                        prescriptions = hdb.getPrescriptions(patientID);
-                        updateTable(prescriptions, prescPSTableModel);
+                        final String medication = dMedication.getText();
+                        final String dosage = dDosage.getText();
+                        final String qty = dQty.getText();
+                        final String pid = patientID;
+                        runTask(new DBTask<ArrayList<Prescription>>(null, "Creating prescription for " + name) {
+                            @Override
+                            protected ArrayList<Prescription> query() {
+                                hdb.createPrescription(medication, dosage, qty, pid, drHID);
+                                return hdb.getPrescriptions(pid);
+                            }
+
+                            @Override
+                            protected void succeeded(ArrayList<Prescription> result) {
+                                // Update the table with new data
+                                prescriptions = result;
+                                prescPSTableModel.setRows(prescriptions);
+                            }
+                        });
                     } else {
                         System.out.println("No values entered");
                     }
@@ -1018,9 +1389,8 @@ public class HealthDBUI extends JFrame {
         panelPatientSummary.add(lbl, gbc);
 
         /* Row 7 */
-        String colsT[] = {"Test ID", "Ordered Date", "Performed Date", "Completed?"};
-        testPSTableModel = new DefaultTableModel(data, colsT);
-        testPSTable = new JTable(testPSTableModel);
+        testPSTableModel = createTestTableModel();
+        testPSTable = RowTableModel.createTable(testPSTableModel);
 
         panePatientSummaryTests = new JScrollPane(testPSTable);
         panePatientSummaryTests.setLayout(new ScrollPaneLayout());
@@ -1039,18 +1409,31 @@ public class HealthDBUI extends JFrame {
             public void actionPerformed(ActionEvent e) {
 
                 if (patientArray.size() > 0) {
-                    String name = patientArray.get(0) + " " + patientArray.get(1);
+                    final String name = patientArray.get(0) + " " + patientArray.get(1);
+                    final String pid = patientID;
+
+                    runTask(new DBTask<ArrayList<LabTest>>(null, "Creating test for " + name) {
+                        @Override
+                        protected ArrayList<LabTest> query() {
+                            if (hdb.createTest(pid, drHID)) {
+                                return hdb.getTests(pid);
+                            }
+                            return null;
+                        }
 
-                    if (hdb.createTest(patientID, drHID)) {
+                        @Override
+                        protected void succeeded(ArrayList<LabTest> result) {
+                            if (result != null) {
 
-                        // Clear and update the table with new data
-                        testPSTableModel.setRowCount(0);
-                        tests = hdb.getTests(patientID);
-                        updateTable(tests, testPSTableModel);
-                        JOptionPane.showMessageDialog(frame, "Test created for " + name, "Create test for " + name, JOptionPane.INFORMATION_MESSAGE);
-                    } else {
-                        JOptionPane.showMessageDialog(frame, "Failed to create test for " + name, "Create test for " + name, JOptionPane.ERROR_MESSAGE);
-                    }
+                                // Update the table with new data
+                                tests = result;
+                                testPSTableModel.setRows(tests);
+                                JOptionPane.showMessageDialog(frame, "Test created for " + name, "Create test for " + name, JOptionPane.INFORMATION_MESSAGE);
+                            } else {
+                                JOptionPane.showMessageDialog(frame, "Failed to create test for " + name, "Create test for " + name, JOptionPane.ERROR_MESSAGE);
+                            }
+                        }
+                    });
                 } else {
                     JOptionPane.showMessageDialog(frame, "No patient selected!", "Error", JOptionPane.ERROR_MESSAGE);
                 }
@@ -1089,8 +1472,19 @@ public class HealthDBUI extends JFrame {
 
         /* Row 9 */
         String colsR[] = {"First Name", "Last Name", "Specialization", "Date"};
-        refPSTableModel = new DefaultTableModel(data, colsR);
-        refPSTable = new JTable(refPSTableModel);
+        Class<?> classesR[] = {String.class, String.class, String.class, LocalDate.class};
+        refPSTableModel = new RowTableModel<Referral>(colsR, classesR) {
+            @Override
+            protected Object getValueAt(Referral r, int column) {
+                switch (column) {
+                    case 0: return r.getFirstName();
+                    case 1: return r.getLastName();
+                    case 2: return r.getSpecialization();
+                    default: return r.getReferredDate();
+                }
+            }
+        };
+        refPSTable = RowTableModel.createTable(refPSTableModel);
 
         panePatientSummaryReferrals = new JScrollPane(refPSTable);
         panePatientSummaryReferrals.setLayout(new ScrollPaneLayout());
@@ -1117,14 +1511,23 @@ public class HealthDBUI extends JFrame {
                     int resp = JOptionPane.showConfirmDialog(frame, fields, "Create referral for " + name, JOptionPane.OK_CANCEL_OPTION);
 
                     if (resp == JOptionPane.OK_OPTION) {
-                        String drHIDInput = dDrHID.getText();
-                        hdb.createReferral(patientID, drHID, drHIDInput);
+                        final String drHIDInput = dDrHID.getText();
+                        final String pid = patientID;
                         System.out.println(drHIDInput);
+                        runTask(new DBTask<ArrayList<Referral>>(null, "Creating referral for " + name) {
+                            @Override
+                            protected ArrayList<Referral> query() {
+                                hdb.createReferral(pid, drHID, drHIDInput);
+                                return hdb.getReferrals(pid);
+                            }
 
-                        // Clear and update the table with new data
-                        refPSTableModel.setRowCount(0);
-                        referrals = hdb.getReferrals(patientID);
-                        updateTable(referrals, refPSTableModel);
+                            @Override
+                            protected void succeeded(ArrayList<Referral> result) {
+                                // Update the table with new data
+                                referrals = result;
+                                refPSTableModel.setRows(referrals);
+                            }
+                        });
                     } else {
                         System.out.println("No values entered");
                     }
@@ -1162,28 +1565,36 @@ public class HealthDBUI extends JFrame {
         btnfindPatient.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
+                findPatientByPIDOrName("patientSummary", txtPID.getText(), txtName.getText(), new PatientLoader() {
+                    @Override
+                    public void load(String pid) {
+                        loadPatientSummary(pid, txtPID, txtName);
+                    }
+                });
+            }
+        });
+        btnfindPatient.setText("Find Patient");
+        panelPatientSummaryFinder.add(btnfindPatient);
+    }
 
-                String pidTxt = txtPID.getText();
-                String nameTxt = txtName.getText();
-
-                System.out.println(pidTxt + " " + nameTxt);
-
-                if (pidTxt.equals("") && !nameTxt.isEmpty()) {
-                    ArrayList<ArrayList<String>> names = hdb.getPatients(nameTxt);
-                    pidTxt = getPIDfromName(names, nameTxt);
+    /**
+     * Loads a patient with their prescriptions, tests and referrals into the Patient Summary view
+     * @param pid
+     * @param txtPID
+     * @param txtName
+     */
+    private void loadPatientSummary(final String pid, final JTextField txtPID, final JTextField txtName) {
+        runTask(new DBTask<PatientSummary>("patientSummary", "Loading patient " + pid) {
+            @Override
+            protected PatientSummary query() {
+                return hdb.loadPatientSummary(pid);
+            }
 
-                    patientArray = hdb.findPatient(pidTxt);
-                } else if (!pidTxt.isEmpty()) {
-                    patientArray = hdb.findPatient(pidTxt);
-                }
+            @Override
+            protected void succeeded(PatientSummary summary) {
+                patientArray = summary.getPatient();
 
                 if (patientArray.size() > 0) {
-
-                    // Clear the data tables
-                    prescPSTableModel.setRowCount(0);
-                    testPSTableModel.setRowCount(0);
-                    refPSTableModel.setRowCount(0);
-
                     patientID = patientArray.get(2);
                     String name = patientArray.get(0) + " " + patientArray.get(1);
                     String addr = patientArray.get(3) + " " + patientArray.get(4) + " " + patientArray.get(6) + " " + patientArray.get(5);
@@ -1196,17 +1607,14 @@ public class HealthDBUI extends JFrame {
                     txtDocHomeNum.setText(patientArray.get(8));
                     txtDocMobileNum.setText(patientArray.get(9));
 
-                    prescriptions = hdb.getPrescriptions(patientArray.get(2));
-                    printTuples(prescriptions);
-                    updateTable(prescriptions, prescPSTableModel);
+                    prescriptions = summary.getPrescriptions();
+                    prescPSTableModel.setRows(prescriptions);
 
-                    tests = hdb.getTests(patientArray.get(2));
-                    printTuples(tests);
-                    updateTable(tests, testPSTableModel);
+                    tests = summary.getTests();
+                    testPSTableModel.setRows(tests);
 
-                    referrals = hdb.getReferrals(patientArray.get(2));
-                    printTuples(referrals);
-                    updateTable(referrals, refPSTableModel);
+                    referrals = summary.getReferrals();
+                    refPSTableModel.setRows(referrals);
 
                     txtPID.setText("");
                     txtName.setText("");
@@ -1221,8 +1629,6 @@ public class HealthDBUI extends JFrame {
                 }
             }
         });
-        btnfindPatient.setText("Find Patient");
-        panelPatientSummaryFinder.add(btnfindPatient);
     }
 
     private void setPanelPatientSummaryInfo() {
@@ -1370,10 +1776,8 @@ public class HealthDBUI extends JFrame {
         panelPrescription.add(lbl, gbc);
 
         /* Row 5 */
-        String cols[] = {"ID", "Date", "Medication", "Dosage", "Dosage Unit", "Quantity", "Filled Date", "Filled?"};
-        String data[][] = {};
-        prescPPTableModel = new DefaultTableModel(data, cols);
-        prescPPTable = new JTable(prescPPTableModel);
+        prescPPTableModel = createPrescriptionTableModel();
+        prescPPTable = RowTableModel.createTable(prescPPTableModel);
 
         panePrescriptionPrescriptions = new JScrollPane(prescPPTable);
         panePrescriptionPrescriptions.setLayout(new ScrollPaneLayout());
@@ -1404,14 +1808,28 @@ public class HealthDBUI extends JFrame {
                         if (pharmHIDField.getText().equals("")) {
                             JOptionPane.showMessageDialog(frame, "No Pharmacist ID entered!", "Error", JOptionPane.ERROR_MESSAGE);
                         } else {
-                            hdb.updatePrescription(pharmHIDField.getText(), prescID);
-                            prescPPTableModel.setRowCount(0);
-
-                            if (singlePrescBool) {
-                                findSinglePrescription(prescID);
-                            } else {
-                                updateTable(hdb.getPrescriptions(patientID), prescPPTableModel);
-                            }
+                            final String pharmHID = pharmHIDField.getText();
+                            final String pid = patientID;
+                            final boolean single = singlePrescBool;
+                            runTask(new DBTask<ArrayList<Prescription>>(null, "Filling prescription " + prescID) {
+                                @Override
+                                protected ArrayList<Prescription> query() {
+                                    hdb.updatePrescription(pharmHID, prescID);
+                                    return single ? null : hdb.getPrescriptions(pid);
+                                }
+
+                                @Override
+                                protected void succeeded(ArrayList<Prescription> result) {
+                                    prescPPTableModel.clear();
+
+                                    if (single) {
+                                        findSinglePrescription(prescID, null);
+                                    } else {
+                                        prescriptions = result;
+                                        prescPPTableModel.setRows(prescriptions);
+                                    }
+                                }
+                            });
                         }
                     }
                 } else {
@@ -1456,19 +1874,20 @@ public class HealthDBUI extends JFrame {
             public void actionPerformed(ActionEvent e) {
                 String prescNum = txtPrescNum.getText();
 
-                if (findSinglePrescription(prescNum) == 1) {
-                    singlePrescBool = Boolean.TRUE;
-                } else {
-                    txtPrescNum.setText("");
-                    txtPID.setText("");
-                    txtName.setText("");
-                    singlePrescBool = Boolean.FALSE;
+                findSinglePrescription(prescNum, new Runnable() {
+                    @Override
+                    public void run() {
+                        txtPrescNum.setText("");
+                        txtPID.setText("");
+                        txtName.setText("");
+                        singlePrescBool = Boolean.FALSE;
 
-                    // Clear the data tables
-                    clearPanelData();
+                        // Clear the data tables
+                        clearPanelData();
 
-                    JOptionPane.showMessageDialog(frame, "Patient not found!", "Invalid Patient Error", JOptionPane.ERROR_MESSAGE);
-                }
+                        JOptionPane.showMessageDialog(frame, "Patient not found!", "Invalid Patient Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                });
             }
         });
         btnFindPrescNum.setText("Find by Prescription Number");
@@ -1514,25 +1933,49 @@ public class HealthDBUI extends JFrame {
         btnFindPrescPatient.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                String pidTxt = txtPID.getText();
-                String nameTxt = txtName.getText();
-
-                System.out.println(pidTxt + " " + nameTxt);
+                findPatientByPIDOrName("prescription", txtPID.getText(), txtName.getText(), new PatientLoader() {
+                    @Override
+                    public void load(String pid) {
+                        loadPatientPrescriptions(pid, txtPrescNum, txtPID, txtName);
+                    }
+                });
+            }
+        });
+        btnFindPrescPatient.setText("Find Patient");
+        gbc = new GridBagConstraints();
+        gbc.anchor = GridBagConstraints.LINE_START;
+        gbc.insets = new Insets(5, 5, 0, 0);
+        gbc.gridx = 4;
+        gbc.gridy = 1;
+        panelPrescriptionFinder.add(btnFindPrescPatient, gbc);
+    }
 
-                if (pidTxt.equals("") && !nameTxt.isEmpty()) {
-                    ArrayList<ArrayList<String>> names = hdb.getPatients(nameTxt);
-                    pidTxt = getPIDfromName(names, nameTxt);
+    /**
+     * Loads a patient and their prescriptions into the Prescriptions view
+     * @param pid
+     * @param txtPrescNum
+     * @param txtPID
+     * @param txtName
+     */
+    private void loadPatientPrescriptions(final String pid, final JTextField txtPrescNum,
+                                          final JTextField txtPID, final JTextField txtName) {
+        runTask(new DBTask<ArrayList<String>>("prescription", "Loading prescriptions for " + pid) {
+            ArrayList<Prescription> patientPrescriptions;
 
-                    patientArray = hdb.findPatient(pidTxt);
-                } else if (!pidTxt.isEmpty()) {
-                    patientArray = hdb.findPatient(pidTxt);
+            @Override
+            protected ArrayList<String> query() {
+                ArrayList<String> patient = hdb.findPatient(pid);
+                if (patient.size() > 0) {
+                    patientPrescriptions = hdb.getPrescriptions(patient.get(2));
                 }
+                return patient;
+            }
 
-                if (patientArray.size() > 0) {
-
-                    // Clear the data tables
-                    prescPPTableModel.setRowCount(0);
+            @Override
+            protected void succeeded(ArrayList<String> patient) {
+                patientArray = patient;
 
+                if (patientArray.size() > 0) {
                     patientID = patientArray.get(2);
                     String name = patientArray.get(0) + " " + patientArray.get(1);
                     String addr = patientArray.get(3) + " " + patientArray.get(4) + " " + patientArray.get(6) + " " + patientArray.get(5);
@@ -1545,14 +1988,8 @@ public class HealthDBUI extends JFrame {
                     txtPharmHomeNum.setText(patientArray.get(8));
                     txtPharmMobileNum.setText(patientArray.get(9));
 
-                    prescriptions = hdb.getPrescriptions(patientArray.get(2));
-                    printTuples(prescriptions);
-                    if (prescriptions.size() > 0) {
-                        String[][] data = createData(prescriptions);
-                        for (int row = 0; row < data.length; row++) {
-                            prescPPTableModel.addRow(data[row]);
-                        }
-                    }
+                    prescriptions = patientPrescriptions;
+                    prescPPTableModel.setRows(prescriptions);
 
                     txtPrescNum.setText("");
                     txtPID.setText("");
@@ -1571,13 +2008,6 @@ public class HealthDBUI extends JFrame {
                 }
             }
         });
-        btnFindPrescPatient.setText("Find Patient");
-        gbc = new GridBagConstraints();
-        gbc.anchor = GridBagConstraints.LINE_START;
-        gbc.insets = new Insets(5, 5, 0, 0);
-        gbc.gridx = 4;
-        gbc.gridy = 1;
-        panelPrescriptionFinder.add(btnFindPrescPatient, gbc);
     }
 
     private void setPanelPrescriptionInfo() {
@@ -1724,10 +2154,8 @@ public class HealthDBUI extends JFrame {
         panelTest.add(lbl, gbc);
 
         /* Row 5 */
-        String cols[] = {"Test ID", "Ordered Date", "Performed Date", "Completed?"};
-        String data[][] = {};
-        testTPTableModel = new DefaultTableModel(data, cols);
-        testTPTable = new JTable(testTPTableModel);
+        testTPTableModel = createTestTableModel();
+        testTPTable = RowTableModel.createTable(testTPTableModel);
 
         paneTestTests = new JScrollPane(testTPTable);
         paneTestTests.setLayout(new ScrollPaneLayout());
@@ -1775,20 +2203,26 @@ public class HealthDBUI extends JFrame {
             public void actionPerformed(ActionEvent e) {
                 String testNum = txtTest.getText();
 
-                if (findSingleTest(testNum) == 1) {
-                    txtTest.setText("");
-                    txtPID.setText("");
-                    txtName.setText("");
-                } else {
-                    txtTest.setText("");
-                    txtPID.setText("");
-                    txtName.setText("");
+                findSingleTest(testNum, new Runnable() {
+                    @Override
+                    public void run() {
+                        txtTest.setText("");
+                        txtPID.setText("");
+                        txtName.setText("");
+                    }
+                }, new Runnable() {
+                    @Override
+                    public void run() {
+                        txtTest.setText("");
+                        txtPID.setText("");
+                        txtName.setText("");
+
+                        // Clear the data tables
+                        clearPanelData();
 
-                    // Clear the data tables
-                    clearPanelData();
-
-                    JOptionPane.showMessageDialog(frame, "Patient not found!", "Invalid Patient Error", JOptionPane.ERROR_MESSAGE);
-                }
+                        JOptionPane.showMessageDialog(frame, "Patient not found!", "Invalid Patient Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                });
             }
         });
         btnFindTestNum.setText("Find by Test Number");
@@ -1833,27 +2267,49 @@ public class HealthDBUI extends JFrame {
         btnFindTestPID.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                String pidTxt = txtPID.getText();
-                String nameTxt = txtName.getText();
+                findPatientByPIDOrName("test", txtPID.getText(), txtName.getText(), new PatientLoader() {
+                    @Override
+                    public void load(String pid) {
+                        loadPatientTests(pid, txtTest, txtPID, txtName);
+                    }
+                });
+            }
+        });
+        btnFindTestPID.setText("Find Patient");
+        gbc = new GridBagConstraints();
+        gbc.anchor = GridBagConstraints.LINE_START;
+        gbc.insets = new Insets(5, 5, 0, 0);
+        gbc.gridx = 4;
+        gbc.gridy = 1;
+        panelTestFinder.add(btnFindTestPID, gbc);
+    }
 
-                System.out.println(pidTxt + " " + nameTxt);
+    /**
+     * Loads a patient and their tests into the Tests view
+     * @param pid
+     * @param txtTest
+     * @param txtPID
+     * @param txtName
+     */
+    private void loadPatientTests(final String pid, final JTextField txtTest,
+                                  final JTextField txtPID, final JTextField txtName) {
+        runTask(new DBTask<ArrayList<String>>("test", "Loading tests for " + pid) {
+            ArrayList<LabTest> patientTests;
 
-                if (pidTxt.equals("") && !nameTxt.isEmpty()) {
-                    ArrayList<ArrayList<String>> names = hdb.getPatients(nameTxt);
-                    pidTxt = getPIDfromName(names, nameTxt);
-                    // str != null && !str.isEmpty()
-                    if (!pidTxt.equals("")) {
-                        patientArray = hdb.findPatient(pidTxt);
-                    }
-                } else if (!pidTxt.equals("")) {
-                    patientArray = hdb.findPatient(pidTxt);
+            @Override
+            protected ArrayList<String> query() {
+                ArrayList<String> patient = hdb.findPatient(pid);
+                if (patient.size() > 0) {
+                    patientTests = hdb.getTests(patient.get(2));
                 }
+                return patient;
+            }
 
-                if (patientArray.size() > 0) {
-
-                    // Clear the data tables
-                    testTPTableModel.setRowCount(0);
+            @Override
+            protected void succeeded(ArrayList<String> patient) {
+                patientArray = patient;
 
+                if (patientArray.size() > 0) {
                     patientID = patientArray.get(2);
                     String name = patientArray.get(0) + " " + patientArray.get(1);
                     String addr = patientArray.get(3) + " " + patientArray.get(4) + " " + patientArray.get(6) + " " + patientArray.get(5);
@@ -1866,14 +2322,8 @@ public class HealthDBUI extends JFrame {
                     txtLabHomeNum.setText(patientArray.get(7));
                     txtLabMobileNum.setText(patientArray.get(8));
 
-                    tests = hdb.getTests(patientArray.get(2));
-                    printTuples(tests);
-                    if (tests.size() > 0) {
-                        String[][] data = createData(tests);
-                        for (int row = 0; row < data.length; row++) {
-                            testTPTableModel.addRow(data[row]);
-                        }
-                    }
+                    tests = patientTests;
+                    testTPTableModel.setRows(tests);
                     txtTest.setText("");
                     txtPID.setText("");
                     txtName.setText("");
@@ -1889,13 +2339,6 @@ public class HealthDBUI extends JFrame {
                 }
             }
         });
-        btnFindTestPID.setText("Find Patient");
-        gbc = new GridBagConstraints();
-        gbc.anchor = GridBagConstraints.LINE_START;
-        gbc.insets = new Insets(5, 5, 0, 0);
-        gbc.gridx = 4;
-        gbc.gridy = 1;
-        panelTestFinder.add(btnFindTestPID, gbc);
     }
 
     private void setPanelTestInfo() {
@@ -2024,19 +2467,33 @@ public class HealthDBUI extends JFrame {
                                 + " " + dWBcc.getText() + " " + dRBcc.getText() + " " + dHema.getText() + " " + dPlate.getText()
                                 + " " + dNRPer.getText() + " " + dNRAbs.getText() + " " + dSod.getText() + " " + dGlu.getText()
                                 + " " + dPhos.getText() + " " + dLabHID.getText());
-                        if (hdb.updateTest(testID,
-                                dChol.getText(), dHDL.getText(), dLDL.getText(), dTrig.getText(),
+                        final String[] values = {dChol.getText(), dHDL.getText(), dLDL.getText(), dTrig.getText(),
                                 dWBcc.getText(), dRBcc.getText(), dHema.getText(), dPlate.getText(),
                                 dNRPer.getText(), dNRAbs.getText(), dSod.getText(), dGlu.getText(),
-                                dPhos.getText(), dLabHID.getText())) {
-                            JOptionPane.showMessageDialog(frame, "Test edited for " + name + "\nTest ID: " + testID,
-                                    "Edit Test for " + name, JOptionPane.INFORMATION_MESSAGE);
+                                dPhos.getText(), dLabHID.getText()};
+                        runTask(new DBTask<Boolean>(null, "Editing test " + testID) {
+                            @Override
+                            protected Boolean query() {
+                                return hdb.updateTest(testID,
+                                        values[0], values[1], values[2], values[3],
+                                        values[4], values[5], values[6], values[7],
+                                        values[8], values[9], values[10], values[11],
+                                        values[12], values[13]);
+                            }
 
-                            findSingleTest(testID);
-                        } else {
-                            JOptionPane.showMessageDialog(frame, "Failed to edit test for " + name + "\nTest ID: " + testID,
-                                    "Edit Test for " + name, JOptionPane.ERROR_MESSAGE);
-                        }
+                            @Override
+                            protected void succeeded(Boolean updated) {
+                                if (updated) {
+                                    JOptionPane.showMessageDialog(frame, "Test edited for " + name + "\nTest ID: " + testID,
+                                            "Edit Test for " + name, JOptionPane.INFORMATION_MESSAGE);
+
+                                    findSingleTest(testID, null, null);
+                                } else {
+                                    JOptionPane.showMessageDialog(frame, "Failed to edit test for " + name + "\nTest ID: " + testID,
+                                            "Edit Test for " + name, JOptionPane.ERROR_MESSAGE);
+                                }
+                            }
+                        });
                     } else {
                         System.out.println("No value entered");
                     }
@@ -2180,8 +2637,21 @@ public class HealthDBUI extends JFrame {
 
         /* Row 10 */
         String colsIH[] = {"Invoice ID", "Invoice Item", "Creation Date", "Due Date", "Status", "Balance"};
-        invoiceHistoryGridTableModel = new DefaultTableModel(data, colsIH);
-        invoiceHistoryGridTable = new JTable(invoiceHistoryGridTableModel);
+        Class<?> classesIH[] = {Long.class, String.class, LocalDate.class, LocalDate.class, String.class, Double.class};
+        invoiceHistoryGridTableModel = new RowTableModel<Invoice>(colsIH, classesIH) {
+            @Override
+            protected Object getValueAt(Invoice invoice, int column) {
+                switch (column) {
+                    case 0: return invoice.getInvoiceID();
+                    case 1: return invoice.getInvoiceItem();
+                    case 2: return invoice.getCreationDate();
+                    case 3: return invoice.getDueDate();
+                    case 4: return invoice.getPaymentStatus();
+                    default: return invoice.getAmountOwing();
+                }
+            }
+        };
+        invoiceHistoryGridTable = RowTableModel.createTable(invoiceHistoryGridTableModel);
 
         paneInvoiceHistoryGrid = new JScrollPane(invoiceHistoryGridTable);
         paneInvoiceHistoryGrid.setLayout(new ScrollPaneLayout());
@@ -2239,12 +2709,21 @@ public class HealthDBUI extends JFrame {
                 monthlyInvoiceSummaryTableModel.setRowCount(0);
 
                 if (patientArray.size() > 0) {
-                    monthlyInvoiceSummaryArray = hdb.getOwingInvoicesMonthlySummary(patientID);
-                    printTuples(monthlyInvoiceSummaryArray);
-                    String[][] data = createData(monthlyInvoiceSummaryArray);
-                    for (int row = 0; row < data.length; row++) {
-                        monthlyInvoiceSummaryTableModel.addRow(data[row]);
-                    }
+                    final String pid = patientID;
+                    runTask(new DBTask<ArrayList<ArrayList<String>>>("monthlySummary", "Loading monthly summary") {
+                        @Override
+                        protected ArrayList<ArrayList<String>> query() {
+                            return hdb.getOwingInvoicesMonthlySummary(pid);
+                        }
+
+                        @Override
+                        protected void succeeded(ArrayList<ArrayList<String>> result) {
+                            monthlyInvoiceSummaryTableModel.setRowCount(0);
+                            monthlyInvoiceSummaryArray = result;
+                            printTuples(monthlyInvoiceSummaryArray);
+                            updateTable(monthlyInvoiceSummaryArray, monthlyInvoiceSummaryTableModel);
+                        }
+                    });
                 } else {
                     monthlyInvoiceSummaryTableModel.setRowCount(0);
                 }
@@ -2372,8 +2851,19 @@ public class HealthDBUI extends JFrame {
                 txtTotalOverDue.setText("");
 
                 if (patientArray.size() > 0) {
-                    txtTotalUnpaid.setText(Double.toString((hdb.getAmountOwing(patientID))));
-                    txtTotalOverDue.setText(Double.toString(hdb.getOverdueAmountOwing(patientID)));
+                    final String pid = patientID;
+                    runTask(new DBTask<double[]>("invoiceTotals", "Updating totals") {
+                        @Override
+                        protected double[] query() {
+                            return new double[]{hdb.getAmountOwing(pid), hdb.getOverdueAmountOwing(pid)};
+                        }
+
+                        @Override
+                        protected void succeeded(double[] totals) {
+                            txtTotalUnpaid.setText(Double.toString(totals[0]));
+                            txtTotalOverDue.setText(Double.toString(totals[1]));
+                        }
+                    });
                 } else {
                     txtTotalUnpaid.setText("");
                     txtTotalOverDue.setText("");
@@ -2453,112 +2943,18 @@ public class HealthDBUI extends JFrame {
         btnFindPlanPatientID.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-
-                String pidTxt = txtPID.getText();
-                String nameTxt = txtName.getText();
-
-                System.out.println(pidTxt + " " + nameTxt);
-
-                if (pidTxt.equals("") && !nameTxt.isEmpty()) {
-                    ArrayList<ArrayList<String>> names = hdb.getPatients(nameTxt);
-                    pidTxt = getPIDfromName(names, nameTxt);
-
-                    if (!pidTxt.equals("")) {
-                        patientArray = hdb.findPatient(pidTxt);
-                    }
-                } else if (!pidTxt.equals("")) {
-                    patientArray = hdb.findPatient(pidTxt);
-                }
-
-                planArray = hdb.getPlan(pidTxt);
-
-                if (patientArray.size() > 0) {
-
-                    // Clear the data tables
-                    extendedBenefitsTableModel.setRowCount(0);
-                    invoiceHistoryGridTableModel.setRowCount(0);
-                    monthlyInvoiceSummaryTableModel.setRowCount(0);
-
-                    txtTotalOverDue.setText("");
-                    txtTotalUnpaid.setText("");
-
-                    txtPlanSumName.setText("");
-                    txtPlanSumPID.setText("");
-                    txtPlanSumAddress.setText("");
-                    txtPlanSumMobilePhone.setText("");
-                    txtPlanSumHomePhone.setText("");
-
-                    txtPlanID.setText("");
-                    txtStartDate.setText("");
-                    txtPolicyType.setText("");
-                    txtEndDate.setText("");
-
-                    patientID = patientArray.get(2);
-                    String name = patientArray.get(0) + " " + patientArray.get(1);
-                    String addr = patientArray.get(3) + " " + patientArray.get(4) + " " + patientArray.get(6) + " " + patientArray.get(5);
-                    String mobile = patientArray.get(9);
-                    String home = patientArray.get(8);
-
-                    System.out.println(patientArray.get(2) + ", " + name);
-
-                    txtPlanSumName.setText(name);
-                    txtPlanSumPID.setText(patientID);
-                    txtPlanSumAddress.setText(addr);
-                    txtPlanSumMobilePhone.setText(mobile);
-                    txtPlanSumHomePhone.setText(home);
-
-                    if(planArray.size() > 0)
-                    {
-                        txtPlanID.setText(planArray.get(0));
-                        txtStartDate.setText(planArray.get(1));
-                        txtPolicyType.setText(planArray.get(2));
-                        txtEndDate.setText(planArray.get(3));
-                    }
-
-                    extendedBenefitsArray = hdb.getExtendedBenefits(patientArray.get(2));
-                    printTuples(extendedBenefitsArray);
-                    if (extendedBenefitsArray.size() > 0) {
-                        String[][] data = createData(extendedBenefitsArray);
-                        for (int row = 0; row < data.length; row++) {
-                            extendedBenefitsTableModel.addRow(data[row]);
-                        }
-                    }
-
-                    invoiceHistoryGridArray = hdb.getInvoices(patientArray.get(2));
-                    printTuples(invoiceHistoryGridArray);
-                    if (invoiceHistoryGridArray.size() > 0) {
-                        String[][] data = createData(invoiceHistoryGridArray);
-                        for (int row = 0; row < data.length; row++) {
-                            invoiceHistoryGridTableModel.addRow(data[row]);
-                        }
+                final JTextField[] inputs = {txtName, txtPID, txtNum, txtInvoiceNumber};
+                findPatientByPIDOrName("planSummary", txtPID.getText(), txtName.getText(), new PatientLoader() {
+                    @Override
+                    public void load(final String pid) {
+                        runTask(new PlanSummaryTask(inputs, "Plan Summary not found!", "Invalid Patient ID Error") {
+                            @Override
+                            protected String findPatientID() {
+                                return pid;
+                            }
+                        });
                     }
-
-                    txtName.setText("");
-                    txtPID.setText("");
-                    txtNum.setText("");
-                    txtInvoiceNumber.setText("");
-
-                    txtTotalUnpaid.setText(Double.toString((hdb.getAmountOwing(patientID))));
-                    txtTotalOverDue.setText(Double.toString(hdb.getOverdueAmountOwing(patientID)));
-
-                } else {
-                    txtName.setText("");
-                    txtPID.setText("");
-                    txtNum.setText("");
-                    txtInvoiceNumber.setText("");
-
-                    txtTotalUnpaid.setText("");
-                    txtTotalOverDue.setText("");
-
-                    clearPanelData();
-
-                    // Clear the data tables
-                    extendedBenefitsTableModel.setRowCount(0);
-                    invoiceHistoryGridTableModel.setRowCount(0);
-                    monthlyInvoiceSummaryTableModel.setRowCount(0);
-
-                    JOptionPane.showMessageDialog(frame, "Plan Summary not found!", "Invalid Patient ID Error", JOptionPane.ERROR_MESSAGE);
-                }
+                });
             }
         });
         btnFindPlanPatientID.setText("Find Patient");
@@ -2574,96 +2970,15 @@ public class HealthDBUI extends JFrame {
         btnFindPlanSumPlanNum.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-
-                planNumArray = hdb.findPlan(txtNum.getText());
-
-                if (planNumArray.size() > 0) {
-
-                    // Clear the data tables
-                    extendedBenefitsTableModel.setRowCount(0);
-                    invoiceHistoryGridTableModel.setRowCount(0);
-                    monthlyInvoiceSummaryTableModel.setRowCount(0);
-
-                    txtTotalOverDue.setText("");
-                    txtTotalUnpaid.setText("");
-
-                    txtPlanSumName.setText("");
-                    txtPlanSumPID.setText("");
-                    txtPlanSumAddress.setText("");
-                    txtPlanSumMobilePhone.setText("");
-                    txtPlanSumHomePhone.setText("");
-
-                    txtPlanID.setText("");
-                    txtStartDate.setText("");
-                    txtPolicyType.setText("");
-                    txtEndDate.setText("");
-
-                    patientID = planNumArray.get(3);
-
-                    if (!patientID.equals("")) {
-                        patientArray = hdb.findPatient(patientID);
+                final JTextField[] inputs = {txtName, txtPID, txtNum, txtInvoiceNumber};
+                final String planNum = txtNum.getText();
+                runTask(new PlanSummaryTask(inputs, "Plan Summary not found!", "Invalid Plan Number Error") {
+                    @Override
+                    protected String findPatientID() {
+                        ArrayList<String> plan = hdb.findPlan(planNum);
+                        return plan.size() > 0 ? plan.get(3) : "";
                     }
-
-                    String name = patientArray.get(0) + " " + patientArray.get(1);
-                    String addr = patientArray.get(3) + " " + patientArray.get(4) + " " + patientArray.get(6) + " " + patientArray.get(5);
-                    String mobile = patientArray.get(9);
-                    String home = patientArray.get(8);
-
-                    txtPlanSumName.setText(name);
-                    txtPlanSumPID.setText(patientID);
-                    txtPlanSumAddress.setText(addr);
-                    txtPlanSumMobilePhone.setText(mobile);
-                    txtPlanSumHomePhone.setText(home);
-
-                    planArray = hdb.getPlan(patientID);
-
-                    if(planArray.size() > 0) {
-                        txtPlanID.setText(planArray.get(0));
-                        txtStartDate.setText(planArray.get(1));
-                        txtPolicyType.setText(planArray.get(2));
-                        txtEndDate.setText(planArray.get(3));
-                    }
-
-                    extendedBenefitsArray = hdb.getExtendedBenefits(patientArray.get(2));
-                    printTuples(extendedBenefitsArray);
-                    if (extendedBenefitsArray.size() > 0) {
-                        String[][] data = createData(extendedBenefitsArray);
-                        for (int row = 0; row < data.length; row++) {
-                            extendedBenefitsTableModel.addRow(data[row]);
-                        }
-                    }
-
-                    invoiceHistoryGridArray = hdb.getInvoices(patientArray.get(2));
-                    printTuples(invoiceHistoryGridArray);
-                    if (invoiceHistoryGridArray.size() > 0) {
-                        String[][] data = createData(invoiceHistoryGridArray);
-                        for (int row = 0; row < data.length; row++) {
-                            invoiceHistoryGridTableModel.addRow(data[row]);
-                        }
-                    }
-
-                    txtName.setText("");
-                    txtPID.setText("");
-                    txtNum.setText("");
-                    txtInvoiceNumber.setText("");
-                    txtTotalUnpaid.setText(Double.toString((hdb.getAmountOwing(patientID))));
-                    txtTotalOverDue.setText(Double.toString(hdb.getOverdueAmountOwing(patientID)));
-
-                } else {
-                    txtName.setText("");
-                    txtPID.setText("");
-                    txtNum.setText("");
-                    txtInvoiceNumber.setText("");
-
-                    clearPanelData();
-
-                    // Clear the data tables
-                    extendedBenefitsTableModel.setRowCount(0);
-                    invoiceHistoryGridTableModel.setRowCount(0);
-                    monthlyInvoiceSummaryTableModel.setRowCount(0);
-
-                    JOptionPane.showMessageDialog(frame, "Plan Summary not found!", "Invalid Plan Number Error", JOptionPane.ERROR_MESSAGE);
-                }
+                });
             }
         });
         btnFindPlanSumPlanNum.setText("Find by Plan Number");
@@ -2679,88 +2994,14 @@ public class HealthDBUI extends JFrame {
         btnFindPlanInvoiceNum.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                patientID = hdb.findPIDfromInvoice(txtInvoiceNumber.getText());
-                patientArray = hdb.findPatient(patientID);
-
-                if (patientArray.size() > 0) {
-
-                    // Clear the data tables
-                    extendedBenefitsTableModel.setRowCount(0);
-                    invoiceHistoryGridTableModel.setRowCount(0);
-                    monthlyInvoiceSummaryTableModel.setRowCount(0);
-                    txtTotalOverDue.setText("");
-                    txtTotalUnpaid.setText("");
-                    txtPlanSumName.setText("");
-                    txtPlanSumPID.setText("");
-                    txtPlanSumAddress.setText("");
-                    txtPlanSumMobilePhone.setText("");
-                    txtPlanSumHomePhone.setText("");
-                    txtPlanID.setText("");
-                    txtStartDate.setText("");
-                    txtPolicyType.setText("");
-                    txtEndDate.setText("");
-
-                    String name = patientArray.get(0) + " " + patientArray.get(1);
-                    String addr = patientArray.get(3) + " " + patientArray.get(4) + " " + patientArray.get(6) + " " + patientArray.get(5);
-                    String mobile = patientArray.get(9);
-                    String home = patientArray.get(8);
-
-                    txtPlanSumName.setText(name);
-                    txtPlanSumPID.setText(patientID);
-                    txtPlanSumAddress.setText(addr);
-                    txtPlanSumMobilePhone.setText(mobile);
-                    txtPlanSumHomePhone.setText(home);
-
-                    planArray = hdb.getPlan(patientID);
-
-                    if(planArray.size() > 0) {
-                        txtPlanID.setText(planArray.get(0));
-                        txtStartDate.setText(planArray.get(1));
-                        txtPolicyType.setText(planArray.get(2));
-                        txtEndDate.setText(planArray.get(3));
-                    }
-                    
-                    extendedBenefitsArray = hdb.getExtendedBenefits(patientArray.get(2));
-                    printTuples(extendedBenefitsArray);
-
-                    if (extendedBenefitsArray.size() > 0) {
-                    	String[][] data = createData(extendedBenefitsArray);
-                    	for(int row = 0; row < data.length; row++) {
-                    		extendedBenefitsTableModel.addRow(data[row]);
-                    	}
+                final JTextField[] inputs = {txtName, txtPID, txtNum, txtInvoiceNumber};
+                final String invoiceNum = txtInvoiceNumber.getText();
+                runTask(new PlanSummaryTask(inputs, "Invoice not found!", "Invalid Invoice Number Error") {
+                    @Override
+                    protected String findPatientID() {
+                        return hdb.findPIDfromInvoice(invoiceNum);
                     }
-
-                    invoiceHistoryGridArray = hdb.getInvoices(patientArray.get(2));
-                    printTuples(invoiceHistoryGridArray);
-                    if (invoiceHistoryGridArray.size() > 0) {
-                        String[][] data = createData(invoiceHistoryGridArray);
-                        for (int row = 0; row < data.length; row++) {
-                            invoiceHistoryGridTableModel.addRow(data[row]);
-                        }
-                    }
-
-                    txtName.setText("");
-                    txtPID.setText("");
-                    txtNum.setText("");
-                    txtInvoiceNumber.setText("");
-
-                    txtTotalUnpaid.setText(Double.toString((hdb.getAmountOwing(patientID))));
-                    txtTotalOverDue.setText(Double.toString(hdb.getOverdueAmountOwing(patientID)));
-
-                } else {
-                    txtName.setText("");
-                    txtPID.setText("");
-                    txtNum.setText("");
-                    txtInvoiceNumber.setText("");
-
-                    clearPanelData();
-                    // Clear the data tables
-                    extendedBenefitsTableModel.setRowCount(0);
-                    invoiceHistoryGridTableModel.setRowCount(0);
-                    monthlyInvoiceSummaryTableModel.setRowCount(0);
-
-                    JOptionPane.showMessageDialog(frame, "Invoice not found!", "Invalid Invoice Number Error", JOptionPane.ERROR_MESSAGE);
-                }
+                });
             }
         });
         btnFindPlanInvoiceNum.setText("Find by Invoice Number");
@@ -2773,6 +3014,113 @@ public class HealthDBUI extends JFrame {
         panelPlanSummaryFinder.add(btnFindPlanInvoiceNum, gbc);
     }
 
+    /**
+     * Loads everything shown on the Plan Summary view for one patient. Subclasses
+     * decide how the patient is found (by PID, plan number or invoice number).
+     */
+    private abstract class PlanSummaryTask extends DBTask<PlanSummary> {
+        private final JTextField[] inputs;
+        private final String notFoundMessage;
+        private final String notFoundTitle;
+
+        private String pid;
+
+        /**
+         * @param inputs          - finder text fields, cleared once the task finishes
+         * @param notFoundMessage
+         * @param notFoundTitle
+         */
+        PlanSummaryTask(JTextField[] inputs, String notFoundMessage, String notFoundTitle) {
+            super("planSummary", "Loading plan summary");
+            this.inputs = inputs;
+            this.notFoundMessage = notFoundMessage;
+            this.notFoundTitle = notFoundTitle;
+        }
+
+        /**
+         * Looks up the patient ID, runs in the background
+         * @return the patient ID, or the empty string if there is no such patient
+         */
+        protected abstract String findPatientID();
+
+        @Override
+        protected PlanSummary query() {
+            pid = findPatientID();
+            if (pid.equals("")) {
+                return new PlanSummary();
+            }
+            return hdb.loadPlanSummary(pid);
+        }
+
+        @Override
+        protected void succeeded(PlanSummary summary) {
+            for (JTextField input : inputs) {
+                input.setText("");
+            }
+
+            if (summary.isFound()) {
+                patientID = pid;
+                showPlanSummary(summary);
+            } else {
+                clearPanelData();
+
+                JOptionPane.showMessageDialog(frame, notFoundMessage, notFoundTitle, JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Fills the Plan Summary view for the current patient
+     * @param summary
+     */
+    private void showPlanSummary(PlanSummary summary) {
+        patientArray = summary.getPatient();
+        planArray = summary.getPlan();
+        extendedBenefitsArray = summary.getExtendedBenefits();
+        invoiceHistoryGridArray = summary.getInvoices();
+        monthlyInvoiceSummaryArray = summary.getMonthlySummary();
+
+        // Clear the data tables
+        extendedBenefitsTableModel.setRowCount(0);
+        monthlyInvoiceSummaryTableModel.setRowCount(0);
+
+        txtPlanID.setText("");
+        txtStartDate.setText("");
+        txtPolicyType.setText("");
+        txtEndDate.setText("");
+
+        String name = patientArray.get(0) + " " + patientArray.get(1);
+        String addr = patientArray.get(3) + " " + patientArray.get(4) + " " + patientArray.get(6) + " " + patientArray.get(5);
+        String mobile = patientArray.get(9);
+        String home = patientArray.get(8);
+
+        System.out.println(patientArray.get(2) + ", " + name);
+
+        txtPlanSumName.setText(name);
+        txtPlanSumPID.setText(patientID);
+        txtPlanSumAddress.setText(addr);
+        txtPlanSumMobilePhone.setText(mobile);
+        txtPlanSumHomePhone.setText(home);
+
+        if (planArray.size() > 0) {
+            txtPlanID.setText(planArray.get(0));
+            txtStartDate.setText(planArray.get(1));
+            txtPolicyType.setText(planArray.get(2));
+            txtEndDate.setText(planArray.get(3));
+        }
+
+        printTuples(extendedBenefitsArray);
+        updateTable(extendedBenefitsArray, extendedBenefitsTableModel);
+
+        invoiceHistoryGridTableModel.setRows(invoiceHistoryGridArray);
+
+        printTuples(monthlyInvoiceSummaryArray);
+        updateTable(monthlyInvoiceSummaryArray, monthlyInvoiceSummaryTableModel);
+
+        txtTotalUnpaid.setText(Double.toString(summary.getAmountOwing()));
+        txtTotalOverDue.setText(Double.toString(summary.getOverdueAmountOwing()));
+    }
+
     private void setPanelPlanSummaryInfo() {
         JLabel lbl = new JLabel("Name:");
         gbc = new GridBagConstraints();
@@ -2884,23 +3232,38 @@ public class HealthDBUI extends JFrame {
                     int resp = JOptionPane.showConfirmDialog(frame, fields, "Create invoice for " + name, JOptionPane.OK_CANCEL_OPTION);
 
                     if (resp == JOptionPane.OK_OPTION) {
-                        String invoiceItem = aInvoiceItem.getText();
-                        String dueDate = aDueDate.getText();
-                        String paymentStatus = aPaymentStatus.getSelectedItem().toString();
-                        String paymentDate = aPaymentDate.getText();
-                        String paymentMethod = aPaymentMethod.getSelectedItem().toString();
-                        String amountOwing = aAmountOwing.getText();
-                        planID = hdb.getPlan(patientID).get(0);
-
-                        System.out.println(patientID + " " + invoiceItem + " " + dueDate + " " + paymentStatus + " " + paymentDate + " " + paymentMethod + " " + amountOwing + " " + planID);
-
-                        hdb.createInvoice(patientID, invoiceItem, dueDate, paymentStatus,
-                                paymentDate, paymentMethod, amountOwing, planID);
-
-                        // Clear and update the table with new data
-                        invoiceHistoryGridTableModel.setRowCount(0);
-                        invoiceHistoryGridArray = hdb.getInvoices(patientID);
-                        updateTable(invoiceHistoryGridArray, invoiceHistoryGridTableModel);
+                        final String invoiceItem = aInvoiceItem.getText();
+                        final String dueDate = aDueDate.getText();
+                        final String paymentStatus = aPaymentStatus.getSelectedItem().toString();
+                        final String paymentDate = aPaymentDate.getText();
+                        final String paymentMethod = aPaymentMethod.getSelectedItem().toString();
+                        final String amountOwing = aAmountOwing.getText();
+                        final String pid = patientID;
+
+                        runTask(new DBTask<PlanSummary>(null, "Creating invoice for " + name) {
+                            String plan;
+
+                            @Override
+                            protected PlanSummary query() {
+                                plan = hdb.getPlan(pid).get(0);
+
+                                System.out.println(pid + " " + invoiceItem + " " + dueDate + " " + paymentStatus + " " + paymentDate + " " + paymentMethod + " " + amountOwing + " " + plan);
+
+                                hdb.createInvoice(pid, invoiceItem, dueDate, paymentStatus,
+                                        paymentDate, paymentMethod, amountOwing, plan);
+                                return hdb.loadPlanSummary(pid);
+                            }
+
+                            @Override
+                            protected void succeeded(PlanSummary summary) {
+                                planID = plan;
+
+                                // Refresh the invoices and totals with the new data
+                                if (summary.isFound()) {
+                                    showPlanSummary(summary);
+                                }
+                            }
+                        });
                     } else {
                         System.out.println("No values entered");
                     }
@@ -2916,54 +3279,20 @@ public class HealthDBUI extends JFrame {
         btnUpdateInvoice.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                JTextField aInvoiceItem = new JTextField();
-                JTextField aDueDate = new JTextField();
-                JTextField aPaymentDate = new JTextField();
-                JTextField aAmountOwing = new JTextField();
-                JComboBox<String> aPaymentStatus = new JComboBox<>(paymentStatus);
-                JComboBox<String> aPaymentMethod = new JComboBox<>(paymentMethod);
-
                 if (patientArray.size() > 0) {
                     int row = invoiceHistoryGridTable.getSelectedRow();
-                    String invoiceID = invoiceHistoryGridTableModel.getValueAt(row, 0).toString();
-                    ArrayList<String> tuple = hdb.findInvoice(invoiceID);
-
-                    String name = patientArray.get(0) + " " + patientArray.get(1);
-
-                    aInvoiceItem.setText(tuple.get(1));
-                    aDueDate.setText(tuple.get(2));
-                    //aPaymentDate.setText(tuple.get(4));
-                    aAmountOwing.setText(tuple.get(6));
-
-                    Object[] fields = {"Patient: " + name, "Invoice Item: ", aInvoiceItem, "Due Date (YYYY-MM-DD): ", aDueDate, "Payment Status: ", aPaymentStatus, "Payment Date (YYYY-MM-DD): ",
-                            aPaymentDate, "Payment Method: ", aPaymentMethod, "Amount Owing: ", aAmountOwing};
-
-                    int resp = JOptionPane.showConfirmDialog(frame, fields, "Update invoice for " + name, JOptionPane.OK_CANCEL_OPTION);
-
-                    if (resp == JOptionPane.OK_OPTION) {
-                        String invoiceItem = aInvoiceItem.getText();
-                        String dueDate = aDueDate.getText().substring(0, 10);
-                        String paymentStatus = aPaymentStatus.getSelectedItem().toString();
-                        String paymentDate = aPaymentDate.getText();
-                        String paymentMethod = aPaymentMethod.getSelectedItem().toString();
-                        String amountOwing = aAmountOwing.getText();
-                        planID = hdb.getPlan(patientID).get(0);
-
-                        System.out.println(patientID + " " + invoiceItem + " " + dueDate + " " + paymentStatus + " " + paymentDate + " " + paymentMethod + " " + amountOwing + " " + planID);
-
-                        if(hdb.updateInvoice(invoiceID, dueDate, invoiceItem, paymentStatus, paymentDate, paymentMethod, amountOwing)) {
-                            JOptionPane.showMessageDialog(frame, "Invoice updated!", "Update Invoice", JOptionPane.INFORMATION_MESSAGE);
-                        } else {
-                            JOptionPane.showMessageDialog(frame, "Invoice update failed!", "Error", JOptionPane.ERROR_MESSAGE);
+                    final String invoiceID = invoiceHistoryGridTableModel.getValueAt(row, 0).toString();
+                    runTask(new DBTask<ArrayList<String>>("invoice", "Loading invoice " + invoiceID) {
+                        @Override
+                        protected ArrayList<String> query() {
+                            return hdb.findInvoice(invoiceID);
                         }
 
-                        // Clear and update the table with new data
-                        invoiceHistoryGridTableModel.setRowCount(0);
-                        invoiceHistoryGridArray = hdb.getInvoices(patientID);
-                        updateTable(invoiceHistoryGridArray, invoiceHistoryGridTableModel);
-                    } else {
-                        System.out.println("No values entered");
-                    }
+                        @Override
+                        protected void succeeded(ArrayList<String> tuple) {
+                            updateInvoice(invoiceID, tuple);
+                        }
+                    });
                 } else {
                     JOptionPane.showMessageDialog(frame, "No Invoice selected!", "Error", JOptionPane.ERROR_MESSAGE);
                 }
@@ -2985,11 +3314,110 @@ public class HealthDBUI extends JFrame {
     }
 
     /**
-     * Prints out invoice data to a dialog box
+     * Asks for the new invoice values and updates the invoice in the background
+     * @param invoiceID
+     * @param tuple - current values of the invoice
+     */
+    private void updateInvoice(final String invoiceID, ArrayList<String> tuple) {
+        JTextField aInvoiceItem = new JTextField();
+        JTextField aDueDate = new JTextField();
+        JTextField aPaymentDate = new JTextField();
+        JTextField aAmountOwing = new JTextField();
+        JComboBox<String> aPaymentStatus = new JComboBox<>(paymentStatus);
+        JComboBox<String> aPaymentMethod = new JComboBox<>(paymentMethod);
+
+        String name = patientArray.get(0) + " " + patientArray.get(1);
+
+        aInvoiceItem.setText(tuple.get(1));
+        aDueDate.setText(tuple.get(2));
+        //aPaymentDate.setText(tuple.get(4));
+        aAmountOwing.setText(tuple.get(6));
+
+        Object[] fields = {"Patient: " + name, "Invoice Item: ", aInvoiceItem, "Due Date (YYYY-MM-DD): ", aDueDate, "Payment Status: ", aPaymentStatus, "Payment Date (YYYY-MM-DD): ",
+                aPaymentDate, "Payment Method: ", aPaymentMethod, "Amount Owing: ", aAmountOwing};
+
+        int resp = JOptionPane.showConfirmDialog(frame, fields, "Update invoice for " + name, JOptionPane.OK_CANCEL_OPTION);
+
+        if (resp == JOptionPane.OK_OPTION) {
+            final String invoiceItem = aInvoiceItem.getText();
+            final String dueDate = aDueDate.getText().substring(0, 10);
+            final String paymentStatus = aPaymentStatus.getSelectedItem().toString();
+            final String paymentDate = aPaymentDate.getText();
+            final String paymentMethod = aPaymentMethod.getSelectedItem().toString();
+            final String amountOwing = aAmountOwing.getText();
+            final String pid = patientID;
+
+            runTask(new DBTask<PlanSummary>(null, "Updating invoice " + invoiceID) {
+                String plan;
+                boolean updated;
+
+                @Override
+                protected PlanSummary query() {
+                    plan = hdb.getPlan(pid).get(0);
+
+                    System.out.println(pid + " " + invoiceItem + " " + dueDate + " " + paymentStatus + " " + paymentDate + " " + paymentMethod + " " + amountOwing + " " + plan);
+
+                    updated = hdb.updateInvoice(invoiceID, dueDate, invoiceItem, paymentStatus, paymentDate, paymentMethod, amountOwing);
+                    return hdb.loadPlanSummary(pid);
+                }
+
+                @Override
+                protected void succeeded(PlanSummary summary) {
+                    planID = plan;
+
+                    if (updated) {
+                        JOptionPane.showMessageDialog(frame, "Invoice updated!", "Update Invoice", JOptionPane.INFORMATION_MESSAGE);
+                    } else {
+                        JOptionPane.showMessageDialog(frame, "Invoice update failed!", "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+
+                    // Refresh the invoices and totals with the new data
+                    if (summary.isFound()) {
+                        showPlanSummary(summary);
+                    }
+                }
+            });
+        } else {
+            System.out.println("No values entered");
+        }
+    }
+
+    /**
+     * Loads the selected invoice in the background and shows it in a dialog box
      * @param table
      * @param tableModel
      */
-    private void viewInvoiceData(JTable table, DefaultTableModel tableModel) {
+    private void viewInvoiceData(JTable table, RowTableModel<Invoice> tableModel) {
+        if (patientArray.size() > 0) {
+            int row = table.getSelectedRow();
+
+            if (row >= 0) {
+                final String invoiceID = tableModel.getValueAt(row, 0).toString();
+                runTask(new DBTask<ArrayList<String>>("invoice", "Loading invoice " + invoiceID) {
+                    @Override
+                    protected ArrayList<String> query() {
+                        return hdb.findInvoice(invoiceID);
+                    }
+
+                    @Override
+                    protected void succeeded(ArrayList<String> invoiceData) {
+                        showInvoiceData(invoiceID, invoiceData);
+                    }
+                });
+            } else {
+                JOptionPane.showMessageDialog(frame, "Please select an invoice from the Invoice table.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        } else {
+            JOptionPane.showMessageDialog(frame, "No invoice selected!", "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Prints out invoice data to a dialog box
+     * @param invoiceID
+     * @param testData - invoice tuple from findInvoice
+     */
+    private void showInvoiceData(String invoiceID, ArrayList<String> testData) {
 
         JTextField aPatientID = new JTextField();
         JTextField aInvoiceItem = new JTextField();
@@ -3005,12 +3433,7 @@ public class HealthDBUI extends JFrame {
         if (patientArray.size() > 0) {
             String name = patientArray.get(0) + " " + patientArray.get(1);
 
-            int row = table.getSelectedRow();
-
-            if (row >= 0) {
-                String invoiceID = tableModel.getValueAt(row, 0).toString();
-                ArrayList<String> testData = hdb.findInvoice(invoiceID);
-
+            if (testData.size() > 0) {
                 aPatientID.setEditable(false);
                 aInvoiceItem.setEditable(false);
                 aDueDate.setEditable(false);
@@ -3040,7 +3463,7 @@ public class HealthDBUI extends JFrame {
 
                 JOptionPane.showMessageDialog(frame, data, "Invoice ID # " + invoiceID + " for Patient " + name, JOptionPane.PLAIN_MESSAGE);
             } else {
-                JOptionPane.showMessageDialog(frame, "Please select an invoice from the Invoice table.", "Error", JOptionPane.ERROR_MESSAGE);
+                JOptionPane.showMessageDialog(frame, "Invoice " + invoiceID + " not found!", "Error", JOptionPane.ERROR_MESSAGE);
             }
         } else {
             JOptionPane.showMessageDialog(frame, "No invoice selected!", "Error", JOptionPane.ERROR_MESSAGE);
@@ -0,0 +1,144 @@
+import java.sql.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h2>IdAllocator</h2>
+ * Hands out primary keys for one table. IDs are reserved from a database sequence
+ * in blocks (the sequence's INCREMENT BY is the block size), so every app instance
+ * gets its own range and only one round trip is needed per block. Within a block
+ * IDs are dispensed from an AtomicLong without locking.
+ * <p>
+ * If the sequence does not exist (schema created before the sequences were added
+ * to setupdb.sql) the allocator falls back to seeding a local counter from
+ * max(ID) + 1, which is only safe with a single app instance.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class IdAllocator {
+    private final ConnectionPool pool;
+    private final StorageBackend backend;
+    private final String sequenceName;
+    private final String table;
+    private final String column;
+
+    /** Current block, replaced as a whole when it runs out */
+    private volatile Block block = new Block(0, 0);
+    /** Size of each reserved block, read from the sequence on first use. 0 until initialized */
+    private long blockSize = 0;
+    /** True if the sequence is missing and IDs come from a local counter */
+    private boolean localFallback = false;
+    /** First ID of the local counter when the sequence is missing */
+    private long localStart;
+
+    /**
+     * @param pool         - pool the statements are prepared through
+     * @param backend      - database the sequence is in, for its sequence SQL
+     * @param sequenceName - sequence to reserve blocks from
+     * @param table        - table the IDs are for, used by the fallback
+     * @param column       - ID column, used by the fallback
+     */
+    public IdAllocator(ConnectionPool pool, StorageBackend backend, String sequenceName, String table,
+                       String column) {
+        this.pool = pool;
+        this.backend = backend;
+        this.sequenceName = sequenceName;
+        this.table = table;
+        this.column = column;
+    }
+
+    /**
+     * Returns the next unused ID. Only goes to the database when the current
+     * block is used up.
+     *
+     * @param con - connection the caller already borrowed from the pool
+     * @return a new unique ID
+     * @throws SQLException if a new block cannot be reserved
+     */
+    public long next(Connection con) throws SQLException {
+        while (true) {
+            Block b = block;
+            long id = b.next.getAndIncrement();
+            if (id < b.end) {
+                return id;
+            }
+            refill(con, b);
+        }
+    }
+
+    /**
+     * Reserves a new block unless another thread already replaced the exhausted one
+     *
+     * @param con       - connection the caller already borrowed from the pool
+     * @param exhausted - the block the caller found empty
+     */
+    private synchronized void refill(Connection con, Block exhausted) throws SQLException {
+        if (block != exhausted) {
+            return;
+        }
+        if (blockSize == 0) {
+            init(con);
+        }
+        if (localFallback) {
+            // A single block covering every remaining ID
+            block = new Block(localStart, Long.MAX_VALUE);
+            return;
+        }
+        PreparedStatement ps = pool.prepareStatement(con, backend.nextValueQuery(sequenceName));
+        ResultSet rs = ps.executeQuery();
+        rs.next();
+        long start = rs.getLong(1);
+        rs.close();
+        block = new Block(start, start + blockSize);
+    }
+
+    /**
+     * Reads the block size from the sequence definition, or sets up the local
+     * fallback counter if the sequence does not exist
+     */
+    private void init(Connection con) throws SQLException {
+        PreparedStatement ps = pool.prepareStatement(con, backend.sequenceIncrementQuery());
+        ps.setString(1, sequenceName.toUpperCase());
+        ResultSet rs = ps.executeQuery();
+        if (rs.next()) {
+            blockSize = rs.getLong(1);
+        }
+        rs.close();
+        if (blockSize > 0) {
+            return;
+        }
+
+        System.out.println("Sequence " + sequenceName + " not found, allocating " + table
+                + " IDs locally. Run setupdb.sql to create it.");
+        localFallback = true;
+        blockSize = 1;
+        Statement stmt = con.createStatement();
+        rs = stmt.executeQuery("select max(" + column + ") from " + table);
+        localStart = (rs.next() ? rs.getLong(1) : 0) + 1;
+        stmt.close();
+    }
+
+    @Override
+    public String toString() {
+        Block b = block;
+        return "IdAllocator[" + sequenceName + ", next=" + Math.min(b.next.get(), b.end)
+                + ", end=" + b.end + (localFallback ? ", local" : "") + "]";
+    }
+
+    /**
+     * A reserved range of IDs [next, end)
+     */
+    private static final class Block {
+        final AtomicLong next;
+        final long end;
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,74 @@
+import java.time.LocalDate;
+
+/**
+ * <h2>Invoice</h2>
+ * One row of the invoice history grid, as returned by HealthDB.getInvoices.
+ * Payment details are loaded separately by findInvoice. Immutable.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public final class Invoice {
+    private final long invoiceID;
+    private final String invoiceItem;
+    private final LocalDate creationDate;
+    private final LocalDate dueDate;
+    private final String paymentStatus;
+    private final double amountOwing;
+
+    /**
+     * @param invoiceID     - ID of the invoice
+     * @param invoiceItem   - what the invoice is for
+     * @param creationDate  - date the invoice was created
+     * @param dueDate       - date the invoice is due
+     * @param paymentStatus - Paid or Unpaid
+     * @param amountOwing   - balance of the invoice
+     */
+    public Invoice(long invoiceID, String invoiceItem, LocalDate creationDate, LocalDate dueDate,
+                   String paymentStatus, double amountOwing) {
+        this.invoiceID = invoiceID;
+        this.invoiceItem = invoiceItem;
+        this.creationDate = creationDate;
+        this.dueDate = dueDate;
+        this.paymentStatus = paymentStatus;
+        this.amountOwing = amountOwing;
+    }
+
+    public long getInvoiceID() {
+        return invoiceID;
+    }
+
+    public String getInvoiceItem() {
+        return invoiceItem;
+    }
+
+    public LocalDate getCreationDate() {
+        return creationDate;
+    }
+
+    public LocalDate getDueDate() {
+        return dueDate;
+    }
+
+    public String getPaymentStatus() {
+        return paymentStatus;
+    }
+
+    public boolean isPaid() {
+        return "Paid".equals(paymentStatus);
+    }
+
+    public double getAmountOwing() {
+        return amountOwing;
+    }
+
+    @Override
+    public String toString() {
+        return "Invoice[" + invoiceID + ", " + invoiceItem + ", created=" + creationDate + ", due=" + dueDate
+                + ", " + paymentStatus + ", " + amountOwing + "]";
+    }
+}
@@ -0,0 +1,208 @@
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h2>InvoiceBalances</h2>
+ * Running unpaid and overdue invoice totals per patient, so the Plan Summary
+ * totals do not have to sum the patient's whole invoice history every time.
+ * <p>
+ * A patient's balance is loaded once (HealthDB.loadBalance) and then kept current
+ * by HealthDB.createInvoice and updateInvoice, which report every change to an
+ * unpaid amount. Unpaid amounts that are not due yet are kept by due date and
+ * rolled into the overdue total the first time the balance is read after that
+ * date has passed. Amounts are kept in cents so the totals stay exact.
+ * <p>
+ * Balances are keyed by the PID as a number, so " 123" and "0123" typed by a
+ * user find the balance that updateInvoice keeps current under "123", as they
+ * do in Oracle. Every method throws IllegalArgumentException for a PID that is
+ * not a number.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class InvoiceBalances {
+    private final ConcurrentHashMap<Long, Balance> balances = new ConcurrentHashMap<Long, Balance>();
+    /** Incremented on every invoice change, so a load that raced with one is not cached */
+    private final AtomicLong changeCount = new AtomicLong();
+
+    /**
+     * @param pid - the PID of the patient
+     * @return the cached balance, or null if it has not been loaded
+     */
+    public Balance get(String pid) {
+        return balances.get(key(pid));
+    }
+
+    /**
+     * @return the change count to pass to put once the balance has been loaded
+     */
+    public long startLoad() {
+        return changeCount.get();
+    }
+
+    /**
+     * Caches a freshly loaded balance, unless an invoice changed while it was loading
+     *
+     * @param pid     - the PID of the patient
+     * @param balance - the balance read from the database
+     * @param loadStartedAt - value of startLoad() before the balance was read
+     * @return the balance to use, which is the cached one if another thread loaded it first
+     */
+    public Balance put(String pid, Balance balance, long loadStartedAt) {
+        Long key = key(pid);
+        if (changeCount.get() != loadStartedAt) {
+            return balance;
+        }
+        Balance existing = balances.putIfAbsent(key, balance);
+        if (existing != null) {
+            return existing;
+        }
+        // add and invalidate count the change before they look for the balance, so a
+        // change that missed it has moved the count by now
+        if (changeCount.get() != loadStartedAt) {
+            balances.remove(key, balance);
+        }
+        return balance;
+    }
+
+    /**
+     * Replaces a balance that was found to be wrong
+     *
+     * @param pid     - the PID of the patient
+     * @param balance - the balance read from the database
+     */
+    public void replace(String pid, Balance balance) {
+        balances.put(key(pid), balance);
+    }
+
+    /**
+     * Records a change to the unpaid amount of one invoice
+     *
+     * @param pid     - the PID of the patient
+     * @param dueDate - due date of the invoice
+     * @param cents   - change to the unpaid amount, negative when paid or reduced
+     */
+    public void add(String pid, LocalDate dueDate, long cents) {
+        Long key = key(pid);
+        changeCount.incrementAndGet();
+        Balance balance = balances.get(key);
+        if (balance != null) {
+            balance.add(dueDate, cents);
+        }
+    }
+
+    /**
+     * Drops a patient's balance so it is loaded again on next use
+     *
+     * @param pid - the PID of the patient
+     */
+    public void invalidate(String pid) {
+        Long key = key(pid);
+        changeCount.incrementAndGet();
+        balances.remove(key);
+    }
+
+    /**
+     * Drops every balance
+     */
+    public void clear() {
+        changeCount.incrementAndGet();
+        balances.clear();
+    }
+
+    /**
+     * @param pid - a PID, may have surrounding spaces and leading zeros
+     * @return the PID as a number
+     * @throws IllegalArgumentException if the PID is not a number
+     */
+    private static Long key(String pid) {
+        try {
+            return Long.valueOf(pid.trim());
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("PID is not a number: " + pid);
+        }
+    }
+
+    /**
+     * Unpaid and overdue totals of one patient
+     */
+    public static final class Balance {
+        private long unpaidCents = 0;
+        private long overdueCents = 0;
+        /** Unpaid amounts that were not overdue on rolledTo, by due date */
+        private final TreeMap<LocalDate, Long> upcoming = new TreeMap<LocalDate, Long>();
+        private LocalDate rolledTo;
+
+        /**
+         * @param today - invoices due before this date are overdue
+         */
+        public Balance(LocalDate today) {
+            this.rolledTo = today;
+        }
+
+        /**
+         * Adds to the unpaid amount due on the given date
+         *
+         * @param dueDate - due date of the invoice
+         * @param cents   - amount to add, negative to subtract
+         */
+        public synchronized void add(LocalDate dueDate, long cents) {
+            unpaidCents += cents;
+            if (dueDate.isBefore(rolledTo)) {
+                overdueCents += cents;
+            } else {
+                Long current = upcoming.get(dueDate);
+                long total = (current == null ? 0 : current) + cents;
+                if (total == 0) {
+                    upcoming.remove(dueDate);
+                } else {
+                    upcoming.put(dueDate, total);
+                }
+            }
+        }
+
+        /**
+         * @return total unpaid amount in cents
+         */
+        public synchronized long getUnpaidCents() {
+            return unpaidCents;
+        }
+
+        /**
+         * @param today - invoices due before this date are overdue
+         * @return total overdue unpaid amount in cents
+         */
+        public synchronized long getOverdueCents(LocalDate today) {
+            rollForward(today);
+            return overdueCents;
+        }
+
+        /**
+         * Moves every amount that has become overdue since the last read into the overdue total
+         */
+        private void rollForward(LocalDate today) {
+            if (!today.isAfter(rolledTo)) {
+                return;
+            }
+            Map.Entry<LocalDate, Long> first;
+            while ((first = upcoming.firstEntry()) != null && first.getKey().isBefore(today)) {
+                overdueCents += first.getValue();
+                upcoming.remove(first.getKey());
+            }
+            rolledTo = today;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "Balance[unpaid=" + unpaidCents + "c, overdue=" + overdueCents + "c, upcoming dates="
+                    + upcoming.size() + ", as of " + rolledTo + "]";
+        }
+    }
+}
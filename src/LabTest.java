@@ -0,0 +1,54 @@
+import java.time.LocalDate;
+
+/**
+ * <h2>LabTest</h2>
+ * One row of the test grids, as returned by HealthDB.getTests and findTest.
+ * The measured values are loaded separately by findTestValues. Immutable.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public final class LabTest {
+    private final long testID;
+    private final LocalDate orderedDate;
+    private final LocalDate performedDate;
+
+    /**
+     * @param testID        - ID of the test
+     * @param orderedDate   - date a doctor ordered the test
+     * @param performedDate - date the lab performed it, null if not performed yet
+     */
+    public LabTest(long testID, LocalDate orderedDate, LocalDate performedDate) {
+        this.testID = testID;
+        this.orderedDate = orderedDate;
+        this.performedDate = performedDate;
+    }
+
+    public long getTestID() {
+        return testID;
+    }
+
+    public LocalDate getOrderedDate() {
+        return orderedDate;
+    }
+
+    /**
+     * @return the date the test was performed, null if it has not been performed
+     */
+    public LocalDate getPerformedDate() {
+        return performedDate;
+    }
+
+    public boolean isPerformed() {
+        return performedDate != null;
+    }
+
+    @Override
+    public String toString() {
+        return "LabTest[" + testID + ", ordered=" + orderedDate + ", performed=" + performedDate + "]";
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h2>MedicationInteractions</h2>
+ * In-memory medication interaction engine. An interaction set is a group of
+ * medications that must not all be prescribed to the same patient. Every
+ * medication gets a bit number, each set is a BitSet, and a patient's
+ * medications are turned into a BitSet when they are checked, so a check only
+ * compares a handful of bits no matter how many patients there are.
+ * <p>
+ * Sets are loaded by HealthDB from the InteractionSet table (or the older
+ * medInteraction view, as a single set). Immutable once built, so it can be
+ * shared between threads.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class MedicationInteractions {
+    /** Bit number of every medication that is part of at least one set */
+    private final HashMap<String, Integer> bits = new HashMap<String, Integer>();
+    /** Interaction sets containing each medication, indexed by bit number */
+    private final ArrayList<List<BitSet>> setsByMedication = new ArrayList<List<BitSet>>();
+    private int setCount = 0;
+
+    /**
+     * Builds the engine from a list of interaction sets
+     *
+     * @param sets - each set is the medications that interact when all prescribed together
+     */
+    public MedicationInteractions(Collection<? extends Collection<String>> sets) {
+        for (Collection<String> medications : sets) {
+            if (medications.isEmpty()) {
+                continue;
+            }
+            BitSet set = new BitSet();
+            for (String medication : medications) {
+                set.set(bitFor(medication));
+            }
+            for (int bit = set.nextSetBit(0); bit >= 0; bit = set.nextSetBit(bit + 1)) {
+                setsByMedication.get(bit).add(set);
+            }
+            setCount++;
+        }
+    }
+
+    /**
+     * Checks whether prescribing a medication to a patient would complete an
+     * interaction set. Only sets containing the new medication are looked at.
+     *
+     * @param currentMedications - medications the patient is already prescribed
+     * @param medication         - the medication about to be prescribed
+     * @return the first set the new medication would complete, or null if there is no interaction
+     */
+    public BitSet findInteraction(Collection<String> currentMedications, String medication) {
+        Integer bit = bits.get(medication);
+        if (bit == null) {
+            // Not part of any set
+            return null;
+        }
+        BitSet patient = toBits(currentMedications);
+        patient.set(bit);
+        for (BitSet set : setsByMedication.get(bit)) {
+            BitSet missing = (BitSet) set.clone();
+            missing.andNot(patient);
+            if (missing.isEmpty()) {
+                return set;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param set - a set returned by findInteraction
+     * @return the names of the medications in the set
+     */
+    public List<String> describe(BitSet set) {
+        ArrayList<String> names = new ArrayList<String>();
+        for (Map.Entry<String, Integer> entry : bits.entrySet()) {
+            if (set.get(entry.getValue())) {
+                names.add(entry.getKey());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return number of interaction sets
+     */
+    public int getSetCount() {
+        return setCount;
+    }
+
+    @Override
+    public String toString() {
+        return "MedicationInteractions[sets=" + setCount + ", medications=" + bits.size() + "]";
+    }
+
+    /**
+     * Medications that are not part of any set have no bit and are left out
+     */
+    private BitSet toBits(Collection<String> medications) {
+        BitSet result = new BitSet(bits.size());
+        for (String medication : medications) {
+            Integer bit = bits.get(medication);
+            if (bit != null) {
+                result.set(bit);
+            }
+        }
+        return result;
+    }
+
+    private int bitFor(String medication) {
+        Integer bit = bits.get(medication);
+        if (bit == null) {
+            bit = bits.size();
+            bits.put(medication, bit);
+            setsByMedication.add(new ArrayList<BitSet>());
+        }
+        return bit;
+    }
+}
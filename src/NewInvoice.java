@@ -0,0 +1,82 @@
+/**
+ * <h2>NewInvoice</h2>
+ * An invoice to be created by HealthDB.createInvoices. Values are the same
+ * strings createInvoice takes, empty for optional values. Immutable.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public final class NewInvoice {
+    private final String patientID;
+    private final String invoiceItem;
+    private final String dueDate;
+    private final String paymentStatus;
+    private final String paymentDate;
+    private final String paymentMethod;
+    private final String amountOwing;
+    private final String planID;
+
+    /**
+     * @param patientID     - PID of the patient
+     * @param invoiceItem   - item the invoice is for
+     * @param dueDate       - due date, yyyy-MM-dd
+     * @param paymentStatus - Paid or Unpaid
+     * @param paymentDate   - payment date, yyyy-MM-dd
+     * @param paymentMethod - Credit\Debit, Cash or Cheque
+     * @param amountOwing   - amount owing
+     * @param planID        - provincial health plan the invoice is billed to
+     */
+    public NewInvoice(String patientID, String invoiceItem, String dueDate, String paymentStatus,
+                      String paymentDate, String paymentMethod, String amountOwing, String planID) {
+        this.patientID = patientID;
+        this.invoiceItem = invoiceItem;
+        this.dueDate = dueDate;
+        this.paymentStatus = paymentStatus;
+        this.paymentDate = paymentDate;
+        this.paymentMethod = paymentMethod;
+        this.amountOwing = amountOwing;
+        this.planID = planID;
+    }
+
+    public String getPatientID() {
+        return patientID;
+    }
+
+    public String getInvoiceItem() {
+        return invoiceItem;
+    }
+
+    public String getDueDate() {
+        return dueDate;
+    }
+
+    public String getPaymentStatus() {
+        return paymentStatus;
+    }
+
+    public String getPaymentDate() {
+        return paymentDate;
+    }
+
+    public String getPaymentMethod() {
+        return paymentMethod;
+    }
+
+    public String getAmountOwing() {
+        return amountOwing;
+    }
+
+    public String getPlanID() {
+        return planID;
+    }
+
+    @Override
+    public String toString() {
+        return "NewInvoice[" + patientID + ", " + invoiceItem + ", " + dueDate + ", " + paymentStatus + ", "
+                + paymentDate + ", " + paymentMethod + ", " + amountOwing + ", " + planID + "]";
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * <h2>NewPrescription</h2>
+ * A prescription to be created by HealthDB.createPrescriptions. Values are
+ * the same strings createPrescription takes. Immutable.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public final class NewPrescription {
+    private final String medication;
+    private final String dosage;
+    private final String quantity;
+    private final String patientID;
+    private final String drHID;
+    /** patientID as a number, as Oracle compares it, null if it is not one */
+    private final Long pid;
+
+    /**
+     * @param medication - medication to prescribe
+     * @param dosage     - dosage, in the medication's dosage measure
+     * @param quantity   - quantity
+     * @param patientID  - PID of the patient
+     * @param drHID      - HID of the prescribing doctor
+     */
+    public NewPrescription(String medication, String dosage, String quantity, String patientID,
+                           String drHID) {
+        this.medication = medication;
+        this.dosage = dosage;
+        this.quantity = quantity;
+        this.patientID = patientID;
+        this.drHID = drHID;
+        this.pid = parsePID(patientID);
+    }
+
+    public String getMedication() {
+        return medication;
+    }
+
+    public String getDosage() {
+        return dosage;
+    }
+
+    public String getQuantity() {
+        return quantity;
+    }
+
+    public String getPatientID() {
+        return patientID;
+    }
+
+    public String getDrHID() {
+        return drHID;
+    }
+
+    /**
+     * @return the PID as a number, so " 123" and "0123" are the same patient as "123",
+     * or null if it is not a number and the insert will fail
+     */
+    public Long getPID() {
+        return pid;
+    }
+
+    private static Long parsePID(String patientID) {
+        try {
+            return patientID == null ? null : Long.valueOf(patientID.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NewPrescription[" + medication + ", " + dosage + ", " + quantity + ", " + patientID + ", "
+                + drHID + "]";
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * <h2>NewReferral</h2>
+ * A referral to be created by HealthDB.createReferrals. Immutable.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public final class NewReferral {
+    private final String patientID;
+    private final String referrerHID;
+    private final String referreeHID;
+
+    /**
+     * @param patientID   - PID of the patient
+     * @param referrerHID - HID of doctor making the referral
+     * @param referreeHID - HID of doctor being referred to
+     */
+    public NewReferral(String patientID, String referrerHID, String referreeHID) {
+        this.patientID = patientID;
+        this.referrerHID = referrerHID;
+        this.referreeHID = referreeHID;
+    }
+
+    public String getPatientID() {
+        return patientID;
+    }
+
+    public String getReferrerHID() {
+        return referrerHID;
+    }
+
+    public String getReferreeHID() {
+        return referreeHID;
+    }
+
+    @Override
+    public String toString() {
+        return "NewReferral[" + patientID + ", " + referrerHID + ", " + referreeHID + "]";
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * <h2>NewTest</h2>
+ * A lab test to be ordered by HealthDB.createTests. Immutable.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public final class NewTest {
+    private final String patientID;
+    private final String drHID;
+
+    /**
+     * @param patientID - PID of the patient
+     * @param drHID     - HID of the doctor ordering the test
+     */
+    public NewTest(String patientID, String drHID) {
+        this.patientID = patientID;
+        this.drHID = drHID;
+    }
+
+    public String getPatientID() {
+        return patientID;
+    }
+
+    public String getDrHID() {
+        return drHID;
+    }
+
+    @Override
+    public String toString() {
+        return "NewTest[" + patientID + ", " + drHID + "]";
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <h2>OperationMetrics</h2>
+ * Call count, error count, rows returned and latency histogram of one HealthDB
+ * operation. Updated by HealthDBMetrics, read through JMX or the periodic dump.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+    private final String name;
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * @param name - name of the HealthDB method
+     */
+    public OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a finished call
+     *
+     * @param nanos - how long the call took
+     * @param rows  - rows it returned
+     */
+    void record(long nanos, int rows) {
+        latency.record(nanos);
+        if (rows > 0) {
+            this.rows.add(rows);
+        }
+    }
+
+    /**
+     * Records a call that failed. It is also recorded as finished.
+     */
+    void error() {
+        errors.increment();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCalls() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latency.getMeanNanos() / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return latency.getValueAtPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return latency.getValueAtPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return latency.getValueAtPercentile(99.9) / 1e6;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latency.getMaxNanos() / 1e6;
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        errors.reset();
+        rows.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-32s %9d %7d %10d %9.3f %9.3f %9.3f %9.3f %9.3f", name, getCalls(), getErrors(),
+                getRows(), getMeanMillis(), getP50Millis(), getP99Millis(), getP999Millis(), getMaxMillis());
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * <h2>OperationMetricsMBean</h2>
+ * JMX view of one HealthDB operation, see OperationMetrics. Registered as
+ * HealthDB:type=Operation,instance=&lt;n&gt;,name=&lt;method&gt; while connected, where
+ * n counts the HealthDB objects created in the JVM. Times are in
+ * milliseconds.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public interface OperationMetricsMBean {
+    String getName();
+
+    long getCalls();
+
+    long getErrors();
+
+    long getRows();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+
+    /**
+     * Starts counting from zero
+     */
+    void reset();
+}
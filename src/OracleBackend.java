@@ -0,0 +1,70 @@
+import java.sql.*;
+
+/**
+ * <h2>OracleBackend</h2>
+ * The department's Oracle server. The schema is created by running setupdb.sql
+ * in SQL*Plus (see README.txt), so initialize does nothing. The URL can be
+ * overridden with -Dhealthdb.oracle.url=...
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class OracleBackend implements StorageBackend {
+    static final String DEFAULT_URL = "jdbc:oracle:thin:@dbhost.ugrad.cs.ubc.ca:1522:ug";
+
+    private final String url;
+
+    public OracleBackend() {
+        this(System.getProperty("healthdb.oracle.url", DEFAULT_URL));
+    }
+
+    /**
+     * @param url - JDBC URL of the Oracle server
+     */
+    public OracleBackend(String url) {
+        this.url = url;
+    }
+
+    @Override
+    public String getName() {
+        return "Oracle";
+    }
+
+    @Override
+    public void loadDriver() throws SQLException {
+        DriverManager.registerDriver(new oracle.jdbc.driver.OracleDriver());
+    }
+
+    @Override
+    public String getURL() {
+        return url;
+    }
+
+    @Override
+    public String getValidationQuery() {
+        return "select 1 from dual";
+    }
+
+    @Override
+    public void initialize(Connection con) {
+    }
+
+    @Override
+    public String nextValueQuery(String sequenceName) {
+        return "select " + sequenceName + ".nextval from dual";
+    }
+
+    @Override
+    public String sequenceIncrementQuery() {
+        return "select increment_by from user_sequences where sequence_name = ?";
+    }
+
+    @Override
+    public String toString() {
+        return "OracleBackend[" + url + "]";
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * <h2>Patient</h2>
+ * A patient with their address and phone numbers, as returned by the
+ * HealthDB.searchPatients name search. Immutable.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public final class Patient {
+    private final long patientID;
+    private final String firstName;
+    private final String lastName;
+    private final String street;
+    private final String city;
+    private final String province;
+    private final String postalCode;
+    private final String country;
+    private final String homePhone;
+    private final String mobilePhone;
+
+    /**
+     * @param patientID   - PID of the patient
+     * @param firstName   - first name
+     * @param lastName    - last name
+     * @param street      - street address
+     * @param city        - city of the postal code, null if unknown
+     * @param province    - province of the postal code, null if unknown
+     * @param postalCode  - postal code
+     * @param country     - country of the postal code, null if unknown
+     * @param homePhone   - home phone number
+     * @param mobilePhone - mobile phone number
+     */
+    public Patient(long patientID, String firstName, String lastName, String street, String city,
+                   String province, String postalCode, String country, String homePhone, String mobilePhone) {
+        this.patientID = patientID;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.street = street;
+        this.city = city;
+        this.province = province;
+        this.postalCode = postalCode;
+        this.country = country;
+        this.homePhone = homePhone;
+        this.mobilePhone = mobilePhone;
+    }
+
+    public long getPatientID() {
+        return patientID;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    /**
+     * @return first and last name separated by a space
+     */
+    public String getName() {
+        return firstName + " " + lastName;
+    }
+
+    public String getStreet() {
+        return street;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public String getProvince() {
+        return province;
+    }
+
+    public String getPostalCode() {
+        return postalCode;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public String getHomePhone() {
+        return homePhone;
+    }
+
+    public String getMobilePhone() {
+        return mobilePhone;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " - " + patientID;
+    }
+}
@@ -0,0 +1,218 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h2>PatientCache</h2>
+ * Least recently used cache of the patient tuples returned by HealthDB.findPatient,
+ * and of the prescription, test and invoice IDs looked up by findPIDfromX. The
+ * finders look up the same few hundred patients over and over during a shift, and
+ * every prescription or test lookup is followed by findPatient for its patient.
+ * <p>
+ * The cache holds at most maxEntries patients and maxEntries child IDs, and drops
+ * the least recently used patients once the estimated size of the cached tuples
+ * goes over maxBytes. Nothing in the app changes a patient row, and a child ID
+ * never moves to another patient, so entries are only dropped by deletePatient,
+ * by invalidateReferenceData (the tuple includes the postal code's city) and on
+ * disconnect. Lookups that find nothing are not cached. Safe for concurrent use.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class PatientCache {
+    /** Kinds of child IDs, used to keep prescription, test and invoice IDs apart */
+    public static final char PRESCRIPTION = 'P';
+    public static final char TEST = 'T';
+    public static final char INVOICE = 'I';
+
+    /** Rough per-entry overhead of the map entry, list and strings, in bytes */
+    private static final int ENTRY_OVERHEAD_BYTES = 200;
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    /** Patient tuples by PID, least recently used first */
+    private final LinkedHashMap<String, List<String>> patients;
+    /** PIDs by kind and child ID, least recently used first */
+    private final LinkedHashMap<String, String> pids;
+    private long bytes = 0;
+    /** Incremented on every invalidation, so a load that raced with one is not cached */
+    private long changeCount = 0;
+
+    private long patientHits = 0;
+    private long patientMisses = 0;
+    private long pidHits = 0;
+    private long pidMisses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maxEntries - most patients, and most child IDs, kept
+     * @param maxBytes   - most bytes of patient tuples kept, estimated
+     */
+    public PatientCache(int maxEntries, long maxBytes) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxBytes = maxBytes;
+        patients = new LinkedHashMap<String, List<String>>(16, 0.75f, true);
+        pids = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                if (size() > PatientCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param pid - the PID of the patient
+     * @return a copy of the cached tuple, or null if the patient is not cached
+     */
+    public synchronized ArrayList<String> getPatient(String pid) {
+        List<String> tuple = patients.get(pid);
+        if (tuple == null) {
+            patientMisses++;
+            return null;
+        }
+        patientHits++;
+        return new ArrayList<String>(tuple);
+    }
+
+    /**
+     * @return the change count to pass to putPatient or putPID once the row has been read
+     */
+    public synchronized long startLoad() {
+        return changeCount;
+    }
+
+    /**
+     * Caches a patient tuple read from the database, unless a patient was
+     * invalidated while it was being read
+     *
+     * @param pid           - the PID of the patient
+     * @param tuple         - the tuple from findPatient, not cached if empty
+     * @param loadStartedAt - value of startLoad() before the tuple was read
+     */
+    public synchronized void putPatient(String pid, List<String> tuple, long loadStartedAt) {
+        if (tuple.isEmpty() || changeCount != loadStartedAt) {
+            return;
+        }
+        List<String> copy = Collections.unmodifiableList(new ArrayList<String>(tuple));
+        List<String> previous = patients.put(pid, copy);
+        if (previous != null) {
+            bytes -= sizeOf(pid, previous);
+        }
+        bytes += sizeOf(pid, copy);
+        // Keep the entry just added even if it alone is over maxBytes
+        Iterator<Map.Entry<String, List<String>>> it = patients.entrySet().iterator();
+        while ((patients.size() > maxEntries || bytes > maxBytes) && patients.size() > 1) {
+            Map.Entry<String, List<String>> eldest = it.next();
+            bytes -= sizeOf(eldest.getKey(), eldest.getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * @param kind - PRESCRIPTION, TEST or INVOICE
+     * @param id   - the prescription, test or invoice ID
+     * @return the PID the ID belongs to, or null if it is not cached
+     */
+    public synchronized String getPID(char kind, String id) {
+        String pid = pids.get(kind + id);
+        if (pid == null) {
+            pidMisses++;
+        } else {
+            pidHits++;
+        }
+        return pid;
+    }
+
+    /**
+     * Caches the PID a prescription, test or invoice belongs to
+     *
+     * @param kind          - PRESCRIPTION, TEST or INVOICE
+     * @param id            - the prescription, test or invoice ID
+     * @param pid           - its PID, not cached if empty
+     * @param loadStartedAt - value of startLoad() before the PID was read
+     */
+    public synchronized void putPID(char kind, String id, String pid, long loadStartedAt) {
+        if (pid.isEmpty() || changeCount != loadStartedAt) {
+            return;
+        }
+        pids.put(kind + id, pid);
+    }
+
+    /**
+     * Drops a patient and every child ID that belongs to them
+     *
+     * @param pid - the PID of the patient
+     */
+    public synchronized void invalidate(String pid) {
+        changeCount++;
+        List<String> tuple = patients.remove(pid);
+        if (tuple != null) {
+            bytes -= sizeOf(pid, tuple);
+        }
+        for (Iterator<String> it = pids.values().iterator(); it.hasNext(); ) {
+            if (it.next().equals(pid)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops every patient tuple. Child IDs are kept, as they cannot change.
+     */
+    public synchronized void invalidatePatients() {
+        changeCount++;
+        patients.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Drops everything
+     */
+    public synchronized void clear() {
+        invalidatePatients();
+        pids.clear();
+    }
+
+    /**
+     * @return fraction of patient and child ID lookups that were cached, 0 if there were none
+     */
+    public synchronized double getHitRatio() {
+        long lookups = patientHits + patientMisses + pidHits + pidMisses;
+        return lookups == 0 ? 0 : (double) (patientHits + pidHits) / lookups;
+    }
+
+    /**
+     * @return number of entries dropped to stay within maxEntries and maxBytes
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PatientCache[patients=" + patients.size() + " (" + bytes + " bytes), hits=" + patientHits
+                + ", misses=" + patientMisses + ", PIDs=" + pids.size() + ", hits=" + pidHits + ", misses="
+                + pidMisses + ", evictions=" + evictions + String.format(", hit ratio=%.3f", getHitRatio()) + "]";
+    }
+
+    private static long sizeOf(String pid, List<String> tuple) {
+        long size = ENTRY_OVERHEAD_BYTES + 2L * pid.length();
+        for (String s : tuple) {
+            size += s == null ? 0 : 40 + 2L * s.length();
+        }
+        return size;
+    }
+}
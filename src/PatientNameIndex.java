@@ -0,0 +1,280 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <h2>PatientNameIndex</h2>
+ * In-memory trigram index over patient first and last names. Answers the
+ * "name contains x" search of the patient finders without scanning the Patient
+ * table, which a '%x%' LIKE always does.
+ * <p>
+ * Every three-character window of each lowercased name points to a sorted list
+ * of the patients whose name contains it. A search intersects the lists of the
+ * query's trigrams, starting with the shortest, and then checks the few
+ * candidates left with a plain contains. Queries shorter than three characters
+ * are answered by scanning the names in memory.
+ * <p>
+ * Built from the Patient table by HealthDB and kept current by deletePatient.
+ * Patients added or renamed by other clients, SQL*Plus or DataGenerator are
+ * picked up when HealthDB rebuilds the index in the background, at most
+ * -Dhealthdb.nameIndex.refreshMs after the last build. Until then a search the
+ * index has no match for goes to Oracle, so a new patient is still found by a
+ * name no one else has. Stale PIDs are harmless because the patient details are
+ * always read from Oracle. Safe for concurrent use.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class PatientNameIndex {
+    /** Match quality, lower ranks first */
+    private static final int RANK_EXACT = 0;
+    private static final int RANK_PREFIX = 1;
+    private static final int RANK_CONTAINS = 2;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Per document (one per patient, in the order added) */
+    private long[] pids = new long[1024];
+    private String[] firstNames = new String[1024];
+    private String[] lastNames = new String[1024];
+    private int size = 0;
+    private final BitSet deleted = new BitSet();
+    private final HashMap<Long, Integer> docByPID = new HashMap<Long, Integer>();
+
+    /** Trigram to the sorted documents containing it */
+    private final HashMap<Long, Postings> postings = new HashMap<Long, Postings>();
+
+    /**
+     * Adds a patient. Adding a PID that is already indexed replaces its names.
+     *
+     * @param pid       - PID of the patient
+     * @param firstName - first name, may be null
+     * @param lastName  - last name, may be null
+     */
+    public void add(long pid, String firstName, String lastName) {
+        lock.writeLock().lock();
+        try {
+            Integer old = docByPID.get(pid);
+            if (old != null) {
+                deleted.set(old);
+            }
+            if (size == pids.length) {
+                int capacity = size * 2;
+                pids = Arrays.copyOf(pids, capacity);
+                firstNames = Arrays.copyOf(firstNames, capacity);
+                lastNames = Arrays.copyOf(lastNames, capacity);
+            }
+            int doc = size++;
+            pids[doc] = pid;
+            firstNames[doc] = normalize(firstName);
+            lastNames[doc] = normalize(lastName);
+            docByPID.put(pid, doc);
+            // Documents are added in increasing order, so every list stays sorted
+            addTrigrams(firstNames[doc], doc);
+            addTrigrams(lastNames[doc], doc);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a patient, e.g. after deletePatient
+     *
+     * @param pid - PID of the patient
+     */
+    public void remove(long pid) {
+        lock.writeLock().lock();
+        try {
+            Integer doc = docByPID.remove(pid);
+            if (doc != null) {
+                deleted.set(doc);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the patients whose first or last name contains the query, ignoring case.
+     * Exact name matches come first, then names starting with the query, then the
+     * rest; PID order within each group.
+     *
+     * @param query - the name to search for
+     * @return PIDs of the matching patients, ranked
+     */
+    public long[] search(String query) {
+        String q = normalize(query);
+        lock.readLock().lock();
+        try {
+            int[] candidates = q.length() < 3 ? null : candidates(q);
+
+            // Bucket the verified matches by rank; documents come in PID-insertion order
+            long[][] byRank = new long[3][];
+            int[] counts = new int[3];
+            int n = candidates == null ? size : candidates.length;
+            for (int i = 0; i < n; i++) {
+                int doc = candidates == null ? i : candidates[i];
+                if (deleted.get(doc)) {
+                    continue;
+                }
+                int rank = Math.min(rank(firstNames[doc], q), rank(lastNames[doc], q));
+                if (rank > RANK_CONTAINS) {
+                    continue;
+                }
+                if (byRank[rank] == null) {
+                    byRank[rank] = new long[Math.min(n, 16)];
+                } else if (counts[rank] == byRank[rank].length) {
+                    byRank[rank] = Arrays.copyOf(byRank[rank], counts[rank] * 2);
+                }
+                byRank[rank][counts[rank]++] = pids[doc];
+            }
+
+            long[] result = new long[counts[0] + counts[1] + counts[2]];
+            int pos = 0;
+            for (int rank = RANK_EXACT; rank <= RANK_CONTAINS; rank++) {
+                if (counts[rank] > 0) {
+                    Arrays.sort(byRank[rank], 0, counts[rank]);
+                    System.arraycopy(byRank[rank], 0, result, pos, counts[rank]);
+                    pos += counts[rank];
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of patients indexed
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docByPID.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.readLock().lock();
+        try {
+            return "PatientNameIndex[patients=" + docByPID.size() + ", trigrams=" + postings.size() + "]";
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Intersects the postings of every trigram of the query
+     *
+     * @return documents containing all of the query's trigrams, in ascending order
+     */
+    private int[] candidates(String q) {
+        ArrayList<Postings> lists = new ArrayList<Postings>();
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            Postings p = postings.get(trigram(q, i));
+            if (p == null) {
+                return new int[0];
+            }
+            lists.add(p);
+        }
+
+        // Start with the rarest trigram so the running result is as small as possible
+        Postings shortest = lists.get(0);
+        for (Postings p : lists) {
+            if (p.size < shortest.size) {
+                shortest = p;
+            }
+        }
+        int[] result = Arrays.copyOf(shortest.docs, shortest.size);
+        int count = result.length;
+        for (Postings p : lists) {
+            if (p != shortest) {
+                count = intersect(result, count, p);
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Keeps the documents of result[0, count) that are also in p, in place
+     *
+     * @return the new count
+     */
+    private static int intersect(int[] result, int count, Postings p) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < count && j < p.size; i++) {
+            int doc = result[i];
+            while (j < p.size && p.docs[j] < doc) {
+                j++;
+            }
+            if (j < p.size && p.docs[j] == doc) {
+                result[kept++] = doc;
+            }
+        }
+        return kept;
+    }
+
+    private void addTrigrams(String name, int doc) {
+        for (int i = 0; i + 3 <= name.length(); i++) {
+            Long key = trigram(name, i);
+            Postings p = postings.get(key);
+            if (p == null) {
+                p = new Postings();
+                postings.put(key, p);
+            }
+            p.add(doc);
+        }
+    }
+
+    private static int rank(String name, String q) {
+        if (name.equals(q)) {
+            return RANK_EXACT;
+        } else if (name.startsWith(q)) {
+            return RANK_PREFIX;
+        } else if (name.contains(q)) {
+            return RANK_CONTAINS;
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Packs the three characters starting at i into one key
+     */
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    private static String normalize(String name) {
+        return name == null ? "" : name.toLowerCase();
+    }
+
+    /**
+     * Growable sorted list of documents
+     */
+    private static final class Postings {
+        int[] docs = new int[4];
+        int size = 0;
+
+        void add(int doc) {
+            // A name can contain the same trigram twice, and first and last name share postings
+            if (size > 0 && docs[size - 1] == doc) {
+                return;
+            }
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+    }
+}
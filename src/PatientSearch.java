@@ -0,0 +1,162 @@
+import java.sql.*;
+import java.util.ArrayList;
+
+/**
+ * <h2>PatientSearch</h2>
+ * A patient name search that is read one page at a time, created by
+ * HealthDB.searchPatients, so memory and query time are bounded by the page size
+ * no matter how many patients match.
+ * <p>
+ * If HealthDB's name index is ready, the matching PIDs come from the index, best
+ * matches first, and each page only reads those patients' details from Oracle.
+ * Otherwise each page is a LIKE query that continues after the last PID of the
+ * previous page.
+ * <p>
+ * Pages are read on a background thread while cancel is called from the event
+ * dispatch thread. cancel stops the query that is running, which interrupting the
+ * thread does not do.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class PatientSearch {
+    private final HealthDB hdb;
+    private final String name;
+    private final int pageSize;
+
+    /** PID of the last patient returned, the next page starts after it */
+    private volatile long lastPatientID = Long.MIN_VALUE;
+    /** Ranked PIDs from the name index, null if the search goes to Oracle */
+    private long[] rankedIDs;
+    private boolean indexChecked = false;
+    /** Index into rankedIDs where the next page starts */
+    private int nextRank = 0;
+    private volatile boolean hasMore = true;
+    private volatile int loadedCount = 0;
+    private volatile boolean cancelled = false;
+    /** Statement currently executing a page, null between pages */
+    private Statement running;
+
+    /**
+     * @param hdb      - database the pages are read from
+     * @param name     - the name of the patient to be searched for
+     * @param pageSize - patients per page, at most 1000 (Oracle's limit for an in list)
+     */
+    public PatientSearch(HealthDB hdb, String name, int pageSize) {
+        this.hdb = hdb;
+        this.name = name;
+        this.pageSize = Math.min(Math.max(pageSize, 1), 1000);
+    }
+
+    /**
+     * Reads the next page. Should not be called again before the previous call
+     * returned.
+     *
+     * @return up to pageSize patients, best matches first if the name index is used and
+     * ordered by PID otherwise, empty once there are no more or the search was cancelled
+     */
+    public ArrayList<Patient> nextPage() {
+        if (!hasMore || cancelled) {
+            return new ArrayList<Patient>();
+        }
+        if (!indexChecked) {
+            rankedIDs = hdb.findPatientIDs(name);
+            indexChecked = true;
+        }
+        if (rankedIDs != null) {
+            ArrayList<Patient> page = new ArrayList<Patient>();
+            // PIDs of patients deleted by another client drop out, so a page can come back empty
+            while (page.isEmpty() && hasMore) {
+                int to = Math.min(nextRank + pageSize, rankedIDs.length);
+                page = hdb.getPatients(rankedIDs, nextRank, to, this);
+                nextRank = to;
+                hasMore = to < rankedIDs.length && !cancelled;
+            }
+            loadedCount += page.size();
+            return page;
+        }
+
+        // One extra row tells whether there is another page without a second query
+        ArrayList<Patient> page = hdb.getPatients(name, lastPatientID, pageSize + 1, this);
+        if (cancelled) {
+            hasMore = false;
+            return new ArrayList<Patient>();
+        }
+        hasMore = page.size() > pageSize;
+        if (hasMore) {
+            page.remove(pageSize);
+        }
+        if (page.size() > 0) {
+            lastPatientID = page.get(page.size() - 1).getPatientID();
+        }
+        loadedCount += page.size();
+        return page;
+    }
+
+    /**
+     * Stops the search. A page that is being read is cut short and no further
+     * pages are read. Safe to call from any thread.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        if (running != null) {
+            try {
+                running.cancel();
+            } catch (SQLException ex) {
+                System.out.println("Failed to cancel patient search. " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Registers the statement about to run a page so cancel can stop it
+     *
+     * @param stmt - the statement
+     * @return false if the search has already been cancelled and the page should not run
+     */
+    synchronized boolean started(Statement stmt) {
+        if (cancelled) {
+            return false;
+        }
+        running = stmt;
+        return true;
+    }
+
+    /**
+     * Called once a page has been read, before its connection goes back to the
+     * pool, so cancel can never reach a statement that another query is using
+     */
+    synchronized void finished() {
+        running = null;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true if there may be more patients after the pages read so far
+     */
+    public boolean hasMore() {
+        return hasMore && !cancelled;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return number of patients returned by all pages so far
+     */
+    public int getLoadedCount() {
+        return loadedCount;
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.ArrayList;
+
+/**
+ * <h2>PatientSummary</h2>
+ * Everything shown on the Patient Summary view for one patient, as loaded by
+ * HealthDB.loadPatientSummary in a single round trip. The patient tuple has the
+ * same layout as the one returned by findPatient.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class PatientSummary {
+    private final ArrayList<String> patient = new ArrayList<String>();
+    private final ArrayList<Prescription> prescriptions = new ArrayList<Prescription>();
+    private final ArrayList<LabTest> tests = new ArrayList<LabTest>();
+    private final ArrayList<Referral> referrals = new ArrayList<Referral>();
+
+    /**
+     * @return true if the patient exists
+     */
+    public boolean isFound() {
+        return patient.size() > 0;
+    }
+
+    /**
+     * tuple = {0 firstname, 1 lastname, 2 pid, 3 street, 4 city, 5 province, 6 postalcode, 7 country, 8 homephone, 9 mobilephone}
+     *
+     * @return the patient tuple, empty if the patient does not exist
+     */
+    public ArrayList<String> getPatient() {
+        return patient;
+    }
+
+    /**
+     * @return prescriptions, newest first
+     */
+    public ArrayList<Prescription> getPrescriptions() {
+        return prescriptions;
+    }
+
+    /**
+     * @return tests, newest first
+     */
+    public ArrayList<LabTest> getTests() {
+        return tests;
+    }
+
+    /**
+     * @return referrals, newest first
+     */
+    public ArrayList<Referral> getReferrals() {
+        return referrals;
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <h2>PlanSummary</h2>
+ * Everything shown on the Plan Summary view for one patient, as loaded by
+ * PlanSummaryLoader, together with how long each of the queries took.
+ * The tuples and rows are the same as returned by the HealthDB methods they come from.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class PlanSummary {
+    ArrayList<String> patient = new ArrayList<String>();
+    ArrayList<String> plan = new ArrayList<String>();
+    ArrayList<ArrayList<String>> extendedBenefits = new ArrayList<ArrayList<String>>();
+    ArrayList<Invoice> invoices = new ArrayList<Invoice>();
+    ArrayList<ArrayList<String>> monthlySummary = new ArrayList<ArrayList<String>>();
+    double amountOwing;
+    double overdueAmountOwing;
+
+    final Map<String, Double> timings = new LinkedHashMap<String, Double>();
+    double totalMillis;
+
+    /**
+     * @return true if the patient exists
+     */
+    public boolean isFound() {
+        return patient.size() > 0;
+    }
+
+    /**
+     * @return patient tuple, see HealthDB.findPatient
+     */
+    public ArrayList<String> getPatient() {
+        return patient;
+    }
+
+    /**
+     * @return provincial plan tuple, see HealthDB.getPlan
+     */
+    public ArrayList<String> getPlan() {
+        return plan;
+    }
+
+    /**
+     * @return extended benefits, see HealthDB.getExtendedBenefits
+     */
+    public ArrayList<ArrayList<String>> getExtendedBenefits() {
+        return extendedBenefits;
+    }
+
+    /**
+     * @return invoices, see HealthDB.getInvoices
+     */
+    public ArrayList<Invoice> getInvoices() {
+        return invoices;
+    }
+
+    /**
+     * @return monthly summary of unpaid invoices, see HealthDB.getOwingInvoicesMonthlySummary
+     */
+    public ArrayList<ArrayList<String>> getMonthlySummary() {
+        return monthlySummary;
+    }
+
+    public double getAmountOwing() {
+        return amountOwing;
+    }
+
+    public double getOverdueAmountOwing() {
+        return overdueAmountOwing;
+    }
+
+    /**
+     * @return milliseconds each query took, keyed by HealthDB method name
+     */
+    public Map<String, Double> getTimings() {
+        return timings;
+    }
+
+    /**
+     * @return milliseconds until all queries were done
+     */
+    public double getTotalMillis() {
+        return totalMillis;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("PlanSummary loaded in ");
+        sb.append(String.format("%.1f", totalMillis)).append(" ms:");
+        for (Map.Entry<String, Double> entry : timings.entrySet()) {
+            sb.append(' ').append(entry.getKey()).append('=').append(String.format("%.1f", entry.getValue()));
+        }
+        return sb.toString();
+    }
+}
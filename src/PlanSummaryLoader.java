@@ -0,0 +1,168 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h2>PlanSummaryLoader</h2>
+ * Loads the Plan Summary view by running its seven independent queries at the
+ * same time, each on its own pooled connection. Loading takes about as long as
+ * the slowest query instead of the sum of all of them.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class PlanSummaryLoader {
+    private final HealthDB hdb;
+    private final ExecutorService executor;
+
+    /**
+     * @param hdb     - connected HealthDB to run the queries with
+     * @param threads - number of queries run at the same time
+     */
+    public PlanSummaryLoader(HealthDB hdb, int threads) {
+        this.hdb = hdb;
+        this.executor = Executors.newFixedThreadPool(Math.max(threads, 1), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "PlanSummaryLoader-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Runs all plan summary queries for a patient and waits for them to finish
+     *
+     * @param pid - the PID of the selected Patient
+     * @return the loaded summary with per-query timings
+     * @throws InterruptedException if the caller is interrupted while waiting,
+     *                              the queries still running are cancelled
+     */
+    public PlanSummary load(final String pid) throws InterruptedException {
+        // The queries count towards the caller's task, not whatever the worker ran before
+        AtomicLong taskCalls = hdb.getMetrics().getTaskCounter();
+        List<TimedQuery> queries = new ArrayList<TimedQuery>();
+        queries.add(new TimedQuery(taskCalls, "findPatient", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return hdb.findPatient(pid);
+            }
+        }));
+        queries.add(new TimedQuery(taskCalls, "getPlan", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return hdb.getPlan(pid);
+            }
+        }));
+        queries.add(new TimedQuery(taskCalls, "getExtendedBenefits", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return hdb.getExtendedBenefits(pid);
+            }
+        }));
+        queries.add(new TimedQuery(taskCalls, "getInvoices", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return hdb.getInvoices(pid);
+            }
+        }));
+        queries.add(new TimedQuery(taskCalls, "getAmountOwing", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return hdb.getAmountOwing(pid);
+            }
+        }));
+        queries.add(new TimedQuery(taskCalls, "getOverdueAmountOwing", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return hdb.getOverdueAmountOwing(pid);
+            }
+        }));
+        queries.add(new TimedQuery(taskCalls, "getOwingInvoicesMonthlySummary", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return hdb.getOwingInvoicesMonthlySummary(pid);
+            }
+        }));
+
+        long start = System.nanoTime();
+        // invokeAll cancels the remaining queries if interrupted
+        List<Future<Object>> results = executor.invokeAll(queries);
+        PlanSummary summary = new PlanSummary();
+        summary.totalMillis = (System.nanoTime() - start) / 1e6;
+
+        summary.patient = get(results.get(0), summary.patient);
+        summary.plan = get(results.get(1), summary.plan);
+        summary.extendedBenefits = get(results.get(2), summary.extendedBenefits);
+        summary.invoices = get(results.get(3), summary.invoices);
+        summary.amountOwing = get(results.get(4), 0.0);
+        summary.overdueAmountOwing = get(results.get(5), 0.0);
+        summary.monthlySummary = get(results.get(6), summary.monthlySummary);
+        for (TimedQuery query : queries) {
+            summary.timings.put(query.name, query.elapsedNanos / 1e6);
+        }
+        return summary;
+    }
+
+    /**
+     * Stops the worker threads
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the result of a finished query, or the default if it failed
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T get(Future<Object> future, T defaultValue) throws InterruptedException {
+        try {
+            return (T) future.get();
+        } catch (ExecutionException ex) {
+            System.out.println("Plan summary query failed. " + ex.getCause());
+            return defaultValue;
+        }
+    }
+
+    /**
+     * A query that records how long it ran
+     */
+    private final class TimedQuery implements Callable<Object> {
+        final AtomicLong taskCalls;
+        final String name;
+        final Callable<Object> query;
+        volatile long elapsedNanos;
+
+        TimedQuery(AtomicLong taskCalls, String name, Callable<Object> query) {
+            this.taskCalls = taskCalls;
+            this.name = name;
+            this.query = query;
+        }
+
+        @Override
+        public Object call() throws Exception {
+            hdb.getMetrics().setTaskCounter(taskCalls);
+            long start = System.nanoTime();
+            try {
+                return query.call();
+            } finally {
+                elapsedNanos = System.nanoTime() - start;
+                hdb.getMetrics().setTaskCounter(null);
+            }
+        }
+    }
+}
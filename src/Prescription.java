@@ -0,0 +1,84 @@
+import java.time.LocalDate;
+
+/**
+ * <h2>Prescription</h2>
+ * One row of the prescription grids, as returned by HealthDB.getPrescriptions
+ * and findPrescription. Immutable.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public final class Prescription {
+    private final long prescriptionID;
+    private final LocalDate prescribedDate;
+    private final String medication;
+    private final double dosage;
+    private final String dosageMeasure;
+    private final int quantity;
+    private final LocalDate filledDate;
+
+    /**
+     * @param prescriptionID - ID of the prescription
+     * @param prescribedDate - date the prescription was written
+     * @param medication     - name of the medication
+     * @param dosage         - dosage per dose
+     * @param dosageMeasure  - unit of the dosage, e.g. mg
+     * @param quantity       - number of doses
+     * @param filledDate     - date a pharmacist filled it, null if not filled yet
+     */
+    public Prescription(long prescriptionID, LocalDate prescribedDate, String medication, double dosage,
+                        String dosageMeasure, int quantity, LocalDate filledDate) {
+        this.prescriptionID = prescriptionID;
+        this.prescribedDate = prescribedDate;
+        this.medication = medication;
+        this.dosage = dosage;
+        this.dosageMeasure = dosageMeasure;
+        this.quantity = quantity;
+        this.filledDate = filledDate;
+    }
+
+    public long getPrescriptionID() {
+        return prescriptionID;
+    }
+
+    public LocalDate getPrescribedDate() {
+        return prescribedDate;
+    }
+
+    public String getMedication() {
+        return medication;
+    }
+
+    public double getDosage() {
+        return dosage;
+    }
+
+    public String getDosageMeasure() {
+        return dosageMeasure;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * @return the date the prescription was filled, null if it has not been filled
+     */
+    public LocalDate getFilledDate() {
+        return filledDate;
+    }
+
+    public boolean isFilled() {
+        return filledDate != null;
+    }
+
+    @Override
+    public String toString() {
+        return "Prescription[" + prescriptionID + ", " + prescribedDate + ", " + medication + ", "
+                + dosage + " " + dosageMeasure + " x" + quantity + ", filled=" + filledDate + "]";
+    }
+}
@@ -0,0 +1,263 @@
+import java.sql.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h2>ReferenceCache</h2>
+ * Read-through cache of the small, rarely changing reference tables: the city,
+ * province and country of each postal code, the dosage measure of each
+ * medication, and the name and specialization of each doctor. The patient,
+ * prescription and referral queries read these from here instead of joining
+ * the tables on every call.
+ * <p>
+ * HealthDB preloads up to PRELOAD_MAX rows of each table in the background after
+ * connecting. Anything not loaded yet is read with a single-row query the first
+ * time it is needed and kept, including keys that do not exist. Each table is
+ * dropped once its entries are older than the time to live, and invalidate
+ * drops everything, e.g. after the tables were edited in SQL*Plus. Safe for
+ * concurrent use.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class ReferenceCache {
+    /** Most rows of each table loaded by preload (-Dhealthdb.referenceCache.preloadMax=...) */
+    static final int PRELOAD_MAX = Integer.getInteger("healthdb.referenceCache.preloadMax", 100000);
+
+    private final ConnectionPool pool;
+
+    private final Table<String, Place> places;
+    private final Table<String, String> dosageMeasures;
+    private final Table<Long, Doctor> doctors;
+
+    /**
+     * @param pool      - pool the statements are prepared through
+     * @param ttlMillis - how long entries are kept before they are read again
+     */
+    public ReferenceCache(ConnectionPool pool, long ttlMillis) {
+        this.pool = pool;
+        places = new Table<String, Place>("PostalCode", ttlMillis,
+                "select postalCode, city, province, country from PostalCode",
+                "select postalCode, city, province, country from PostalCode where postalCode = ?") {
+            @Override
+            String readKey(ResultSet rs) throws SQLException {
+                return rs.getString("postalCode");
+            }
+
+            @Override
+            Place readValue(ResultSet rs) throws SQLException {
+                return new Place(rs.getString("city"), rs.getString("province"), rs.getString("country"));
+            }
+        };
+        dosageMeasures = new Table<String, String>("Medication", ttlMillis,
+                "select medication, dosageMeasure from Medication",
+                "select medication, dosageMeasure from Medication where medication = ?") {
+            @Override
+            String readKey(ResultSet rs) throws SQLException {
+                return rs.getString("medication");
+            }
+
+            @Override
+            String readValue(ResultSet rs) throws SQLException {
+                return rs.getString("dosageMeasure");
+            }
+        };
+        doctors = new Table<Long, Doctor>("Doctor", ttlMillis,
+                "select h.HID, h.firstName, h.lastName, d.specialization from HealthcareProfessional h, Doctor d"
+                        + " where d.HID = h.HID",
+                "select h.HID, h.firstName, h.lastName, d.specialization from HealthcareProfessional h, Doctor d"
+                        + " where d.HID = h.HID and d.HID = ?") {
+            @Override
+            Long readKey(ResultSet rs) throws SQLException {
+                return rs.getLong("HID");
+            }
+
+            @Override
+            Doctor readValue(ResultSet rs) throws SQLException {
+                return new Doctor(rs.getString("firstName"), rs.getString("lastName"),
+                        rs.getString("specialization"));
+            }
+        };
+    }
+
+    /**
+     * Loads up to PRELOAD_MAX rows of every table
+     *
+     * @param con - a connection borrowed from the pool
+     */
+    public void preload(Connection con) throws SQLException {
+        places.preload(con);
+        dosageMeasures.preload(con);
+        doctors.preload(con);
+    }
+
+    /**
+     * @param con        - connection the caller already borrowed from the pool
+     * @param postalCode - the postal code, may be null
+     * @return the city, province and country of the postal code, null if there is no such postal code
+     */
+    public Place getPlace(Connection con, String postalCode) throws SQLException {
+        return postalCode == null ? null : places.get(con, postalCode);
+    }
+
+    /**
+     * @param con        - connection the caller already borrowed from the pool
+     * @param medication - the medication
+     * @return the unit the medication's dosage is measured in, null if there is no such medication
+     */
+    public String getDosageMeasure(Connection con, String medication) throws SQLException {
+        return medication == null ? null : dosageMeasures.get(con, medication);
+    }
+
+    /**
+     * @param con - connection the caller already borrowed from the pool
+     * @param hid - HID of the doctor
+     * @return the doctor, null if there is no doctor with that HID
+     */
+    public Doctor getDoctor(Connection con, long hid) throws SQLException {
+        return doctors.get(con, hid);
+    }
+
+    /**
+     * Drops every cached row, so each is read again on next use
+     */
+    public void invalidate() {
+        places.clear();
+        dosageMeasures.clear();
+        doctors.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "ReferenceCache[" + places + ", " + dosageMeasures + ", " + doctors + "]";
+    }
+
+    /**
+     * City, province and country of a postal code
+     */
+    public static final class Place {
+        private final String city;
+        private final String province;
+        private final String country;
+
+        Place(String city, String province, String country) {
+            this.city = city;
+            this.province = province;
+            this.country = country;
+        }
+
+        public String getCity() {
+            return city;
+        }
+
+        public String getProvince() {
+            return province;
+        }
+
+        public String getCountry() {
+            return country;
+        }
+    }
+
+    /**
+     * Name and specialization of a doctor
+     */
+    public static final class Doctor {
+        private final String firstName;
+        private final String lastName;
+        private final String specialization;
+
+        Doctor(String firstName, String lastName, String specialization) {
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.specialization = specialization;
+        }
+
+        public String getFirstName() {
+            return firstName;
+        }
+
+        public String getLastName() {
+            return lastName;
+        }
+
+        public String getSpecialization() {
+            return specialization;
+        }
+    }
+
+    /**
+     * The cached rows of one table
+     */
+    private abstract class Table<K, V> {
+        /** Stored for keys the table does not have, so they are not queried again */
+        private final Object missing = new Object();
+
+        private final String name;
+        private final long ttlMillis;
+        private final String loadAllQuery;
+        private final String loadOneQuery;
+        private final ConcurrentHashMap<K, Object> rows = new ConcurrentHashMap<K, Object>();
+        private volatile long loadedAt = System.currentTimeMillis();
+        private final AtomicLong misses = new AtomicLong();
+
+        Table(String name, long ttlMillis, String loadAllQuery, String loadOneQuery) {
+            this.name = name;
+            this.ttlMillis = ttlMillis;
+            this.loadAllQuery = loadAllQuery;
+            this.loadOneQuery = loadOneQuery;
+        }
+
+        abstract K readKey(ResultSet rs) throws SQLException;
+
+        abstract V readValue(ResultSet rs) throws SQLException;
+
+        void preload(Connection con) throws SQLException {
+            PreparedStatement ps = pool.prepareStatement(con, loadAllQuery);
+            ps.setMaxRows(PRELOAD_MAX);
+            ps.setFetchSize(500);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                // Never replaces a row that was read through in the meantime
+                rows.putIfAbsent(readKey(rs), readValue(rs));
+            }
+            rs.close();
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(Connection con, K key) throws SQLException {
+            if (System.currentTimeMillis() - loadedAt > ttlMillis) {
+                clear();
+            }
+            Object value = rows.get(key);
+            if (value == null) {
+                misses.incrementAndGet();
+                PreparedStatement ps = pool.prepareStatement(con, loadOneQuery);
+                if (key instanceof Long) {
+                    ps.setLong(1, (Long) key);
+                } else {
+                    ps.setString(1, key.toString());
+                }
+                ResultSet rs = ps.executeQuery();
+                value = rs.next() ? readValue(rs) : missing;
+                rs.close();
+                rows.put(key, value);
+            }
+            return value == missing ? null : (V) value;
+        }
+
+        void clear() {
+            loadedAt = System.currentTimeMillis();
+            rows.clear();
+        }
+
+        @Override
+        public String toString() {
+            return name + "=" + rows.size() + " rows, " + misses + " misses";
+        }
+    }
+}
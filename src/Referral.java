@@ -0,0 +1,70 @@
+import java.time.LocalDate;
+
+/**
+ * <h2>Referral</h2>
+ * One row of the referral grid, as returned by HealthDB.getReferrals. Holds the
+ * doctor the patient was referred to. The two HIDs identify the referral but are
+ * not shown. Immutable.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public final class Referral {
+    private final long referrerHID;
+    private final long referreeHID;
+    private final String firstName;
+    private final String lastName;
+    private final String specialization;
+    private final LocalDate referredDate;
+
+    /**
+     * @param referrerHID    - HID of the doctor making the referral
+     * @param referreeHID    - HID of the doctor referred to
+     * @param firstName      - first name of the doctor referred to
+     * @param lastName       - last name of the doctor referred to
+     * @param specialization - specialization of the doctor referred to
+     * @param referredDate   - date of the referral
+     */
+    public Referral(long referrerHID, long referreeHID, String firstName, String lastName, String specialization,
+                    LocalDate referredDate) {
+        this.referrerHID = referrerHID;
+        this.referreeHID = referreeHID;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.specialization = specialization;
+        this.referredDate = referredDate;
+    }
+
+    public long getReferrerHID() {
+        return referrerHID;
+    }
+
+    public long getReferreeHID() {
+        return referreeHID;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getSpecialization() {
+        return specialization;
+    }
+
+    public LocalDate getReferredDate() {
+        return referredDate;
+    }
+
+    @Override
+    public String toString() {
+        return "Referral[" + firstName + " " + lastName + ", " + specialization + ", " + referredDate + "]";
+    }
+}
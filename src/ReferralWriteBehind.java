@@ -0,0 +1,427 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * <h2>ReferralWriteBehind</h2>
+ * Write-behind queue for referrals, used by HealthDB.createReferral when
+ * -Dhealthdb.writeBehind=true. A referral is validated and written to a local
+ * journal, then returned to the caller straight away; a background thread sends
+ * queued referrals to the database in batches. Until a referral is written,
+ * HealthDB.getReferrals and loadPatientSummary show it from the queue, so the
+ * referral grid updates right away.
+ * <p>
+ * The journal is an append-only text file with a "+" line for every queued
+ * referral and a "-" line once it is in the database. It is forced to disk
+ * before createReferral returns. On the next connect, referrals without a "-"
+ * line are queued again. Writes skip referrals that already exist, so replaying
+ * one that was written just before a crash does nothing. The journal is compacted
+ * on connect by writing a new file and renaming it over the old one, so a crash
+ * while compacting leaves one or the other.
+ * <p>
+ * A referral the database rejects for any reason but a lost connection is tried
+ * MAX_ATTEMPTS times and then parked: its "+" line becomes a "!" line, which is
+ * kept in the journal but never replayed, and the referrals behind it go on being
+ * written. Parked referrals are listed on connect.
+ * <p>
+ * Queuing the same referral twice keeps one entry, as the table allows only one
+ * row per patient, referrer and referree.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class ReferralWriteBehind {
+    /** Writes of one referral that fail before it is parked */
+    static final int MAX_ATTEMPTS = 5;
+
+    private final HealthDB hdb;
+    private final File journal;
+    private final long flushIntervalMillis;
+    private final int batchSize;
+
+    /** Referrals not yet in the database, oldest first */
+    private final LinkedHashMap<String, PendingReferral> pending = new LinkedHashMap<String, PendingReferral>();
+    /** Journal lines of the parked referrals, kept when the journal is rewritten */
+    private final ArrayList<String> parked = new ArrayList<String>();
+    private FileOutputStream journalFile;
+    private Writer journalOut;
+    private Thread writer;
+    private boolean closed = false;
+    private long writtenCount = 0;
+
+    /**
+     * @param hdb                 - database the referrals are written to
+     * @param journal             - journal file, created if it does not exist
+     * @param flushIntervalMillis - longest time a referral waits before it is sent
+     * @param batchSize           - referrals sent per round trip, and the queue length that triggers a write
+     */
+    public ReferralWriteBehind(HealthDB hdb, File journal, long flushIntervalMillis, int batchSize) {
+        this.hdb = hdb;
+        this.journal = journal;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Queues the referrals left in the journal by the last run and starts the writer thread
+     *
+     * @throws IOException if the journal cannot be read or written
+     */
+    public synchronized void start() throws IOException {
+        if (journal.exists()) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(journal),
+                    StandardCharsets.UTF_8));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    replay(line);
+                }
+            } finally {
+                in.close();
+            }
+            if (pending.size() > 0) {
+                System.out.println("Replaying " + pending.size() + " referrals from " + journal);
+            }
+            if (parked.size() > 0) {
+                System.out.println(parked.size() + " referrals in " + journal
+                        + " could not be written and are parked on its \"!\" lines");
+            }
+        }
+        // Rewrite the journal with only what is still pending. The old journal is
+        // only replaced once the new one is on disk.
+        File compacted = new File(journal.getPath() + ".tmp");
+        FileOutputStream compactedFile = new FileOutputStream(compacted);
+        Writer out = new BufferedWriter(new OutputStreamWriter(compactedFile, StandardCharsets.UTF_8));
+        try {
+            writeRetained(out);
+            out.flush();
+            compactedFile.getFD().sync();
+        } finally {
+            out.close();
+        }
+        Files.move(compacted.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        openJournal(true);
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "ReferralWriteBehind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a referral. Returns once it is in the journal.
+     *
+     * @param referral - the referral
+     * @throws IOException if the journal could not be written, the referral is not queued
+     */
+    public synchronized void add(PendingReferral referral) throws IOException {
+        if (closed) {
+            throw new IOException("Write-behind queue is closed");
+        }
+        if (pending.containsKey(referral.getKey())) {
+            return;
+        }
+        journalOut.write(referral.toJournal());
+        syncJournal();
+        pending.put(referral.getKey(), referral);
+        if (pending.size() >= batchSize) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Adds the patient's queued referrals to the ones read from the database
+     *
+     * @param pid       - the PID of the patient
+     * @param referrals - the patient's referrals from the database, newest first
+     * @return the same list, with queued referrals that are not in it yet, newest first
+     */
+    public ArrayList<Referral> overlay(String pid, ArrayList<Referral> referrals) {
+        long patientID;
+        try {
+            patientID = Long.parseLong(pid.trim());
+        } catch (NumberFormatException ex) {
+            return referrals;
+        }
+        ArrayList<Referral> queued = new ArrayList<Referral>();
+        synchronized (this) {
+            for (PendingReferral r : pending.values()) {
+                if (r.getPatientID() == patientID) {
+                    queued.add(r.getReferral());
+                }
+            }
+        }
+        if (queued.isEmpty()) {
+            return referrals;
+        }
+        // A referral written after the database was read but before the queue was checked is in both
+        for (Referral r : referrals) {
+            for (Iterator<Referral> it = queued.iterator(); it.hasNext(); ) {
+                Referral q = it.next();
+                if (q.getReferrerHID() == r.getReferrerHID() && q.getReferreeHID() == r.getReferreeHID()) {
+                    it.remove();
+                }
+            }
+        }
+        referrals.addAll(0, queued);
+        Collections.sort(referrals, new Comparator<Referral>() {
+            @Override
+            public int compare(Referral a, Referral b) {
+                return b.getReferredDate().compareTo(a.getReferredDate());
+            }
+        });
+        return referrals;
+    }
+
+    /**
+     * @return number of referrals not yet in the database
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return number of referrals parked after MAX_ATTEMPTS failed writes
+     */
+    public synchronized int getParkedCount() {
+        return parked.size();
+    }
+
+    /**
+     * Stops the writer thread after one last attempt to write everything queued.
+     * Whatever could not be written stays in the journal for the next connect.
+     *
+     * @param timeoutMillis - how long to wait for the writer thread
+     */
+    public void close(long timeoutMillis) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            if (writer != null) {
+                writer.join(timeoutMillis);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer == null || !writer.isAlive()) {
+            try {
+                while (flushOnce()) {
+                    // Until the queue is empty
+                }
+            } catch (SQLException ex) {
+                System.out.println("Referrals left in " + journal + " for the next connect. " + ex.getMessage());
+            }
+        }
+        synchronized (this) {
+            try {
+                journalOut.close();
+            } catch (IOException ex) {
+                System.out.println("Failed to close referral journal. " + ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ReferralWriteBehind[pending=" + pending.size() + ", written=" + writtenCount + ", parked="
+                + parked.size() + ", journal=" + journal + "]";
+    }
+
+    private void writeLoop() {
+        while (true) {
+            synchronized (this) {
+                if (!closed && pending.size() < batchSize) {
+                    try {
+                        wait(flushIntervalMillis);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            try {
+                flushOnce();
+            } catch (SQLException ex) {
+                // Left queued and tried again after the next interval
+                System.out.println("Failed to write queued referrals. " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sends up to batchSize of the oldest queued referrals
+     *
+     * @return true if anything was written and more are queued
+     * @throws SQLException if the database could not be reached
+     */
+    private boolean flushOnce() throws SQLException {
+        ArrayList<PendingReferral> batch = new ArrayList<PendingReferral>();
+        synchronized (this) {
+            for (PendingReferral r : pending.values()) {
+                if (batch.size() == batchSize) {
+                    break;
+                }
+                batch.add(r);
+            }
+        }
+        if (batch.isEmpty()) {
+            return false;
+        }
+
+        List<PendingReferral> done = hdb.writeReferrals(batch);
+        synchronized (this) {
+            try {
+                for (PendingReferral r : done) {
+                    pending.remove(r.getKey());
+                    journalOut.write("-\t" + r.getKey() + "\n");
+                }
+                // The rest of the batch was rejected one by one
+                boolean parkedAny = false;
+                for (PendingReferral r : batch) {
+                    if (!done.contains(r) && ++r.attempts >= MAX_ATTEMPTS) {
+                        System.out.println("Parking queued referral " + r.getKey() + " after " + r.attempts
+                                + " failed writes, see " + journal);
+                        pending.remove(r.getKey());
+                        String line = "!" + r.toJournal().substring(1);
+                        parked.add(line);
+                        journalOut.write(line);
+                        parkedAny = true;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    // Nothing left to replay, start the journal over with the parked referrals
+                    journalOut.close();
+                    openJournal(false);
+                    writeRetained(journalOut);
+                    syncJournal();
+                } else if (parkedAny) {
+                    syncJournal();
+                } else {
+                    // Not forced to disk: a lost "-" line only means an extra write that does nothing
+                    journalOut.flush();
+                }
+            } catch (IOException ex) {
+                System.out.println("Failed to update referral journal. " + ex.getMessage());
+            }
+            writtenCount += done.size();
+            return !done.isEmpty() && !pending.isEmpty();
+        }
+    }
+
+    private void replay(String line) {
+        if (line.startsWith("+\t")) {
+            PendingReferral r = PendingReferral.fromJournal(line);
+            if (r != null) {
+                pending.put(r.getKey(), r);
+            }
+        } else if (line.startsWith("-\t")) {
+            pending.remove(line.substring(2));
+        } else if (line.startsWith("!\t") && PendingReferral.fromJournal(line) != null) {
+            pending.remove(line.split("\t", 3)[1]);
+            parked.add(line + "\n");
+        }
+        // Anything else is a line cut short by a crash
+    }
+
+    /**
+     * Writes the parked referrals and then the pending ones
+     */
+    private void writeRetained(Writer out) throws IOException {
+        for (String line : parked) {
+            out.write(line);
+        }
+        for (PendingReferral r : pending.values()) {
+            out.write(r.toJournal());
+        }
+    }
+
+    private void openJournal(boolean append) throws IOException {
+        journalFile = new FileOutputStream(journal, append);
+        journalOut = new BufferedWriter(new OutputStreamWriter(journalFile, StandardCharsets.UTF_8));
+    }
+
+    private void syncJournal() throws IOException {
+        journalOut.flush();
+        journalFile.getFD().sync();
+    }
+
+    /**
+     * A queued referral, with the referred doctor's details for the referral grid
+     */
+    public static final class PendingReferral {
+        private final long patientID;
+        private final Referral referral;
+        /** Failed writes so far, only touched by the writer */
+        private int attempts = 0;
+
+        /**
+         * @param patientID - PID of the patient
+         * @param referral  - the referral as getReferrals would return it
+         */
+        public PendingReferral(long patientID, Referral referral) {
+            this.patientID = patientID;
+            this.referral = referral;
+        }
+
+        public long getPatientID() {
+            return patientID;
+        }
+
+        public Referral getReferral() {
+            return referral;
+        }
+
+        /**
+         * @return the referral's primary key, patientID/referrerHID/referreeHID
+         */
+        String getKey() {
+            return patientID + "/" + referral.getReferrerHID() + "/" + referral.getReferreeHID();
+        }
+
+        String toJournal() {
+            return "+\t" + getKey() + "\t" + referral.getReferredDate() + "\t" + clean(referral.getFirstName())
+                    + "\t" + clean(referral.getLastName()) + "\t" + clean(referral.getSpecialization()) + "\n";
+        }
+
+        /**
+         * @return the referral, or null if the line is not complete
+         */
+        static PendingReferral fromJournal(String line) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 6) {
+                return null;
+            }
+            String[] key = fields[1].split("/");
+            try {
+                return new PendingReferral(Long.parseLong(key[0]), new Referral(Long.parseLong(key[1]),
+                        Long.parseLong(key[2]), fields[3], fields[4], fields[5], LocalDate.parse(fields[2])));
+            } catch (RuntimeException ex) {
+                return null;
+            }
+        }
+
+        private static String clean(String s) {
+            return s == null ? "" : s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+        }
+    }
+}
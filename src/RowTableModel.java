@@ -0,0 +1,131 @@
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <h2>RowTableModel</h2>
+ * TableModel backed directly by a list of row objects (Prescription, Invoice, ...).
+ * Cells are read from the row objects when the table paints, so loading a grid
+ * does not copy the rows into a String[][] or a Vector per row. Subclasses map a
+ * column index to a field of the row.
+ * <p>
+ * Dates are kept as LocalDate and formatted by the renderer installed by createTable.
+ * The table is read only.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public abstract class RowTableModel<T> extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    /** Same format the tuples used to have, e.g. "March 04 2018" */
+    public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MMMM dd yyyy");
+
+    private final String[] columnNames;
+    private final Class<?>[] columnClasses;
+    private List<T> rows = Collections.emptyList();
+
+    /**
+     * @param columnNames   - header of each column
+     * @param columnClasses - type of the values returned for each column, used to pick the renderer
+     */
+    public RowTableModel(String[] columnNames, Class<?>[] columnClasses) {
+        if (columnNames.length != columnClasses.length) {
+            throw new IllegalArgumentException("Every column needs a name and a class");
+        }
+        this.columnNames = columnNames;
+        this.columnClasses = columnClasses;
+    }
+
+    /**
+     * Creates a JTable for the model that knows how to show LocalDate cells
+     *
+     * @param model - the model to show
+     * @return a new table
+     */
+    public static JTable createTable(RowTableModel<?> model) {
+        JTable table = new JTable(model);
+        table.setDefaultRenderer(LocalDate.class, new DefaultTableCellRenderer() {
+            @Override
+            protected void setValue(Object value) {
+                setText(value == null ? "" : DATE_FORMAT.format((LocalDate) value));
+            }
+        });
+        return table;
+    }
+
+    /**
+     * Returns the value of one column of a row
+     *
+     * @param row    - the row object
+     * @param column - the column index
+     * @return the cell value, an instance of the column's class or null
+     */
+    protected abstract Object getValueAt(T row, int column);
+
+    /**
+     * Replaces the rows shown. The list is used as is, not copied, and must not be
+     * modified afterwards.
+     *
+     * @param rows - the new rows
+     */
+    public void setRows(List<T> rows) {
+        this.rows = rows == null ? Collections.<T>emptyList() : rows;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Removes all rows
+     */
+    public void clear() {
+        setRows(null);
+    }
+
+    /**
+     * @return the rows shown, in order
+     */
+    public List<T> getRows() {
+        return rows;
+    }
+
+    /**
+     * @param row - row index in the model
+     * @return the row object
+     */
+    public T getRow(int row) {
+        return rows.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return columnClasses[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        return getValueAt(rows.get(row), column);
+    }
+}
@@ -0,0 +1,112 @@
+import java.sql.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h2>StatementCache</h2>
+ * Per-connection cache of PreparedStatements keyed by SQL text. Re-executing a
+ * cached statement only rebinds its parameters, so the database does not have to
+ * parse the SQL again. The least recently used statement is closed once the cache
+ * is full.
+ * <p>
+ * A connection is only ever used by one thread at a time (see ConnectionPool), so
+ * the cache itself is not synchronized. Statements handed out by the cache must not
+ * be closed by the caller; close the ResultSet instead.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class StatementCache {
+    private final Connection con;
+    private final int maxSize;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    /**
+     * @param con     - connection the statements belong to
+     * @param maxSize - maximum number of statements kept open (at least 1)
+     * @param hits    - counter incremented on every cache hit
+     * @param misses  - counter incremented on every cache miss
+     */
+    public StatementCache(Connection con, int maxSize, AtomicLong hits, AtomicLong misses) {
+        this.con = con;
+        this.maxSize = Math.max(maxSize, 1);
+        this.hits = hits;
+        this.misses = misses;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the cached statement for the given SQL, preparing it on a miss
+     *
+     * @param sql - SQL text with ? placeholders
+     * @return a prepared statement with its parameters cleared
+     * @throws SQLException if the statement cannot be prepared
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement ps = statements.get(sql);
+        if (ps != null) {
+            hits.incrementAndGet();
+            ps.clearParameters();
+            return ps;
+        }
+        misses.incrementAndGet();
+        ps = con.prepareStatement(sql);
+        statements.put(sql, ps);
+        evict();
+        return ps;
+    }
+
+    /**
+     * Drops a statement from the cache, e.g. after it failed in a way that may
+     * have left it unusable
+     *
+     * @param sql - SQL text of the statement
+     */
+    public void remove(String sql) {
+        PreparedStatement ps = statements.remove(sql);
+        if (ps != null) {
+            closeQuietly(ps);
+        }
+    }
+
+    /**
+     * @return number of statements currently cached
+     */
+    public int size() {
+        return statements.size();
+    }
+
+    /**
+     * Closes every cached statement
+     */
+    public void close() {
+        for (PreparedStatement ps : statements.values()) {
+            closeQuietly(ps);
+        }
+        statements.clear();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, PreparedStatement>> it = statements.entrySet().iterator();
+        while (statements.size() > maxSize && it.hasNext()) {
+            closeQuietly(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException ex) {
+            System.out.println("Error closing cached statement. " + ex.getMessage());
+        }
+    }
+}
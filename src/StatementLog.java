@@ -0,0 +1,288 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * <h2>StatementLog</h2>
+ * Times every statement prepared through a ConnectionPool it is installed on, see
+ * ConnectionPool.setStatementLog. Statements that take longer than the threshold
+ * are printed with their normalized SQL, bind values, execute time, fetch time
+ * and row count, and every statement is added to a per-SQL total for the
+ * top-N-by-total-time report.
+ * <p>
+ * Statements are wrapped in a proxy that records the binds and the time spent in
+ * execute; queries also get a proxied ResultSet that counts rows and the time
+ * spent in next. A query is finished when its ResultSet is closed or runs out of
+ * rows. The proxies cost a reflective call per JDBC call, so HealthDB only
+ * installs the log when -Dhealthdb.slowQuery.thresholdMs is set.
+ * <p>
+ * SQL is normalized by collapsing whitespace and replacing literals with ?, so
+ * statements that only differ in their literals add up to one report line.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class StatementLog {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    /** Longest bind value printed, longer ones are cut off */
+    private static final int MAX_BIND_LENGTH = 40;
+
+    private final long thresholdNanos;
+    private final boolean logBinds;
+    /** Totals by normalized SQL */
+    private final ConcurrentHashMap<String, Totals> totals = new ConcurrentHashMap<String, Totals>();
+    /** Normalized SQL by SQL text, statements are prepared from a small set of strings */
+    private final ConcurrentHashMap<String, String> normalized = new ConcurrentHashMap<String, String>();
+    private final AtomicLong slowCount = new AtomicLong();
+
+    /**
+     * @param thresholdMillis - statements taking longer than this are printed, 0 prints every statement
+     * @param logBinds        - false to leave bind values out of the log, e.g. on real patient data
+     */
+    public StatementLog(long thresholdMillis, boolean logBinds) {
+        this.thresholdNanos = thresholdMillis * 1000000L;
+        this.logBinds = logBinds;
+    }
+
+    /**
+     * @param ps  - a statement from the statement cache
+     * @param sql - its SQL text
+     * @return a statement that reports its executions to this log
+     */
+    public PreparedStatement wrap(final PreparedStatement ps, final String sql) {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new InvocationHandler() {
+                    /** Bind values by parameter index, for the log */
+                    private final TreeMap<Integer, Object> binds = new TreeMap<Integer, Object>();
+                    private int batchCount = 0;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                            binds.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                        } else if (name.equals("clearParameters")) {
+                            binds.clear();
+                        } else if (name.equals("addBatch")) {
+                            batchCount++;
+                        } else if (name.equals("executeQuery") && (args == null || args.length == 0)) {
+                            Execution execution = new Execution(sql, describeBinds());
+                            long start = System.nanoTime();
+                            ResultSet rs = (ResultSet) call(ps, method, args);
+                            execution.executeNanos = System.nanoTime() - start;
+                            return wrap(rs, execution);
+                        } else if (name.startsWith("execute") && (args == null || args.length == 0)) {
+                            Execution execution = new Execution(sql, batchCount > 0
+                                    ? batchCount + " batched rows" : describeBinds());
+                            long start = System.nanoTime();
+                            Object result = call(ps, method, args);
+                            execution.executeNanos = System.nanoTime() - start;
+                            if (result instanceof Integer) {
+                                execution.rows = (Integer) result;
+                            } else if (result instanceof int[]) {
+                                for (int count : (int[]) result) {
+                                    execution.rows += Math.max(count, 0);
+                                }
+                                batchCount = 0;
+                            }
+                            finish(execution);
+                            return result;
+                        }
+                        return call(ps, method, args);
+                    }
+
+                    private String describeBinds() {
+                        if (!logBinds) {
+                            return binds.size() + " binds";
+                        }
+                        StringBuilder sb = new StringBuilder("[");
+                        for (Object value : binds.values()) {
+                            if (sb.length() > 1) {
+                                sb.append(", ");
+                            }
+                            if (value instanceof String) {
+                                String s = (String) value;
+                                sb.append('\'').append(s.length() > MAX_BIND_LENGTH
+                                        ? s.substring(0, MAX_BIND_LENGTH) + "..." : s).append('\'');
+                            } else {
+                                sb.append(value);
+                            }
+                        }
+                        return sb.append(']').toString();
+                    }
+                });
+    }
+
+    /**
+     * @param n - number of lines
+     * @return the n statements with the most total time, with their counts, rows and mean time
+     */
+    public String report(int n) {
+        ArrayList<Totals> list = new ArrayList<Totals>(totals.values());
+        Collections.sort(list, new Comparator<Totals>() {
+            @Override
+            public int compare(Totals a, Totals b) {
+                return Long.compare(b.totalNanos.get(), a.totalNanos.get());
+            }
+        });
+        StringBuilder sb = new StringBuilder("Top statements by total time (" + slowCount.get()
+                + " over the threshold)\n");
+        sb.append(String.format("%10s %9s %10s %9s %9s  %s", "total ms", "count", "rows", "mean ms", "max ms", "sql"));
+        for (Totals t : list.subList(0, Math.min(n, list.size()))) {
+            long count = t.count.get();
+            sb.append('\n').append(String.format("%10.1f %9d %10d %9.3f %9.3f  %s", t.totalNanos.get() / 1e6, count,
+                    t.rows.get(), count == 0 ? 0 : t.totalNanos.get() / 1e6 / count, t.maxNanos.get() / 1e6, t.sql));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the normalized SQL of every statement seen
+     */
+    public List<String> getStatements() {
+        return new ArrayList<String>(totals.keySet());
+    }
+
+    /**
+     * Forgets all totals
+     */
+    public void reset() {
+        totals.clear();
+        slowCount.set(0);
+    }
+
+    /**
+     * @param sql - SQL text
+     * @return the SQL with whitespace collapsed and literals replaced by ?
+     */
+    static String normalize(String sql) {
+        String s = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        s = STRING_LITERAL.matcher(s).replaceAll("?");
+        return NUMBER_LITERAL.matcher(s).replaceAll("?");
+    }
+
+    private ResultSet wrap(final ResultSet rs, final Execution execution) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                new InvocationHandler() {
+                    private boolean finished = false;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if (name.equals("next")) {
+                            long start = System.nanoTime();
+                            Boolean more = (Boolean) call(rs, method, args);
+                            execution.fetchNanos += System.nanoTime() - start;
+                            if (more) {
+                                execution.rows++;
+                            } else {
+                                end();
+                            }
+                            return more;
+                        } else if (name.equals("close")) {
+                            end();
+                        }
+                        return call(rs, method, args);
+                    }
+
+                    private void end() {
+                        if (!finished) {
+                            finished = true;
+                            finish(execution);
+                        }
+                    }
+                });
+    }
+
+    private void finish(Execution execution) {
+        String sql = normalized.get(execution.sql);
+        if (sql == null) {
+            sql = normalize(execution.sql);
+            normalized.put(execution.sql, sql);
+        }
+        long elapsed = execution.executeNanos + execution.fetchNanos;
+        Totals t = totals.get(sql);
+        if (t == null) {
+            Totals created = new Totals(sql);
+            t = totals.putIfAbsent(sql, created);
+            if (t == null) {
+                t = created;
+            }
+        }
+        t.add(elapsed, execution.rows);
+
+        if (elapsed > thresholdNanos) {
+            slowCount.incrementAndGet();
+            System.out.println(String.format("Slow statement %.1f ms (execute %.1f ms, fetch %.1f ms, %d rows): %s binds %s",
+                    elapsed / 1e6, execution.executeNanos / 1e6, execution.fetchNanos / 1e6, execution.rows, sql,
+                    execution.binds));
+        }
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            // Rethrow the SQLException itself, not the reflection wrapper
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * One run of a statement
+     */
+    private static final class Execution {
+        final String sql;
+        final String binds;
+        long executeNanos = 0;
+        long fetchNanos = 0;
+        long rows = 0;
+
+        Execution(String sql, String binds) {
+            this.sql = sql;
+            this.binds = binds;
+        }
+    }
+
+    /**
+     * Totals of one normalized statement
+     */
+    private static final class Totals {
+        final String sql;
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong totalNanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+        final AtomicLong rows = new AtomicLong();
+
+        Totals(String sql) {
+            this.sql = sql;
+        }
+
+        void add(long nanos, long rowCount) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            rows.addAndGet(rowCount);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+    }
+}
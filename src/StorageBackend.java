@@ -0,0 +1,64 @@
+import java.sql.*;
+
+/**
+ * <h2>StorageBackend</h2>
+ * The database HealthDB stores its data in. Knows how to load the JDBC driver,
+ * where to connect, how to prepare a new database and the few pieces of SQL
+ * that differ between databases. Everything else HealthDB runs is plain SQL.
+ * <p>
+ * OracleBackend is the department's Oracle server and is the default.
+ * EmbeddedBackend runs an in-process database loaded from setupdb.sql, so the
+ * app, tests and benchmarks can run without a network. Chosen with
+ * -Dhealthdb.storage=oracle|embedded (see HealthDB.createStorageBackend).
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public interface StorageBackend {
+    /**
+     * @return name shown in log messages, e.g. "Oracle"
+     */
+    String getName();
+
+    /**
+     * Registers the JDBC driver. Called once, before the first connection.
+     *
+     * @throws SQLException if the driver is not on the classpath
+     */
+    void loadDriver() throws SQLException;
+
+    /**
+     * @return JDBC URL the connection pool connects to
+     */
+    String getURL();
+
+    /**
+     * @return cheap query used by the connection pool to check a connection
+     */
+    String getValidationQuery();
+
+    /**
+     * Prepares the database after connecting, e.g. creates the schema if it
+     * does not exist yet
+     *
+     * @param con - a connection borrowed from the pool
+     * @throws SQLException if the database could not be prepared
+     */
+    void initialize(Connection con) throws SQLException;
+
+    /**
+     * @param sequenceName - the sequence
+     * @return query returning the next value of the sequence
+     */
+    String nextValueQuery(String sequenceName);
+
+    /**
+     * @return query returning the INCREMENT BY of the sequence whose upper case
+     * name is bound to its only parameter, or no row if there is no such sequence
+     */
+    String sequenceIncrementQuery();
+}
@@ -0,0 +1,42 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * <h2>UIActionEvent</h2>
+ * Java Flight Recorder event for one HealthDBUI action, from the button press
+ * that started its database task until the views were updated with the result.
+ * The HealthDB Call events committed in between show which queries the time
+ * went to.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+@Name("healthdb.UIAction")
+@Label("HealthDB UI Action")
+@Category({"HealthDB"})
+@Description("A HealthDBUI action and the database task it started")
+@StackTrace(false)
+public class UIActionEvent extends jdk.jfr.Event {
+    @Label("Action")
+    @Description("Status bar text of the task")
+    String action;
+
+    @Label("Panel")
+    @Description("Lookup slot of the task, null for writes")
+    String panel;
+
+    @Label("HealthDB Calls")
+    @Description("HealthDB calls made by the action's database task")
+    long calls;
+
+    @Label("Outcome")
+    @Description("succeeded, failed or cancelled")
+    String outcome;
+}
@@ -0,0 +1,163 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+/**
+ * <h2>UnitOfWork</h2>
+ * A transaction spanning several HealthDB calls, started with
+ * HealthDB.beginUnitOfWork. Until it is committed or closed, every HealthDB
+ * method called on the same thread runs on the unit of work's connection and
+ * nothing is committed in between, so the whole group costs one commit.
+ * <pre>
+ * UnitOfWork work = hdb.beginUnitOfWork();
+ * try {
+ *     hdb.createInvoice(...);
+ *     hdb.updatePrescription(...);
+ *     work.commit();
+ * } finally {
+ *     work.close();
+ * }
+ * </pre>
+ * If a statement fails, the unit of work can only be rolled back and commit
+ * throws. Other reasons a HealthDB method returns false, such as a prescription
+ * that would cause an interaction, are left to the caller. Closing without
+ * committing rolls back. Cached invoice balances and the name index are
+ * only updated once the unit of work commits.
+ * <p>
+ * Not thread safe: a unit of work belongs to the thread that began it. Referrals
+ * queued by write-behind are not part of it.
+ * <br>
+ * CPSC 304 Group 12
+ *
+ * @author Jenna Bains
+ * @author Laura Greenstreet
+ * @author Michelle Kong
+ * @author Jan Louis Evangelista
+ */
+public class UnitOfWork {
+    private final HealthDB hdb;
+    private final Connection con;
+    private final int previousIsolation;
+    private final ArrayList<Runnable> afterCommit = new ArrayList<Runnable>();
+    private String rollbackReason = null;
+    private boolean done = false;
+
+    /**
+     * @param hdb       - the HealthDB the unit of work belongs to
+     * @param con       - connection borrowed for the unit of work
+     * @param isolation - a Connection.TRANSACTION_ isolation level
+     * @throws SQLException if the transaction could not be started
+     */
+    UnitOfWork(HealthDB hdb, Connection con, int isolation) throws SQLException {
+        this.hdb = hdb;
+        this.con = con;
+        this.previousIsolation = con.getTransactionIsolation();
+        con.setAutoCommit(false);
+        try {
+            if (isolation != previousIsolation) {
+                con.setTransactionIsolation(isolation);
+            }
+        } catch (SQLException ex) {
+            con.setAutoCommit(true);
+            throw ex;
+        }
+    }
+
+    /**
+     * Commits everything done since beginUnitOfWork and ends the unit of work
+     *
+     * @throws SQLException if a statement failed, or the commit failed. Either way
+     *                      nothing was written.
+     */
+    public void commit() throws SQLException {
+        if (done) {
+            throw new SQLException("Unit of work has already ended");
+        }
+        if (rollbackReason != null) {
+            rollback();
+            throw new SQLException("Unit of work rolled back. " + rollbackReason);
+        }
+        try {
+            con.commit();
+        } catch (SQLException ex) {
+            rollback();
+            throw ex;
+        }
+        done = true;
+        for (Runnable r : afterCommit) {
+            r.run();
+        }
+        end();
+    }
+
+    /**
+     * Undoes everything done since beginUnitOfWork and ends the unit of work.
+     * Does nothing if it has already ended.
+     */
+    public void rollback() {
+        if (done) {
+            return;
+        }
+        done = true;
+        try {
+            con.rollback();
+        } catch (SQLException ex) {
+            System.out.println("Failed to roll back. " + ex.getMessage());
+        }
+        hdb.unitOfWorkRolledBack();
+        end();
+    }
+
+    /**
+     * Rolls back unless the unit of work was committed. Meant for a finally block.
+     */
+    public void close() {
+        rollback();
+    }
+
+    /**
+     * @return true until the unit of work is committed or rolled back
+     */
+    public boolean isActive() {
+        return !done;
+    }
+
+    /**
+     * @return why the unit of work can only be rolled back, or null if it can still commit
+     */
+    public String getRollbackReason() {
+        return rollbackReason;
+    }
+
+    Connection getConnection() {
+        return con;
+    }
+
+    /**
+     * Records that a statement failed, so the unit of work can only be rolled back
+     */
+    void setRollbackOnly(String reason) {
+        if (rollbackReason == null) {
+            rollbackReason = reason;
+        }
+    }
+
+    /**
+     * Runs the given update to cached state once the unit of work commits
+     */
+    void afterCommit(Runnable r) {
+        afterCommit.add(r);
+    }
+
+    private void end() {
+        try {
+            if (con.getTransactionIsolation() != previousIsolation) {
+                con.setTransactionIsolation(previousIsolation);
+            }
+            con.setAutoCommit(true);
+        } catch (SQLException ex) {
+            System.out.println("Failed to end unit of work. " + ex.getMessage());
+        }
+        hdb.unitOfWorkEnded(this);
+    }
+}
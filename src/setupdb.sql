@@ -12,7 +12,12 @@ DROP TABLE LabTest CASCADE constraints;
 DROP TABLE ProvincialHealthPlan CASCADE constraints;
 DROP TABLE ExtendedBenefitsPlan CASCADE constraints;
 DROP TABLE Patient CASCADE constraints;
+DROP TABLE InteractionSet CASCADE constraints;
 DROP VIEW medInteraction;
+DROP SEQUENCE prescriptionIDSeq;
+DROP SEQUENCE testIDSeq;
+DROP SEQUENCE invoiceIDSeq;
+DROP SEQUENCE paymentIDSeq;
 
 /* Create the tables.*/
 CREATE TABLE PostalCode (
@@ -189,6 +194,24 @@ CREATE VIEW medInteraction AS
     SELECT * FROM medication
     WHERE medication.medication IN('Fluoxetine','Lipitor', 'Metformin', 'Esomeprazole');
 
+/* Medications that must not all be prescribed to one patient, one row per medication of each set.
+   Loaded into memory by the app (see MedicationInteractions). Set 1 is the medInteraction view. */
+CREATE TABLE InteractionSet (
+    setID           integer,
+    medication      varchar2(40),
+    PRIMARY KEY (setID, medication),
+    FOREIGN KEY (medication) REFERENCES Medication ON DELETE CASCADE
+);
+
+/* Prescriptions are looked up by patient when checking for interactions */
+CREATE INDEX prescriptionPatientIdx ON Prescription (patientID);
+
+
+/* ID sequences. INCREMENT BY is the block of IDs each app instance reserves at a time (see IdAllocator). */
+CREATE SEQUENCE prescriptionIDSeq START WITH 1000000 INCREMENT BY 50;
+CREATE SEQUENCE testIDSeq START WITH 1000000 INCREMENT BY 50;
+CREATE SEQUENCE invoiceIDSeq START WITH 1000000 INCREMENT BY 50;
+CREATE SEQUENCE paymentIDSeq START WITH 1000000 INCREMENT BY 50;
 
 /* Populate the database. */
 
@@ -373,6 +396,11 @@ insert into Medication values ('Amoxicillin', 'mg');
 insert into Medication values ('Lipitor', 'mg');
 insert into Medication values ('Amlodipine', 'mg');
 
+insert into InteractionSet values (1, 'Fluoxetine');
+insert into InteractionSet values (1, 'Lipitor');
+insert into InteractionSet values (1, 'Metformin');
+insert into InteractionSet values (1, 'Esomeprazole');
+
 insert into Prescription values (452855, 'Albuterol', 25, 100, 32118954, 55544, 55246, TO_DATE('2018-09-11','YYYY-MM-DD'), TO_DATE('2018-09-13','YYYY-MM-DD'));
 insert into Prescription values (485274, 'Fluoxetine', 20, 300, 12345678, 52918, 53763, TO_DATE('2019-01-20','YYYY-MM-DD'), TO_DATE('2019-01-20','YYYY-MM-DD'));
 insert into Prescription values (438245, 'Esomeprazole', 10, 40, 12345678, 52918, NULL, TO_DATE('2018-08-04','YYYY-MM-DD'), NULL);